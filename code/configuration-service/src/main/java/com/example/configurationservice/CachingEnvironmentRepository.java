@@ -0,0 +1,75 @@
+package com.example.configurationservice;
+
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.server.environment.EnvironmentRepository;
+import org.springframework.cloud.config.server.environment.SearchPathLocator;
+import org.springframework.core.Ordered;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the {@link Environment} resolved for each application, profile and label,
+ * and hands it out again for as long as the label's still at the same commit, instead of
+ * reading and merging every file in the repository again on every request.
+ * <p>
+ * It still asks the repository which commit the label's at every time, but that only
+ * fetches from the remote once every {@code spring.cloud.config.server.git.refresh-rate}
+ * seconds. At most {@code size} environments are kept, the least recently used going
+ * first.
+ */
+class CachingEnvironmentRepository implements EnvironmentRepository, SearchPathLocator, Ordered {
+
+	private final EnvironmentRepository repository;
+
+	private final SearchPathLocator locator;
+
+	private final Map<List<Object>, Environment> environments;
+
+	<T extends EnvironmentRepository & SearchPathLocator> CachingEnvironmentRepository(T repository, int size) {
+		this.repository = repository;
+		this.locator = repository;
+		this.environments = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<List<Object>, Environment> eldest) {
+				return size() > size;
+			}
+
+		});
+	}
+
+	@Override
+	public Environment findOne(String application, String profile, String label) {
+		return findOne(application, profile, label, false);
+	}
+
+	@Override
+	public Environment findOne(String application, String profile, String label, boolean includeOrigin) {
+		var version = this.locator.getLocations(application, profile, label).getVersion();
+		var key = Arrays.<Object>asList(application, profile, label, includeOrigin);
+		var environment = this.environments.get(key);
+		if (environment != null && version != null && version.equals(environment.getVersion())) {
+			return environment;
+		}
+		environment = this.repository.findOne(application, profile, label, includeOrigin);
+		if (version != null) {
+			this.environments.put(key, environment);
+		}
+		return environment;
+	}
+
+	@Override
+	public Locations getLocations(String application, String profile, String label) {
+		return this.locator.getLocations(application, profile, label);
+	}
+
+	@Override
+	public int getOrder() {
+		return this.repository instanceof Ordered ? ((Ordered) this.repository).getOrder() : Ordered.LOWEST_PRECEDENCE;
+	}
+
+}
@@ -0,0 +1,149 @@
+package com.example.configurationservice;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.server.environment.EnvironmentRepository;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets a client wait for the version of its environment to change, rather than ask for
+ * the whole of it every so often. A long-polling {@code GET} for
+ * {@code /watch/{application}/{profile}/{label}}, with the {@code version} the client
+ * has, answers as soon as the version's a different one, with the environment's name,
+ * profiles, label and new version but no properties, or with a {@code 304} after
+ * {@code wait} seconds if it hasn't changed by then.
+ * <p>
+ * The versions of the environments someone's waiting on are looked at again every
+ * {@code interval}, all on one thread. Going by the {@link CachingEnvironmentRepository},
+ * that costs a look at which commit the label's at, and a fetch at most every
+ * {@code spring.cloud.config.server.git.refresh-rate} seconds.
+ */
+@RestController
+class ConfigurationWatch implements DisposableBean {
+
+	private static final Log log = LogFactory.getLog(ConfigurationWatch.class);
+
+	private final EnvironmentRepository repository;
+
+	private final Duration maxWait;
+
+	private final Map<List<String>, Watch> watches = new HashMap<>();
+
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		var thread = new Thread(runnable, "configuration-watch");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	ConfigurationWatch(EnvironmentRepository repository,
+			@Value("${configuration.watch.interval:5s}") Duration interval,
+			@Value("${configuration.watch.max-wait:60s}") Duration maxWait) {
+		this.repository = repository;
+		this.maxWait = maxWait;
+		this.executor.scheduleWithFixedDelay(this::check, interval.toMillis(), interval.toMillis(),
+				TimeUnit.MILLISECONDS);
+	}
+
+	@GetMapping({ "/watch/{application}/{profile}", "/watch/{application}/{profile}/{label}" })
+	DeferredResult<ResponseEntity<Environment>> watch(@PathVariable String application, @PathVariable String profile,
+			@PathVariable(required = false) String label, @RequestParam(required = false) String version,
+			@RequestParam(defaultValue = "30") long wait) {
+		var timeout = Math.min(TimeUnit.SECONDS.toMillis(wait), this.maxWait.toMillis());
+		var result = new DeferredResult<ResponseEntity<Environment>>(timeout,
+				ResponseEntity.status(HttpStatus.NOT_MODIFIED).build());
+		this.executor.execute(() -> {
+			var watch = this.watches.computeIfAbsent(Arrays.asList(application, profile, label),
+					key -> new Watch(application, profile, label));
+			try {
+				watch.check();
+			}
+			catch (RuntimeException e) {
+				result.setErrorResult(e);
+				return;
+			}
+			if (!Objects.equals(version, watch.environment.getVersion())) {
+				result.setResult(ResponseEntity.ok(watch.environment));
+				return;
+			}
+			watch.waiting.add(result);
+			result.onCompletion(() -> this.executor.execute(() -> watch.waiting.remove(result)));
+		});
+		return result;
+	}
+
+	@Override
+	public void destroy() {
+		this.executor.shutdownNow();
+	}
+
+	private void check() {
+		this.watches.values().removeIf(watch -> watch.waiting.isEmpty());
+		for (var watch : this.watches.values()) {
+			try {
+				if (watch.check()) {
+					var waiting = new ArrayList<>(watch.waiting);
+					watch.waiting.clear();
+					waiting.forEach(result -> result.setResult(ResponseEntity.ok(watch.environment)));
+				}
+			}
+			catch (RuntimeException e) {
+				log.warn("couldn't look at " + watch.application + '/' + watch.profile + " for changes: "
+						+ e.getMessage());
+			}
+		}
+	}
+
+	private final class Watch {
+
+		private final String application;
+
+		private final String profile;
+
+		private final String label;
+
+		private final List<DeferredResult<ResponseEntity<Environment>>> waiting = new ArrayList<>();
+
+		private Environment environment;
+
+		Watch(String application, String profile, String label) {
+			this.application = application;
+			this.profile = profile;
+			this.label = label;
+		}
+
+		/**
+		 * Looks at the environment's version again, and says whether it's changed.
+		 */
+		boolean check() {
+			var found = repository.findOne(this.application, this.profile, this.label);
+			var changed = this.environment != null && !Objects.equals(found.getVersion(), this.environment.getVersion());
+			if (this.environment == null || changed) {
+				this.environment = new Environment(found.getName(), found.getProfiles(), found.getLabel(),
+						found.getVersion(), found.getState());
+			}
+			return changed;
+		}
+
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.example.configurationservice;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.cloud.config.server.environment.MultipleJGitEnvironmentRepository;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Puts a {@link CachingEnvironmentRepository} in front of the git repository, keeping
+ * up to {@code configuration.environment-cache.size} environments.
+ */
+@Configuration
+class EnvironmentCacheConfiguration {
+
+	@Bean
+	static BeanPostProcessor cachingEnvironmentRepositoryPostProcessor(Environment environment) {
+		var size = environment.getProperty("configuration.environment-cache.size", Integer.class, 1000);
+		return new BeanPostProcessor() {
+
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) {
+				return bean instanceof MultipleJGitEnvironmentRepository
+						? new CachingEnvironmentRepository((MultipleJGitEnvironmentRepository) bean, size) : bean;
+			}
+
+		};
+	}
+
+}
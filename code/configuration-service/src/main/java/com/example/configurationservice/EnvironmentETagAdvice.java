@@ -0,0 +1,44 @@
+package com.example.configurationservice;
+
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Tags every {@link Environment} the config server sends with its version, the commit
+ * it was read from, as an {@code ETag}, and answers a request that already has that
+ * version, in {@code If-None-Match}, with a {@code 304} and no body.
+ */
+@ControllerAdvice
+class EnvironmentETagAdvice implements ResponseBodyAdvice<Environment> {
+
+	@Override
+	public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+		return Environment.class.isAssignableFrom(returnType.getParameterType());
+	}
+
+	@Override
+	public Environment beforeBodyWrite(Environment body, MethodParameter returnType, MediaType selectedContentType,
+			Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request,
+			ServerHttpResponse response) {
+		if (body == null || body.getVersion() == null || !(request instanceof ServletServerHttpRequest)
+				|| !(response instanceof ServletServerHttpResponse)) {
+			return body;
+		}
+		var servletResponse = ((ServletServerHttpResponse) response).getServletResponse();
+		servletResponse.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+		var webRequest = new ServletWebRequest(((ServletServerHttpRequest) request).getServletRequest(),
+				servletResponse);
+		return webRequest.checkNotModified('"' + body.getVersion() + '"') ? null : body;
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.example.configurationservice;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.server.environment.EnvironmentRepository;
+import org.springframework.cloud.config.server.environment.SearchPathLocator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachingEnvironmentRepositoryTests {
+
+	private final Repository repository = new Repository();
+
+	private final CachingEnvironmentRepository cache = new CachingEnvironmentRepository(this.repository, 2);
+
+	@Test
+	void resolvesAgainOnlyWhenTheCommitChanges() {
+		var first = this.cache.findOne("gateway", "default", "main");
+		assertThat(this.cache.findOne("gateway", "default", "main")).isSameAs(first);
+
+		this.repository.version = "2";
+		var second = this.cache.findOne("gateway", "default", "main");
+		assertThat(second.getVersion()).isEqualTo("2");
+		assertThat(this.cache.findOne("gateway", "default", "main")).isSameAs(second);
+		assertThat(this.repository.resolved).isEqualTo(2);
+	}
+
+	@Test
+	void keepsOnlyTheMostRecentlyUsedEnvironments() {
+		this.cache.findOne("gateway", "default", "main");
+		this.cache.findOne("customers", "default", "main");
+		this.cache.findOne("gateway", "default", "main");
+		this.cache.findOne("orders", "default", "main");
+		this.cache.findOne("gateway", "default", "main");
+		assertThat(this.repository.resolved).isEqualTo(3);
+
+		this.cache.findOne("customers", "default", "main");
+		assertThat(this.repository.resolved).isEqualTo(4);
+	}
+
+	@Test
+	void neverKeepsAnEnvironmentWithoutAVersion() {
+		this.repository.version = null;
+		this.cache.findOne("gateway", "default", "main");
+		this.cache.findOne("gateway", "default", "main");
+		assertThat(this.repository.resolved).isEqualTo(2);
+	}
+
+	private static class Repository implements EnvironmentRepository, SearchPathLocator {
+
+		private String version = "1";
+
+		private int resolved;
+
+		@Override
+		public Environment findOne(String application, String profile, String label) {
+			this.resolved++;
+			return new Environment(application, new String[] { profile }, label, this.version, null);
+		}
+
+		@Override
+		public Locations getLocations(String application, String profile, String label) {
+			return new Locations(application, profile, label, this.version, new String[0]);
+		}
+
+	}
+
+}
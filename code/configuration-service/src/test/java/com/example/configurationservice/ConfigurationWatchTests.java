@@ -0,0 +1,133 @@
+package com.example.configurationservice;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.transport.RefSpec;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the config server against a clone of a bare repository on disk, and pushes
+ * commits to that repository from another clone, the way they'd be pushed to the real
+ * one.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"spring.cloud.config.server.git.refresh-rate=0", "configuration.watch.interval=100ms" })
+class ConfigurationWatchTests {
+
+	private static final Path directory = createDirectory();
+
+	private static final Git developer = createRepositories();
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@DynamicPropertySource
+	static void gitProperties(DynamicPropertyRegistry registry) {
+		registry.add("spring.cloud.config.server.git.uri", () -> directory.resolve("server").toUri().toString());
+	}
+
+	@AfterAll
+	static void deleteRepositories() throws IOException {
+		developer.close();
+		FileSystemUtils.deleteRecursively(directory);
+	}
+
+	@Test
+	void answersStraightAwayWithAVersionTheClientDoesNotHave() {
+		var response = this.restTemplate.getForEntity("/watch/gateway/default/main?version=old", Environment.class);
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody().getVersion()).isEqualTo(head());
+		assertThat(response.getBody().getPropertySources()).isEmpty();
+	}
+
+	@Test
+	void waitsForTheNextCommit() throws Exception {
+		var version = head();
+		var watch = CompletableFuture.supplyAsync(() -> this.restTemplate
+				.getForEntity("/watch/gateway/default/main?wait=20&version=" + version, Environment.class));
+		Thread.sleep(500);
+		assertThat(watch).isNotDone();
+
+		commit("greeting: hi\n");
+
+		var response = watch.get(10, TimeUnit.SECONDS);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody().getVersion()).isEqualTo(head()).isNotEqualTo(version);
+	}
+
+	@Test
+	void answersNotModifiedWhenNothingChanges() {
+		var response = this.restTemplate.getForEntity("/watch/gateway/default/main?wait=1&version=" + head(),
+				Environment.class);
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+	}
+
+	private static Path createDirectory() {
+		try {
+			return Files.createTempDirectory("configuration-watch");
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Git createRepositories() {
+		try {
+			var origin = directory.resolve("origin.git").toFile();
+			try (var bare = Git.init().setBare(true).setDirectory(origin).call()) {
+				bare.getRepository().updateRef(Constants.HEAD).link("refs/heads/main");
+			}
+			var developer = Git.cloneRepository().setURI(origin.toURI().toString())
+					.setDirectory(directory.resolve("developer").toFile()).call();
+			commit(developer, "greeting: hello\n");
+			Git.cloneRepository().setURI(origin.toURI().toString()).setDirectory(directory.resolve("server").toFile())
+					.call().close();
+			return developer;
+		}
+		catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void commit(Git git, String content) throws Exception {
+		Files.writeString(new File(git.getRepository().getWorkTree(), "gateway.yml").toPath(), content);
+		git.add().addFilepattern("gateway.yml").call();
+		git.commit().setMessage(content).setAuthor("test", "test@example.com")
+				.setCommitter("test", "test@example.com").call();
+		git.push().setRefSpecs(new RefSpec("HEAD:refs/heads/main")).call();
+	}
+
+	private static void commit(String content) throws Exception {
+		commit(developer, content);
+	}
+
+	private static String head() {
+		try {
+			return developer.getRepository().resolve("HEAD").name();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
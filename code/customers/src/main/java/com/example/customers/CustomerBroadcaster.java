@@ -0,0 +1,104 @@
+package com.example.customers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBufAllocator;
+import lombok.SneakyThrows;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends every customer to every WebSocket session, writing it out as JSON just the once
+ * rather than once for each session. Each customer's frame is encoded into one Netty
+ * buffer, and each session is handed a retained duplicate of it, sharing the bytes but
+ * not the reader index, which Netty releases once it's written the frame. The broadcaster
+ * lets go of its own reference as soon as every session has had its duplicate.
+ * <p>
+ * A session that's not keeping up holds on to no more than {@code maxPending} frames, and
+ * when another one comes along it drops the oldest of them, so that one slow client
+ * neither holds up the rest nor keeps every frame since it fell behind.
+ * <p>
+ * The customers aren't subscribed to until the first session comes along, just as when
+ * each session subscribed to them itself, and from then on for as long as the
+ * broadcaster's around.
+ */
+class CustomerBroadcaster implements DisposableBean {
+
+    private final Flux<Customer> customers;
+
+    private final ObjectMapper objectMapper;
+
+    private final int maxPending;
+
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(ByteBufAllocator.DEFAULT);
+
+    private final Sinks.Many<NettyDataBuffer> frames = Sinks.many().multicast().directBestEffort();
+
+    private final AtomicBoolean connected = new AtomicBoolean();
+
+    private volatile Disposable subscription;
+
+    CustomerBroadcaster(Flux<Customer> customers, ObjectMapper objectMapper, int maxPending) {
+        this.customers = customers;
+        this.objectMapper = objectMapper;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * The frames for one session, from the next customer on.
+     */
+    Flux<WebSocketMessage> messages() {
+        return this.frames.asFlux()
+                .map(frame -> this.bufferFactory.wrap(frame.getNativeBuffer().retainedDuplicate()))
+                .onBackpressureBuffer(this.maxPending, BufferOverflowStrategy.DROP_OLDEST)
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                .map(payload -> new WebSocketMessage(WebSocketMessage.Type.TEXT, payload))
+                .doOnSubscribe(subscription -> connect());
+    }
+
+    void broadcast(Customer customer) {
+        var frame = encode(customer);
+        try {
+            this.frames.tryEmitNext(frame);
+        }
+        finally {
+            frame.release();
+        }
+    }
+
+    private void connect() {
+        if (!this.connected.get() && this.connected.compareAndSet(false, true)) {
+            this.subscription = this.customers.subscribe(this::broadcast);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (this.subscription != null) {
+            this.subscription.dispose();
+        }
+        this.frames.tryEmitComplete();
+    }
+
+    @SneakyThrows
+    private NettyDataBuffer encode(Customer customer) {
+        var frame = this.bufferFactory.allocateBuffer();
+        try (var out = frame.asOutputStream()) {
+            this.objectMapper.writeValue(out, customer);
+        }
+        catch (Exception e) {
+            frame.release();
+            throw e;
+        }
+        return frame;
+    }
+}
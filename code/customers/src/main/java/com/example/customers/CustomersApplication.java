@@ -2,6 +2,7 @@ package com.example.customers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.*;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
@@ -59,21 +60,15 @@ class CustomerWebSocketConfiguration {
 
     private final ObjectMapper objectMapper;
 
-    @SneakyThrows
-    private String from(Customer customer) {
-        return this.objectMapper.writeValueAsString(customer);
+    @Bean
+    CustomerBroadcaster customerBroadcaster(Flux<Customer> customerFlux,
+                                            @Value("${customers.websocket.max-pending:256}") int maxPending) {
+        return new CustomerBroadcaster(customerFlux, this.objectMapper, maxPending);
     }
 
     @Bean
-    WebSocketHandler webSocketHandler(Flux<Customer> customerFlux) {
-        return webSocketSession -> {
-
-            var map = customerFlux
-                    .map(customer -> from(customer))
-                    .map(webSocketSession::textMessage);
-
-            return webSocketSession.send(map);
-        };
+    WebSocketHandler webSocketHandler(CustomerBroadcaster customerBroadcaster) {
+        return webSocketSession -> webSocketSession.send(customerBroadcaster.messages());
     }
 
     @Bean
@@ -0,0 +1,99 @@
+package com.example.customers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.SneakyThrows;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of sending one customer to {@code sessions} WebSocket sessions when
+ * each session writes it out as JSON for itself, as the handler used to, with sending it
+ * through the {@link CustomerBroadcaster}. Each session releases its frame as soon as it
+ * gets it, as Netty would once it's written it out. Run {@link #main(String[])} from the
+ * IDE (or with the test classpath) and compare the time per event, which is CPU time as
+ * it's all on the one thread, and {@code gc.alloc.rate.norm} as {@code sessions} grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerBroadcastBenchmark {
+
+    @Param({"1", "1000", "50000"})
+    int sessions;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Customer customer = new Customer(42, "Francoise");
+
+    private final Sinks.Many<Customer> customers = Sinks.many().multicast().directBestEffort();
+
+    private CustomerBroadcaster broadcaster;
+
+    private final Disposable.Composite subscriptions = Disposables.composite();
+
+    @Setup
+    public void setup() {
+        var bufferFactory = new DefaultDataBufferFactory();
+        var perSession = this.customers.asFlux()
+                .map(customer -> new WebSocketMessage(WebSocketMessage.Type.TEXT,
+                        bufferFactory.wrap(write(customer).getBytes(StandardCharsets.UTF_8))));
+        this.broadcaster = new CustomerBroadcaster(Flux.never(), this.objectMapper, 256);
+        for (var i = 0; i < this.sessions; i++) {
+            this.subscriptions.add(perSession.subscribe(WebSocketMessage::release));
+            this.subscriptions.add(this.broadcaster.messages().subscribe(WebSocketMessage::release));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.subscriptions.dispose();
+    }
+
+    @Benchmark
+    public void perSession() {
+        this.customers.tryEmitNext(this.customer);
+    }
+
+    @Benchmark
+    public void broadcast() {
+        this.broadcaster.broadcast(this.customer);
+    }
+
+    @SneakyThrows
+    private String write(Customer customer) {
+        return this.objectMapper.writeValueAsString(customer);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(CustomerBroadcastBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
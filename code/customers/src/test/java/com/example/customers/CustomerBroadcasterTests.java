@@ -0,0 +1,137 @@
+package com.example.customers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerBroadcasterTests {
+
+    private final AtomicInteger writes = new AtomicInteger();
+
+    private final ObjectMapper objectMapper = new ObjectMapper() {
+
+        @Override
+        public void writeValue(OutputStream out, Object value) throws IOException {
+            writes.incrementAndGet();
+            super.writeValue(out, value);
+        }
+    };
+
+    private final CustomerBroadcaster broadcaster = new CustomerBroadcaster(Flux.never(), this.objectMapper, 2);
+
+    @Test
+    void writesEachCustomerOnceForEverySession() {
+        var sessions = List.of(new Session(), new Session(), new Session());
+        sessions.forEach(session -> this.broadcaster.messages().subscribe(session));
+
+        this.broadcaster.broadcast(new Customer(1, "Jean"));
+        this.broadcaster.broadcast(new Customer(2, "Yuxin"));
+
+        assertThat(this.writes).hasValue(2);
+        for (var session : sessions) {
+            assertThat(session.received()).containsExactly("{\"id\":1,\"name\":\"Jean\"}", "{\"id\":2,\"name\":\"Yuxin\"}");
+            session.release();
+        }
+        assertThat(sessions.get(0).frames).allSatisfy(frame -> assertThat(frame.refCnt()).isZero());
+    }
+
+    @Test
+    void subscribesToTheCustomersOnlyOnceTheFirstSessionComesAlong() {
+        var customers = Sinks.many().multicast().<Customer>directBestEffort();
+        var broadcaster = new CustomerBroadcaster(customers.asFlux(), this.objectMapper, 2);
+        var messages = broadcaster.messages();
+
+        assertThat(customers.currentSubscriberCount()).isZero();
+
+        var first = new Session();
+        messages.subscribe(first);
+        broadcaster.messages().subscribe(new Session());
+        assertThat(customers.currentSubscriberCount()).isOne();
+
+        customers.tryEmitNext(new Customer(1, "Jean"));
+        assertThat(first.received()).containsExactly("{\"id\":1,\"name\":\"Jean\"}");
+        first.release();
+        broadcaster.destroy();
+        assertThat(customers.currentSubscriberCount()).isZero();
+    }
+
+    @Test
+    void dropsTheOldestFramesOfASessionThatFallsBehind() {
+        var fast = new Session();
+        var slow = new Session(0);
+        this.broadcaster.messages().subscribe(fast);
+        this.broadcaster.messages().subscribe(slow);
+
+        for (var id = 1; id <= 5; id++) {
+            this.broadcaster.broadcast(new Customer(id, "Mario"));
+        }
+        slow.request(Long.MAX_VALUE);
+
+        assertThat(fast.received()).hasSize(5);
+        assertThat(slow.received()).containsExactly("{\"id\":4,\"name\":\"Mario\"}", "{\"id\":5,\"name\":\"Mario\"}");
+        fast.release();
+        slow.release();
+        assertThat(fast.frames).allSatisfy(frame -> assertThat(frame.refCnt()).isZero());
+    }
+
+    /**
+     * Stands in for a WebSocket session, keeping hold of what it's sent until it's told to
+     * release it, as Netty would once it's written it out.
+     */
+    private static class Session extends BaseSubscriber<WebSocketMessage> {
+
+        private final long initialRequest;
+
+        private final List<WebSocketMessage> messages = new ArrayList<>();
+
+        private final List<ByteBuf> frames = new ArrayList<>();
+
+        Session() {
+            this(Long.MAX_VALUE);
+        }
+
+        Session(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            if (this.initialRequest > 0) {
+                subscription.request(this.initialRequest);
+            }
+        }
+
+        @Override
+        protected void hookOnNext(WebSocketMessage message) {
+            this.messages.add(message);
+            this.frames.add(((NettyDataBuffer) message.getPayload()).getNativeBuffer().unwrap());
+        }
+
+        List<String> received() {
+            var received = new ArrayList<String>();
+            for (var message : this.messages) {
+                received.add(message.getPayload().toString(StandardCharsets.UTF_8));
+            }
+            return received;
+        }
+
+        void release() {
+            this.messages.forEach(message -> message.release());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.gateway;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.RewritePathGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.GatewayToStringStyler;
+import org.springframework.cloud.gateway.support.NameUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.addOriginalRequestUrl;
+
+/**
+ * Stands in for the stock {@link RewritePathGatewayFilterFactory}, which hands the regexp
+ * to {@link String#replaceAll(String, String)} - and so compiles it again - on every
+ * request. Here it's compiled into a {@link PathRewriter} once, when the route is built.
+ */
+class CompiledRewritePathGatewayFilterFactory extends RewritePathGatewayFilterFactory {
+
+    private final int cacheSize;
+
+    CompiledRewritePathGatewayFilterFactory(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Route definitions find their filters by name, and ours is still {@code RewritePath}.
+     */
+    @Override
+    public String name() {
+        return NameUtils.normalizeFilterFactoryName(RewritePathGatewayFilterFactory.class);
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        var replacement = config.getReplacement().replace("$\\", "$");
+        var rewriter = PathRewriter.compile(config.getRegexp(), replacement, this.cacheSize);
+        return new GatewayFilter() {
+
+            @Override
+            public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+                var req = exchange.getRequest();
+                addOriginalRequestUrl(exchange, req.getURI());
+                var newPath = rewriter.rewrite(req.getURI().getRawPath());
+                var request = req.mutate().path(newPath).build();
+                exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, request.getURI());
+                return chain.filter(exchange.mutate().request(request).build());
+            }
+
+            @Override
+            public String toString() {
+                return GatewayToStringStyler.filterToStringCreator(CompiledRewritePathGatewayFilterFactory.this)
+                        .append(config.getRegexp(), replacement)
+                        .toString();
+            }
+        };
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.gateway;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.context.refresh.ContextRefresher;
+import org.springframework.cloud.context.scope.refresh.RefreshScope;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.time.Duration;
+
+/**
+ * Opt-in refreshes whenever the configuration changes, through a
+ * {@link ConfigurationWatcher}. Turn it on with {@code gateway.config.watch.enabled=true}.
+ * It watches the first of {@code spring.cloud.config.uri}, for the application, profile
+ * and label the configuration was loaded for, {@code gateway.config.watch.wait} at a time.
+ */
+@Configuration
+@ConditionalOnProperty(name = "gateway.config.watch.enabled", havingValue = "true")
+class ConfigurationWatchConfiguration {
+
+    @Bean
+    ConfigurationWatcher configurationWatcher(WebClient.Builder webClientBuilder, ContextRefresher contextRefresher, RefreshScope refreshScope,
+                                              @Value("${spring.cloud.config.uri:http://localhost:8888}") String[] uris,
+                                              @Value("${spring.cloud.config.name:${spring.application.name:application}}") String application,
+                                              @Value("${spring.cloud.config.profile:default}") String profile,
+                                              @Value("${spring.cloud.config.label:}") String label,
+                                              @Value("${config.client.version:#{null}}") String version,
+                                              @Value("${gateway.config.watch.wait:30s}") Duration wait) {
+        var uri = UriComponentsBuilder.fromUriString(uris[0]).pathSegment("watch", application, profile);
+        if (!label.isEmpty()) {
+            uri.pathSegment(label);
+        }
+        return new ConfigurationWatcher(webClientBuilder.build(), uri.build().toUri(), wait, version, contextRefresher, refreshScope);
+    }
+}
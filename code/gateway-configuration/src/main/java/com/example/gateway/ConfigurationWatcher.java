@@ -0,0 +1,107 @@
+package com.example.gateway;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.context.refresh.ContextRefresher;
+import org.springframework.cloud.context.scope.refresh.RefreshScope;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * Waits on the config server's {@code /watch} endpoint for the version of this
+ * gateway's environment to change, instead of someone having to {@code POST} to
+ * {@code /actuator/refresh} on every instance, and refreshes the environment when it
+ * does. The routes, and everything else in the refresh scope, are only refreshed if some
+ * property actually changed: a new commit that's only about other applications changes
+ * just the {@code config.client.*} properties, which don't count.
+ */
+@Log4j2
+class ConfigurationWatcher implements InitializingBean, DisposableBean {
+
+    private final WebClient webClient;
+
+    private final URI uri;
+
+    private final Duration wait;
+
+    private final ContextRefresher contextRefresher;
+
+    private final RefreshScope refreshScope;
+
+    private volatile String version;
+
+    private Disposable subscription;
+
+    ConfigurationWatcher(WebClient webClient, URI uri, Duration wait, String version,
+                         ContextRefresher contextRefresher, RefreshScope refreshScope) {
+        this.webClient = webClient;
+        this.uri = uri;
+        this.wait = wait;
+        this.version = version;
+        this.contextRefresher = contextRefresher;
+        this.refreshScope = refreshScope;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        this.subscription = Mono.defer(this::watch)
+                .filter(version -> !Objects.equals(version, this.version))
+                .flatMap(version -> Mono.fromRunnable(() -> refresh(version)).subscribeOn(Schedulers.boundedElastic()))
+                .repeatWhen(repeats -> repeats.delayElements(Duration.ofSeconds(1)))
+                .doOnError(e -> log.warn("couldn't watch " + this.uri + " for changes: " + e.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)).transientErrors(true))
+                .subscribe();
+    }
+
+    @Override
+    public void destroy() {
+        if (this.subscription != null) {
+            this.subscription.dispose();
+        }
+    }
+
+    /**
+     * The version the config server has now, or nothing if it's still the one we have.
+     */
+    private Mono<String> watch() {
+        var uri = UriComponentsBuilder.fromUri(this.uri).queryParam("wait", this.wait.toSeconds());
+        if (this.version != null) {
+            uri.queryParam("version", this.version);
+        }
+        return this.webClient.get()
+                .uri(uri.build().toUri())
+                .exchangeToMono(response -> {
+                    if (response.statusCode() == HttpStatus.NOT_MODIFIED) {
+                        return response.releaseBody().then(Mono.empty());
+                    }
+                    return response.statusCode().is2xxSuccessful() ? response.bodyToMono(Environment.class)
+                            : response.createException().flatMap(Mono::error);
+                })
+                .timeout(this.wait.plusSeconds(10))
+                .flatMap(environment -> Mono.justOrEmpty(environment.getVersion()));
+    }
+
+    private void refresh(String version) {
+        var keys = new TreeSet<>(this.contextRefresher.refreshEnvironment());
+        keys.removeIf(key -> key.startsWith("config.client."));
+        this.version = version;
+        if (keys.isEmpty()) {
+            log.info("version " + version + " of the configuration changes nothing here");
+            return;
+        }
+        log.info("refreshing for version " + version + " of the configuration, which changes " + keys);
+        this.refreshScope.refreshAll();
+    }
+}
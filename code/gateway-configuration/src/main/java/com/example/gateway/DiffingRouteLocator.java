@@ -0,0 +1,95 @@
+package com.example.gateway;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.route.CachingRouteLocator;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link CachingRouteLocator} that, on refresh, diffs the freshly built routes against
+ * the current {@link RouteTable} instead of replacing them wholesale. Unchanged routes
+ * keep their {@link Route} instances, and so their filters and whatever those have warmed
+ * up; the new table is swapped in with a single atomic update; and the
+ * {@link RefreshRoutesDiffEvent} says which route ids were added, removed or changed.
+ */
+@Log4j2
+class DiffingRouteLocator extends CachingRouteLocator {
+
+    private final RouteLocator delegate;
+
+    private final AtomicReference<RouteTable> table = new AtomicReference<>();
+
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    DiffingRouteLocator(RouteLocator delegate) {
+        super(delegate);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Flux<Route> getRoutes() {
+        return Flux.defer(() -> {
+            var current = this.table.get();
+            return current != null ? Flux.fromIterable(current.getRoutes()) : fetch().flatMapIterable(update -> update.table.getRoutes());
+        });
+    }
+
+    @Override
+    public Flux<Route> refresh() {
+        return fetch().flatMapIterable(update -> update.table.getRoutes());
+    }
+
+    @Override
+    public void onApplicationEvent(RefreshRoutesEvent event) {
+        try {
+            fetch().subscribe(update -> this.applicationEventPublisher.publishEvent(
+                    new RefreshRoutesDiffEvent(this, update.added, update.removed, update.changed)),
+                    this::handleRefreshError);
+        }
+        catch (Throwable throwable) {
+            handleRefreshError(throwable);
+        }
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        super.setApplicationEventPublisher(applicationEventPublisher);
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    /**
+     * Builds the routes, diffs them against the current table and swaps in the result. If
+     * another refresh swapped in a table in the meantime we diff against that one instead,
+     * so every event describes exactly the swap it reports.
+     */
+    private Mono<RouteTable.Update> fetch() {
+        return this.delegate.getRoutes()
+                .sort(AnnotationAwareOrderComparator.INSTANCE)
+                .collectList()
+                .map(this::install);
+    }
+
+    private RouteTable.Update install(List<Route> routes) {
+        while (true) {
+            var current = this.table.get();
+            var update = (current == null ? RouteTable.EMPTY : current).update(routes);
+            if (this.table.compareAndSet(current, update.table)) {
+                return update;
+            }
+        }
+    }
+
+    private void handleRefreshError(Throwable throwable) {
+        log.error("Refresh routes error !!!", throwable);
+        this.applicationEventPublisher.publishEvent(new RefreshRoutesResultEvent(this, throwable));
+    }
+}
@@ -15,7 +15,6 @@ import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.util.Assert;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -42,6 +41,10 @@ public class GatewayApplication {
     ApplicationListener<RefreshRoutesResultEvent> routesRefreshed() {
         return rre -> {
             log.info(rre.getClass().getSimpleName());
+            if (rre instanceof RefreshRoutesDiffEvent) {
+                log.info(rre);
+                return;
+            }
             Assert.state(rre.getSource() instanceof CachingRouteLocator, () -> "the " + rre.getClass().getName() + " routes must be refreshed");
             CachingRouteLocator source = (CachingRouteLocator) rre.getSource();
             Flux<Route> routes = source.getRoutes();
@@ -65,13 +68,13 @@ public class GatewayApplication {
         var singleRoute = Route//
                 .async() //
                 .id("orders-json-to-orders") //
-                .asyncPredicate(request -> {
+                .asyncPredicate(SynchronousPredicate.of(request -> {
                     var uri = request.getRequest().getURI();
                     var path = uri.getPath();
                     var match = path.contains("o/");
                     log.debug("result for " + uri + '/' + path + " " + match);
-                    return Mono.just(match);
-                })
+                    return match;
+                }))
                 .filter(new OrderedGatewayFilter(rewritePathGatewayFilter, 0)) //
                 .filter(new OrderedGatewayFilter((exchange, chain) -> {
                     log.info("new URI: " + exchange.getRequest().getURI());
@@ -0,0 +1,29 @@
+package com.example.gateway;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.gateway.route.CompositeRouteLocator;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Opt-in diff-based route refreshes through a {@link DiffingRouteLocator}. Turn it on with
+ * {@code gateway.incremental-refresh.enabled=true}.
+ * <p>
+ * The bean takes the place of the gateway's own {@code cachedCompositeRouteLocator}, which
+ * backs off when there's already a bean by that name.
+ */
+@Configuration
+@ConditionalOnProperty(name = "gateway.incremental-refresh.enabled", havingValue = "true")
+class IncrementalRefreshConfiguration {
+
+    @Bean
+    @Primary
+    RouteLocator cachedCompositeRouteLocator(List<RouteLocator> routeLocators) {
+        return new DiffingRouteLocator(new CompositeRouteLocator(Flux.fromIterable(routeLocators)));
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.gateway;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.core.env.Environment;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_PREDICATE_ROUTE_ATTR;
+
+/**
+ * A {@link RoutePredicateHandlerMapping} that only evaluates the predicates of the routes
+ * the {@link RouteIndex} says could match the request, instead of every route in turn.
+ * Until the first index has been built it behaves exactly like the stock mapping.
+ * <p>
+ * {@link SynchronousPredicate}s are tested inline, so a request that's matched by one of
+ * them doesn't subscribe to a single {@link Mono}; we only switch to the reactive scan once
+ * we reach a candidate whose predicate is truly asynchronous.
+ */
+@Log4j2
+class IndexedRoutePredicateHandlerMapping extends RoutePredicateHandlerMapping {
+
+    private final RouteIndexer routeIndexer;
+
+    IndexedRoutePredicateHandlerMapping(FilteringWebHandler webHandler, RouteLocator routeLocator,
+                                        GlobalCorsProperties globalCorsProperties, Environment environment,
+                                        RouteIndexer routeIndexer) {
+        super(webHandler, routeLocator, globalCorsProperties, environment);
+        this.routeIndexer = routeIndexer;
+    }
+
+    @Override
+    protected Mono<Route> lookupRoute(ServerWebExchange exchange) {
+        var index = this.routeIndexer.getIndex();
+        if (index == null) {
+            return super.lookupRoute(exchange);
+        }
+        var candidates = index.candidates(exchange.getRequest().getPath().pathWithinApplication());
+        for (var i = 0; i < candidates.length; i++) {
+            var candidate = candidates[i];
+            if (candidate.test == null) {
+                return lookupRoute(exchange, candidates, i);
+            }
+            exchange.getAttributes().put(GATEWAY_PREDICATE_ROUTE_ATTR, candidate.route.getId());
+            boolean matched;
+            try {
+                matched = candidate.test.test(exchange);
+            }
+            catch (RuntimeException e) {
+                log.error("Error applying predicate for route: " + candidate.route.getId(), e);
+                continue;
+            }
+            if (matched) {
+                validateRoute(candidate.route, exchange);
+                return candidate.match;
+            }
+        }
+        return Mono.empty();
+    }
+
+    /**
+     * The reactive fallback for when we reach a candidate whose predicate is truly
+     * asynchronous. Synchronous candidates after it are still cheap: their
+     * {@link SynchronousPredicate#apply(ServerWebExchange)} hands back a cached {@link Mono}.
+     */
+    private Mono<Route> lookupRoute(ServerWebExchange exchange, RouteIndex.Candidate[] candidates, int from) {
+        return Flux.range(from, candidates.length - from)
+                .map(i -> candidates[i].route)
+                .concatMap(route -> Mono.just(route)
+                        .filterWhen(r -> {
+                            exchange.getAttributes().put(GATEWAY_PREDICATE_ROUTE_ATTR, r.getId());
+                            return r.getPredicate().apply(exchange);
+                        })
+                        .doOnError(e -> log.error("Error applying predicate for route: " + route.getId(), e))
+                        .onErrorResume(e -> Mono.empty()))
+                .next()
+                .map(route -> {
+                    validateRoute(route, exchange);
+                    return route;
+                });
+    }
+}
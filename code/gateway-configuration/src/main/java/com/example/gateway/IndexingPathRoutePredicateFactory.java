@@ -0,0 +1,20 @@
+package com.example.gateway;
+
+import org.springframework.cloud.gateway.handler.AsyncPredicate;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * Stands in for the stock {@link PathRoutePredicateFactory} so that every {@code path(...)}
+ * predicate - whether it comes from the Java DSL, from YAML or from the discovery
+ * locator - keeps its patterns around for the {@link RouteIndex} and can be evaluated
+ * as a {@link SynchronousPredicate}. Matching itself is still done by the stock factory.
+ */
+class IndexingPathRoutePredicateFactory extends PathRoutePredicateFactory {
+
+    @Override
+    public AsyncPredicate<ServerWebExchange> applyAsync(Config config) {
+        var predicate = apply(config);
+        return new PathPatternPredicate(config.getPatterns(), SynchronousPredicate.of(predicate), predicate.toString());
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.gateway;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A bounded, approximately least-recently-used cache.
+ * <p>
+ * Hits are a {@link ConcurrentHashMap} lookup and, at most, a plain write of the entry's
+ * access stamp; they never lock. Once the cache grows past its capacity, whichever thread
+ * notices first evicts the least recently used tenth of it while the others carry on.
+ */
+final class LruCache<K, V> {
+
+    private final int capacity;
+
+    private final ConcurrentHashMap<K, Entry<V>> entries;
+
+    /**
+     * Ticks on every miss, so entries hit between two misses share the same stamp.
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final ReentrantLock eviction = new ReentrantLock();
+
+    LruCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new ConcurrentHashMap<>(capacity + capacity / 4);
+    }
+
+    V get(K key, Function<K, V> loader) {
+        var entry = this.entries.get(key);
+        var now = this.clock.get();
+        if (entry != null) {
+            if (entry.accessed != now) {
+                entry.accessed = now;
+            }
+            return entry.value;
+        }
+        var value = loader.apply(key);
+        this.entries.put(key, new Entry<>(value, this.clock.incrementAndGet()));
+        if (this.entries.size() > this.capacity && this.eviction.tryLock()) {
+            try {
+                evict();
+            }
+            finally {
+                this.eviction.unlock();
+            }
+        }
+        return value;
+    }
+
+    int size() {
+        return this.entries.size();
+    }
+
+    private void evict() {
+        var stamps = this.entries.values().stream().mapToLong(entry -> entry.accessed).toArray();
+        if (stamps.length <= this.capacity) {
+            return;
+        }
+        Arrays.sort(stamps);
+        var oldest = stamps[Math.min(stamps.length - this.capacity + this.capacity / 10, stamps.length) - 1];
+        this.entries.values().removeIf(entry -> entry.accessed <= oldest);
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+
+        private volatile long accessed;
+
+        Entry(V value, long accessed) {
+            this.value = value;
+            this.accessed = accessed;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.gateway;
+
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.handler.AsyncPredicate;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.List;
+
+/**
+ * A route predicate that remembers the {@code path(...)} patterns it was built from.
+ * <p>
+ * The patterns are a necessary condition for the predicate: it can never be {@code true}
+ * for a request whose path doesn't match one of them. That's what lets the
+ * {@link RouteIndex} file the route under the literal prefix of its patterns. Combining
+ * it with {@code and()} keeps that guarantee, so the combined predicate is still
+ * indexable; {@code or()} and {@code negate()} don't, and fall back to the ordered scan.
+ */
+class PathPatternPredicate implements AsyncPredicate<ServerWebExchange> {
+
+    private final List<String> patterns;
+
+    private final AsyncPredicate<ServerWebExchange> delegate;
+
+    private final String description;
+
+    PathPatternPredicate(List<String> patterns, AsyncPredicate<ServerWebExchange> delegate, String description) {
+        this.patterns = List.copyOf(patterns);
+        this.delegate = delegate;
+        this.description = description;
+    }
+
+    List<String> getPatterns() {
+        return this.patterns;
+    }
+
+    /**
+     * The whole predicate in its synchronous form, or {@code null} if part of it has to
+     * be evaluated asynchronously.
+     */
+    SynchronousPredicate synchronous() {
+        return this.delegate instanceof SynchronousPredicate ? (SynchronousPredicate) this.delegate : null;
+    }
+
+    @Override
+    public Publisher<Boolean> apply(ServerWebExchange exchange) {
+        return this.delegate.apply(exchange);
+    }
+
+    @Override
+    public AsyncPredicate<ServerWebExchange> and(AsyncPredicate<? super ServerWebExchange> other) {
+        return new PathPatternPredicate(this.patterns, this.delegate.and(other), "(" + this.description + " && " + other + ")");
+    }
+
+    @Override
+    public String toString() {
+        return this.description;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.gateway;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.gateway.filter.factory.RewritePathGatewayFilterFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Swaps the stock {@link RewritePathGatewayFilterFactory} for one that compiles each
+ * {@code rewritePath(...)} once per route refresh. The rewritten paths are the same either
+ * way, so it's on unless {@code gateway.path-rewrite.enabled=false}; at most
+ * {@code gateway.path-rewrite.cache-size} rewritten paths are remembered per filter.
+ */
+@Configuration
+@ConditionalOnProperty(name = "gateway.path-rewrite.enabled", havingValue = "true", matchIfMissing = true)
+class PathRewriteConfiguration {
+
+    @Bean
+    static BeanPostProcessor pathRewriteBeanPostProcessor() {
+        return new PathRewriteBeanPostProcessor();
+    }
+
+    static class PathRewriteBeanPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+        private AutowireCapableBeanFactory beanFactory;
+
+        @Override
+        public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+            this.beanFactory = (AutowireCapableBeanFactory) beanFactory;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+            if (bean instanceof RewritePathGatewayFilterFactory && !(bean instanceof CompiledRewritePathGatewayFilterFactory)) {
+                var cacheSize = this.beanFactory.getBean(Environment.class)
+                        .getProperty("gateway.path-rewrite.cache-size", Integer.class, 1024);
+                return this.beanFactory.initializeBean(new CompiledRewritePathGatewayFilterFactory(cacheSize), beanName);
+            }
+            return bean;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.gateway;
+
+import java.util.ArrayList;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A {@code rewritePath(regexp, replacement)} compiled once, when the route is built,
+ * instead of on every request.
+ * <p>
+ * {@link #rewrite(String)} always returns what {@code path.replaceAll(regexp, replacement)}
+ * would, but the common shapes skip the regex engine altogether:
+ * <ul>
+ * <li>a fully literal regexp, like {@code /api}, is a plain {@link String#replace}</li>
+ * <li>a literal prefix, one {@code (.*)} or {@code (?<name>.*)} group and a literal suffix,
+ * like {@code /twitter/@(?<handle>.*)} or {@code \/o\/(?<segment>.*)\.json}, is a couple of
+ * {@code indexOf}s and substrings</li>
+ * </ul>
+ * Anything else uses a precompiled {@link Pattern} and, unless {@code cacheSize} is zero,
+ * remembers the rewritten paths of the most frequent inputs in an {@link LruCache}.
+ */
+abstract class PathRewriter {
+
+    abstract String rewrite(String path);
+
+    static PathRewriter compile(String regexp, String replacement, int cacheSize) {
+        var pattern = Pattern.compile(regexp);
+        var open = regexp.indexOf('(');
+        if (open < 0) {
+            var literal = unescape(regexp);
+            if (literal != null && !literal.isEmpty() && replacement.indexOf('$') < 0 && replacement.indexOf('\\') < 0) {
+                return new LiteralPathRewriter(literal, replacement);
+            }
+        }
+        else {
+            var slice = SlicePathRewriter.compile(regexp, open, replacement);
+            if (slice != null) {
+                return slice;
+            }
+        }
+        var rewriter = new RegexPathRewriter(pattern, replacement);
+        return cacheSize > 0 ? new CachingPathRewriter(rewriter, cacheSize) : rewriter;
+    }
+
+    /**
+     * The text a regexp fragment matches, or {@code null} if it isn't just literal text.
+     */
+    private static String unescape(String fragment) {
+        var literal = new StringBuilder(fragment.length());
+        for (var i = 0; i < fragment.length(); i++) {
+            var c = fragment.charAt(i);
+            if (c == '\\') {
+                if (++i == fragment.length() || Character.isLetterOrDigit(fragment.charAt(i))) {
+                    return null;
+                }
+                literal.append(fragment.charAt(i));
+            }
+            else if (".[]{}()*+?^$|".indexOf(c) >= 0) {
+                return null;
+            }
+            else {
+                literal.append(c);
+            }
+        }
+        return literal.toString();
+    }
+
+    private static final class LiteralPathRewriter extends PathRewriter {
+
+        private final String literal;
+
+        private final String replacement;
+
+        LiteralPathRewriter(String literal, String replacement) {
+            this.literal = literal;
+            this.replacement = replacement;
+        }
+
+        @Override
+        String rewrite(String path) {
+            return path.replace(this.literal, this.replacement);
+        }
+    }
+
+    /**
+     * {@code prefix(.*)suffix}: the match starts at the first occurrence of the prefix and,
+     * because {@code .*} is greedy, ends at the last occurrence of the suffix after it.
+     */
+    private static final class SlicePathRewriter extends PathRewriter {
+
+        private static final String GROUP = ".*)";
+
+        private static final Pattern GROUP_NAME = Pattern.compile("[a-zA-Z][a-zA-Z0-9]*");
+
+        private final String prefix;
+
+        private final String suffix;
+
+        /**
+         * The replacement, split around references to the group: literal text at even
+         * positions, the group's value goes in between.
+         */
+        private final String[] parts;
+
+        private SlicePathRewriter(String prefix, String suffix, String[] parts) {
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.parts = parts;
+        }
+
+        static SlicePathRewriter compile(String regexp, int open, String replacement) {
+            var name = (String) null;
+            var body = open + 1;
+            if (regexp.startsWith("?<", body)) {
+                var close = regexp.indexOf('>', body);
+                if (close < 0) {
+                    return null;
+                }
+                name = regexp.substring(body + 2, close);
+                if (!GROUP_NAME.matcher(name).matches()) {
+                    return null;
+                }
+                body = close + 1;
+            }
+            if (!regexp.startsWith(GROUP, body)) {
+                return null;
+            }
+            var prefix = unescape(regexp.substring(0, open));
+            var suffix = unescape(regexp.substring(body + GROUP.length()));
+            if (prefix == null || prefix.isEmpty() || suffix == null) {
+                return null;
+            }
+            var parts = parse(replacement, name);
+            return parts == null ? null : new SlicePathRewriter(prefix, suffix, parts);
+        }
+
+        /**
+         * Splits a {@link Matcher#replaceAll(String)} replacement around references to group
+         * 1, or {@code null} if it refers to anything else.
+         */
+        private static String[] parse(String replacement, String name) {
+            var parts = new ArrayList<String>();
+            var literal = new StringBuilder();
+            for (var i = 0; i < replacement.length(); i++) {
+                var c = replacement.charAt(i);
+                if (c == '\\') {
+                    if (++i == replacement.length()) {
+                        return null;
+                    }
+                    literal.append(replacement.charAt(i));
+                }
+                else if (c == '$') {
+                    if (++i == replacement.length()) {
+                        return null;
+                    }
+                    if (replacement.charAt(i) == '{') {
+                        var close = replacement.indexOf('}', i);
+                        if (close < 0 || name == null || !name.equals(replacement.substring(i + 1, close))) {
+                            return null;
+                        }
+                        i = close;
+                    }
+                    else if (replacement.charAt(i) != '1') {
+                        return null;
+                    }
+                    parts.add(literal.toString());
+                    literal.setLength(0);
+                }
+                else {
+                    literal.append(c);
+                }
+            }
+            parts.add(literal.toString());
+            return parts.toArray(new String[0]);
+        }
+
+        @Override
+        String rewrite(String path) {
+            var start = path.indexOf(this.prefix);
+            if (start < 0) {
+                return path;
+            }
+            var from = start + this.prefix.length();
+            var to = this.suffix.isEmpty() ? path.length() : path.lastIndexOf(this.suffix);
+            if (to < from) {
+                return path;
+            }
+            var end = to + this.suffix.length();
+            var value = path.substring(from, to);
+            var rewritten = new StringBuilder(path.length() + 16)
+                    .append(path, 0, start)
+                    .append(this.parts[0]);
+            for (var i = 1; i < this.parts.length; i++) {
+                rewritten.append(value).append(this.parts[i]);
+            }
+            return rewritten.append(path, end, path.length()).toString();
+        }
+    }
+
+    private static final class RegexPathRewriter extends PathRewriter {
+
+        private final Pattern pattern;
+
+        private final String replacement;
+
+        RegexPathRewriter(Pattern pattern, String replacement) {
+            this.pattern = pattern;
+            this.replacement = replacement;
+        }
+
+        @Override
+        String rewrite(String path) {
+            return this.pattern.matcher(path).replaceAll(this.replacement);
+        }
+    }
+
+    private static final class CachingPathRewriter extends PathRewriter {
+
+        private final Function<String, String> delegate;
+
+        private final LruCache<String, String> cache;
+
+        CachingPathRewriter(PathRewriter delegate, int cacheSize) {
+            this.delegate = delegate::rewrite;
+            this.cache = new LruCache<>(cacheSize);
+        }
+
+        @Override
+        String rewrite(String path) {
+            return this.cache.get(path, this.delegate);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.gateway;
+
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+
+import java.util.List;
+
+/**
+ * A successful {@link RefreshRoutesResultEvent} that also says which route ids were added,
+ * removed or changed by the refresh. Listeners of the stock event receive it too.
+ */
+class RefreshRoutesDiffEvent extends RefreshRoutesResultEvent {
+
+    private final List<String> added;
+
+    private final List<String> removed;
+
+    private final List<String> changed;
+
+    RefreshRoutesDiffEvent(Object source, List<String> added, List<String> removed, List<String> changed) {
+        super(source);
+        this.added = added;
+        this.removed = removed;
+        this.changed = changed;
+    }
+
+    List<String> getAdded() {
+        return this.added;
+    }
+
+    List<String> getRemoved() {
+        return this.removed;
+    }
+
+    List<String> getChanged() {
+        return this.changed;
+    }
+
+    /**
+     * Whether the refresh left every route as it was.
+     */
+    boolean isEmpty() {
+        return this.added.isEmpty() && this.removed.isEmpty() && this.changed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{added=" + this.added + ", removed=" + this.removed + ", changed=" + this.changed + "}";
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.gateway;
+
+import org.apache.commons.logging.Log;
+import org.springframework.cloud.config.client.ConfigClientProperties;
+import org.springframework.cloud.config.client.ConfigServerConfigDataLocationResolver;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+
+/**
+ * Resolves {@code configserver:} imports in place of the config client's own resolver,
+ * which it goes ahead of, so that every request for the environment goes through the
+ * same {@link EnvironmentRevalidator}. A refresh resolves the imports again, with a new
+ * {@link RestTemplate}, so the revalidator has to outlive them.
+ */
+class RevalidatingConfigServerConfigDataLocationResolver extends ConfigServerConfigDataLocationResolver {
+
+    private static final EnvironmentRevalidator REVALIDATOR = new EnvironmentRevalidator();
+
+    RevalidatingConfigServerConfigDataLocationResolver(Log log) {
+        super(log);
+    }
+
+    @Override
+    public int getOrder() {
+        return super.getOrder() - 1;
+    }
+
+    @Override
+    protected RestTemplate createRestTemplate(ConfigClientProperties properties) {
+        var restTemplate = super.createRestTemplate(properties);
+        var interceptors = new ArrayList<>(restTemplate.getInterceptors());
+        interceptors.add(REVALIDATOR);
+        restTemplate.setInterceptors(interceptors);
+        return restTemplate;
+    }
+}
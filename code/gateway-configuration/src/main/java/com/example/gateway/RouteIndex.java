@@ -0,0 +1,180 @@
+package com.example.gateway;
+
+import org.springframework.cloud.gateway.handler.AsyncPredicate;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * An immutable snapshot of the route table, compiled into a trie keyed by the literal
+ * leading segments of each route's {@code path(...)} patterns.
+ * <p>
+ * A lookup walks the request path down the trie and returns the candidates stored at the
+ * deepest node it reaches. Those candidates are precomputed when the index is built: the
+ * routes filed under that node or any of its ancestors, plus every route whose predicate
+ * couldn't be indexed, all in the order the {@link org.springframework.cloud.gateway.route.RouteLocator}
+ * emitted them. The candidates still have their predicates evaluated in that order, so
+ * first-match-wins semantics are unchanged - the trie only skips routes that could never
+ * match.
+ * <p>
+ * Each {@link Candidate} also carries what the handler mapping needs to match it without
+ * allocating: the route's predicate in {@link SynchronousPredicate} form, if it has one,
+ * and a ready-made {@link Mono} of the route to return.
+ */
+final class RouteIndex {
+
+    private final Node root;
+
+    private final int routes;
+
+    private final int unindexed;
+
+    private RouteIndex(Node root, int routes, int unindexed) {
+        this.root = root;
+        this.routes = routes;
+        this.unindexed = unindexed;
+    }
+
+    static RouteIndex of(List<Route> routes) {
+        var root = new Node();
+        var candidates = routes.stream().map(Candidate::new).toArray(Candidate[]::new);
+        var unindexed = new TreeSet<Integer>();
+        for (var position = 0; position < routes.size(); position++) {
+            var prefixes = literalPrefixes(routes.get(position).getPredicate());
+            if (prefixes == null) {
+                unindexed.add(position);
+                continue;
+            }
+            for (var prefix : prefixes) {
+                root.descend(prefix).positions.add(position);
+            }
+        }
+        root.seal(candidates, unindexed);
+        return new RouteIndex(root, routes.size(), unindexed.size());
+    }
+
+    /**
+     * The routes that could match the given path, in route order. The returned array is
+     * shared and must not be modified.
+     */
+    Candidate[] candidates(PathContainer path) {
+        var node = this.root;
+        var elements = path.elements();
+        for (var i = 0; i < elements.size(); i++) {
+            var element = elements.get(i);
+            if (element instanceof PathContainer.PathSegment) {
+                var child = node.children.get(((PathContainer.PathSegment) element).valueToMatch());
+                if (child == null) {
+                    break;
+                }
+                node = child;
+            }
+        }
+        return node.candidates;
+    }
+
+    int size() {
+        return this.routes;
+    }
+
+    int unindexed() {
+        return this.unindexed;
+    }
+
+    /**
+     * The literal prefix of each of the predicate's path patterns, or {@code null} if the
+     * predicate can't be indexed.
+     */
+    private static List<List<String>> literalPrefixes(AsyncPredicate<ServerWebExchange> predicate) {
+        if (!(predicate instanceof PathPatternPredicate)) {
+            return null;
+        }
+        var patterns = ((PathPatternPredicate) predicate).getPatterns();
+        var prefixes = new ArrayList<List<String>>(patterns.size());
+        for (var pattern : patterns) {
+            if (!pattern.startsWith("/")) {
+                return null;
+            }
+            var prefix = new ArrayList<String>();
+            for (var segment : pattern.substring(1).split("/")) {
+                if (segment.isEmpty() || !isLiteral(segment)) {
+                    break;
+                }
+                prefix.add(segment);
+            }
+            prefixes.add(prefix);
+        }
+        return prefixes;
+    }
+
+    private static boolean isLiteral(String segment) {
+        for (var i = 0; i < segment.length(); i++) {
+            switch (segment.charAt(i)) {
+                case '{':
+                case '}':
+                case '*':
+                case '?':
+                case '%':
+                case ';':
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+
+        private final TreeSet<Integer> positions = new TreeSet<>();
+
+        private Candidate[] candidates;
+
+        Node descend(List<String> prefix) {
+            var node = this;
+            for (var segment : prefix) {
+                node = node.children.computeIfAbsent(segment, s -> new Node());
+            }
+            return node;
+        }
+
+        void seal(Candidate[] candidates, TreeSet<Integer> inherited) {
+            var own = new TreeSet<>(inherited);
+            own.addAll(this.positions);
+            this.candidates = own.stream().map(position -> candidates[position]).toArray(Candidate[]::new);
+            this.children.values().forEach(child -> child.seal(candidates, own));
+        }
+    }
+
+    static final class Candidate {
+
+        final Route route;
+
+        final SynchronousPredicate test;
+
+        final Mono<Route> match;
+
+        private Candidate(Route route) {
+            this.route = route;
+            this.test = synchronous(route.getPredicate());
+            this.match = Mono.just(route);
+        }
+
+        private static SynchronousPredicate synchronous(AsyncPredicate<ServerWebExchange> predicate) {
+            if (predicate instanceof SynchronousPredicate) {
+                return (SynchronousPredicate) predicate;
+            }
+            if (predicate instanceof PathPatternPredicate) {
+                return ((PathPatternPredicate) predicate).synchronous();
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.gateway;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Opt-in route lookup through a {@link RouteIndex}. Turn it on with
+ * {@code gateway.route-index.enabled=true}.
+ * <p>
+ * Spring Cloud Gateway doesn't let us override its {@link RoutePredicateHandlerMapping} or
+ * {@link PathRoutePredicateFactory} beans, so we swap in our subclasses as they're created.
+ */
+@Configuration
+@ConditionalOnProperty(name = "gateway.route-index.enabled", havingValue = "true")
+class RouteIndexConfiguration {
+
+    @Bean
+    RouteIndexer routeIndexer() {
+        return new RouteIndexer();
+    }
+
+    @Bean
+    static BeanPostProcessor routeIndexBeanPostProcessor() {
+        return new RouteIndexBeanPostProcessor();
+    }
+
+    static class RouteIndexBeanPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+        private AutowireCapableBeanFactory beanFactory;
+
+        @Override
+        public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+            this.beanFactory = (AutowireCapableBeanFactory) beanFactory;
+        }
+
+        @Override
+        public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+            if (bean instanceof PathRoutePredicateFactory && !(bean instanceof IndexingPathRoutePredicateFactory)) {
+                return new IndexingPathRoutePredicateFactory();
+            }
+            return bean;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+            if (bean instanceof RoutePredicateHandlerMapping && !(bean instanceof IndexedRoutePredicateHandlerMapping)) {
+                var mapping = new IndexedRoutePredicateHandlerMapping(
+                        this.beanFactory.getBean(FilteringWebHandler.class),
+                        this.beanFactory.getBean(RouteLocator.class),
+                        this.beanFactory.getBean(GlobalCorsProperties.class),
+                        this.beanFactory.getBean(Environment.class),
+                        this.beanFactory.getBean(RouteIndexer.class));
+                return this.beanFactory.initializeBean(mapping, beanName);
+            }
+            return bean;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.gateway;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.route.CachingRouteLocator;
+import org.springframework.context.ApplicationListener;
+import org.springframework.util.Assert;
+
+/**
+ * Recompiles the {@link RouteIndex} whenever the {@link CachingRouteLocator} has
+ * finished refreshing its routes, and publishes it with a single volatile write. A
+ * {@link RefreshRoutesDiffEvent} that didn't change anything leaves the index as it is.
+ */
+@Log4j2
+class RouteIndexer implements ApplicationListener<RefreshRoutesResultEvent> {
+
+    private volatile RouteIndex index;
+
+    /**
+     * The current index, or {@code null} if the routes haven't been loaded yet.
+     */
+    RouteIndex getIndex() {
+        return this.index;
+    }
+
+    @Override
+    public void onApplicationEvent(RefreshRoutesResultEvent rre) {
+        if (!rre.isSuccess()) {
+            return;
+        }
+        if (rre instanceof RefreshRoutesDiffEvent && ((RefreshRoutesDiffEvent) rre).isEmpty() && this.index != null) {
+            return;
+        }
+        Assert.state(rre.getSource() instanceof CachingRouteLocator, () -> "the " + rre.getClass().getName() + " routes must be refreshed");
+        var source = (CachingRouteLocator) rre.getSource();
+        source.getRoutes()
+                .collectList()
+                .map(RouteIndex::of)
+                .subscribe(routeIndex -> {
+                    this.index = routeIndex;
+                    log.info("indexed " + routeIndex.size() + " routes, " + routeIndex.unindexed() + " of which need an ordered scan");
+                });
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.gateway;
+
+import org.springframework.cloud.gateway.route.Route;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, ordered snapshot of the routes, keyed by id so the next refresh can be
+ * diffed against it.
+ * <p>
+ * Routes are compared structurally, by their uri, order, metadata and the
+ * {@code toString()} of their predicate and filters, since the predicates and filters
+ * themselves are rebuilt on every refresh and don't implement {@code equals()}. The stock
+ * factories describe their whole configuration there; a lambda only describes its
+ * identity, so a route built from one always counts as changed.
+ */
+final class RouteTable {
+
+    static final RouteTable EMPTY = new RouteTable(List.of(), Map.of());
+
+    private final List<Route> routes;
+
+    /**
+     * Route ids aren't necessarily unique, so every id maps to its routes in order.
+     */
+    private final Map<String, List<Entry>> entries;
+
+    private RouteTable(List<Route> routes, Map<String, List<Entry>> entries) {
+        this.routes = routes;
+        this.entries = entries;
+    }
+
+    List<Route> getRoutes() {
+        return this.routes;
+    }
+
+    /**
+     * The table for the freshly fetched routes, reusing the {@link Route} instances in this
+     * one wherever nothing has changed.
+     */
+    Update update(List<Route> fetched) {
+        var routes = new ArrayList<Route>(fetched.size());
+        var entries = new LinkedHashMap<String, List<Entry>>();
+        var added = new LinkedHashSet<String>();
+        var changed = new LinkedHashSet<String>();
+        for (var route : fetched) {
+            var id = route.getId();
+            var previous = this.entries.getOrDefault(id, List.of());
+            var current = entries.computeIfAbsent(id, key -> new ArrayList<>(previous.size()));
+            var fingerprint = fingerprint(route);
+            var entry = current.size() < previous.size() ? previous.get(current.size()) : null;
+            if (entry == null || !entry.fingerprint.equals(fingerprint)) {
+                entry = new Entry(route, fingerprint);
+                (previous.isEmpty() ? added : changed).add(id);
+            }
+            current.add(entry);
+            routes.add(entry.route);
+        }
+        var removed = new LinkedHashSet<String>();
+        this.entries.forEach((id, previous) -> {
+            var current = entries.get(id);
+            if (current == null) {
+                removed.add(id);
+            }
+            else if (current.size() < previous.size()) {
+                changed.add(id);
+            }
+        });
+        return new Update(new RouteTable(List.copyOf(routes), entries), added, removed, changed);
+    }
+
+    private static String fingerprint(Route route) {
+        return route.getUri() + " " + route.getOrder() + " " + route.getMetadata() + " "
+                + route.getPredicate() + " " + route.getFilters();
+    }
+
+    private static final class Entry {
+
+        private final Route route;
+
+        private final String fingerprint;
+
+        Entry(Route route, String fingerprint) {
+            this.route = route;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    static final class Update {
+
+        final RouteTable table;
+
+        final List<String> added;
+
+        final List<String> removed;
+
+        final List<String> changed;
+
+        private Update(RouteTable table, Set<String> added, Set<String> removed, Set<String> changed) {
+            this.table = table;
+            this.added = List.copyOf(added);
+            this.removed = List.copyOf(removed);
+            this.changed = List.copyOf(changed);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.gateway;
+
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.handler.AsyncPredicate;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Predicate;
+
+/**
+ * A route predicate that can answer without waiting on anything.
+ * <p>
+ * It's still an {@link AsyncPredicate}, so it can be handed to
+ * {@code Route.async().asyncPredicate(...)} or {@code PredicateSpec.asyncPredicate(...)}
+ * like any other predicate, but the {@link IndexedRoutePredicateHandlerMapping} calls
+ * {@link #test(ServerWebExchange)} directly instead of subscribing to a {@link Mono}.
+ * Combining two synchronous predicates with {@code and()}, {@code or()} or
+ * {@code negate()} yields another synchronous predicate, which describes itself the same
+ * way the stock combined predicates do, so that it looks the same from one refresh to the
+ * next.
+ */
+@FunctionalInterface
+interface SynchronousPredicate extends AsyncPredicate<ServerWebExchange> {
+
+    Mono<Boolean> TRUE = Mono.just(true);
+
+    Mono<Boolean> FALSE = Mono.just(false);
+
+    static SynchronousPredicate of(Predicate<? super ServerWebExchange> predicate) {
+        return new Of(predicate);
+    }
+
+    boolean test(ServerWebExchange exchange);
+
+    @Override
+    default Publisher<Boolean> apply(ServerWebExchange exchange) {
+        return test(exchange) ? TRUE : FALSE;
+    }
+
+    @Override
+    default AsyncPredicate<ServerWebExchange> and(AsyncPredicate<? super ServerWebExchange> other) {
+        if (other instanceof SynchronousPredicate) {
+            var right = (SynchronousPredicate) other;
+            return new And(this, right);
+        }
+        return AsyncPredicate.super.and(other);
+    }
+
+    @Override
+    default AsyncPredicate<ServerWebExchange> or(AsyncPredicate<? super ServerWebExchange> other) {
+        if (other instanceof SynchronousPredicate) {
+            var right = (SynchronousPredicate) other;
+            return new Or(this, right);
+        }
+        return AsyncPredicate.super.or(other);
+    }
+
+    @Override
+    default AsyncPredicate<ServerWebExchange> negate() {
+        return new Negate(this);
+    }
+
+    final class Of implements SynchronousPredicate {
+
+        private final Predicate<? super ServerWebExchange> predicate;
+
+        private Of(Predicate<? super ServerWebExchange> predicate) {
+            this.predicate = predicate;
+        }
+
+        @Override
+        public boolean test(ServerWebExchange exchange) {
+            return this.predicate.test(exchange);
+        }
+
+        @Override
+        public String toString() {
+            return this.predicate.toString();
+        }
+    }
+
+    final class And implements SynchronousPredicate {
+
+        private final SynchronousPredicate left;
+
+        private final SynchronousPredicate right;
+
+        private And(SynchronousPredicate left, SynchronousPredicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean test(ServerWebExchange exchange) {
+            return this.left.test(exchange) && this.right.test(exchange);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("(%s && %s)", this.left, this.right);
+        }
+    }
+
+    final class Or implements SynchronousPredicate {
+
+        private final SynchronousPredicate left;
+
+        private final SynchronousPredicate right;
+
+        private Or(SynchronousPredicate left, SynchronousPredicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean test(ServerWebExchange exchange) {
+            return this.left.test(exchange) || this.right.test(exchange);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("(%s || %s)", this.left, this.right);
+        }
+    }
+
+    final class Negate implements SynchronousPredicate {
+
+        private final SynchronousPredicate predicate;
+
+        private Negate(SynchronousPredicate predicate) {
+            this.predicate = predicate;
+        }
+
+        @Override
+        public boolean test(ServerWebExchange exchange) {
+            return !this.predicate.test(exchange);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("!(%s)", this.predicate);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.gateway;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class EnvironmentRevalidatorTests {
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    private final MockRestServiceServer server = MockRestServiceServer.bindTo(this.restTemplate).build();
+
+    EnvironmentRevalidatorTests() {
+        this.restTemplate.setInterceptors(List.of(new EnvironmentRevalidator()));
+    }
+
+    @Test
+    void answersANotModifiedWithTheEnvironmentItKept() {
+        this.server.expect(requestTo("http://localhost:8888/gateway/default"))
+                .andRespond(withSuccess("{\"version\":\"1\"}", MediaType.APPLICATION_JSON).headers(etag("\"1\"")));
+        this.server.expect(requestTo("http://localhost:8888/gateway/default"))
+                .andExpect(header(HttpHeaders.IF_NONE_MATCH, "\"1\""))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED).headers(etag("\"1\"")));
+
+        assertThat(get()).isEqualTo("{\"version\":\"1\"}");
+        assertThat(get()).isEqualTo("{\"version\":\"1\"}");
+        this.server.verify();
+    }
+
+    @Test
+    void keepsTheLatestEnvironment() {
+        this.server.expect(requestTo("http://localhost:8888/gateway/default"))
+                .andRespond(withSuccess("{\"version\":\"1\"}", MediaType.APPLICATION_JSON).headers(etag("\"1\"")));
+        this.server.expect(requestTo("http://localhost:8888/gateway/default"))
+                .andExpect(header(HttpHeaders.IF_NONE_MATCH, "\"1\""))
+                .andRespond(withSuccess("{\"version\":\"2\"}", MediaType.APPLICATION_JSON).headers(etag("\"2\"")));
+        this.server.expect(requestTo("http://localhost:8888/gateway/default"))
+                .andExpect(header(HttpHeaders.IF_NONE_MATCH, "\"2\""))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+
+        get();
+        assertThat(get()).isEqualTo("{\"version\":\"2\"}");
+        assertThat(get()).isEqualTo("{\"version\":\"2\"}");
+        this.server.verify();
+    }
+
+    private String get() {
+        return this.restTemplate.getForObject("http://localhost:8888/gateway/default", String.class);
+    }
+
+    private static HttpHeaders etag(String etag) {
+        var headers = new HttpHeaders();
+        headers.setETag(etag);
+        return headers;
+    }
+}
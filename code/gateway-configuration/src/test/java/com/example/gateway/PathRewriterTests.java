@@ -0,0 +1,59 @@
+package com.example.gateway;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PathRewriterTests {
+
+    private final List<String> paths = List.of("/", "/o/3.json", "/o/3.json/o/4.json", "/x/o/3.json?", "/o/.json",
+            "/o.json", "/twitter/@starbuxman", "/twitter/@", "/twitter/@a/twitter/@b", "/api/api/customers",
+            "/customers", "", "/o/a$b\\c.json");
+
+    @Test
+    void rewritesLikeReplaceAll() {
+        assertRewritesLikeReplaceAll("\\/o\\/(?<segment>.*)\\.json", "/orders/${segment}");
+        assertRewritesLikeReplaceAll("/twitter/@(?<handle>.*)", "/${handle}");
+        assertRewritesLikeReplaceAll("/twitter/@(.*)", "/$1/$1");
+        assertRewritesLikeReplaceAll("/o/(.*).json", "/orders/$1");
+        assertRewritesLikeReplaceAll("/api", "");
+        assertRewritesLikeReplaceAll("/api", "/v2");
+        assertRewritesLikeReplaceAll("/o/(?<segment>[^/]*)\\.json", "/orders/${segment}");
+        assertRewritesLikeReplaceAll("/(?<segment>.*)", "/\\$${segment}");
+        assertRewritesLikeReplaceAll("^/customers$", "/c");
+    }
+
+    @Test
+    void cachesAtMostCacheSizePaths() {
+        var rewriter = PathRewriter.compile("/o/(?<segment>[^/]*)\\.json", "/orders/${segment}", 10);
+        IntStream.range(0, 1000).forEach(i -> assertThat(rewriter.rewrite("/o/" + i + ".json")).isEqualTo("/orders/" + i));
+        var cache = new LruCache<Integer, Integer>(10);
+        IntStream.range(0, 1000).forEach(i -> cache.get(i, key -> key * 2));
+        assertThat(cache.size()).isLessThanOrEqualTo(10);
+    }
+
+    @Test
+    void keepsTheMostRecentlyUsedEntries() {
+        var cache = new LruCache<Integer, Integer>(10);
+        IntStream.range(0, 10).forEach(i -> cache.get(i, key -> key));
+        cache.get(0, key -> -1);
+        cache.get(10, key -> key);
+        assertThat(cache.get(0, key -> -1)).isEqualTo(0);
+        assertThat(cache.get(1, key -> -1)).isEqualTo(-1);
+    }
+
+    private void assertRewritesLikeReplaceAll(String regexp, String replacement) {
+        for (var cacheSize : new int[]{0, 4}) {
+            var rewriter = PathRewriter.compile(regexp, replacement, cacheSize);
+            for (var i = 0; i < 2; i++) {
+                for (var path : this.paths) {
+                    assertThat(rewriter.rewrite(path)).as("%s -> %s on %s", regexp, replacement, path)
+                            .isEqualTo(path.replaceAll(regexp, replacement));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.gateway;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.handler.AsyncPredicate;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RouteIndexTests {
+
+    private final Route hello = route("hello", path("/hello"));
+
+    private final Route twitter = route("twitter", path("/twitter/@**"));
+
+    private final Route catchAll = route("catch-all", path("/**"));
+
+    private final Route orders = route("orders", path("/orders/{id}", "/o/{id}.json"));
+
+    private final Route custom = route("custom", exchange -> Mono.just(true));
+
+    private final RouteIndex index = RouteIndex.of(List.of(this.hello, this.twitter, this.orders, this.custom, this.catchAll));
+
+    @Test
+    void literalPrefixesNarrowTheCandidates() {
+        assertThat(candidates("/hello")).containsExactly("hello", "custom", "catch-all");
+        assertThat(candidates("/twitter/@starbuxman")).containsExactly("twitter", "custom", "catch-all");
+        assertThat(candidates("/o/3.json")).containsExactly("orders", "custom", "catch-all");
+        assertThat(candidates("/orders/3")).containsExactly("orders", "custom", "catch-all");
+    }
+
+    @Test
+    void unknownPathsOnlyScanTheRoutesThatCannotBeIndexed() {
+        assertThat(candidates("/nope")).containsExactly("custom", "catch-all");
+        assertThat(candidates("/")).containsExactly("custom", "catch-all");
+        assertThat(this.index.unindexed()).isEqualTo(1);
+    }
+
+    @Test
+    void andKeepsARouteIndexable() {
+        var combined = route("combined", path("/hello").and(exchange -> Mono.just(true)));
+        var or = route("or", path("/hello").or(exchange -> Mono.just(true)));
+        var index = RouteIndex.of(List.of(combined, or));
+        assertThat(index.unindexed()).isEqualTo(1);
+        assertThat(ids(index.candidates(PathContainer.parsePath("/nope")))).containsExactly("or");
+    }
+
+    @Test
+    void synchronousPredicatesAreEvaluatedInline() {
+        var index = RouteIndex.of(List.of(
+                route("sync", path("/hello").and(SynchronousPredicate.of(exchange -> true))),
+                route("async", path("/hello").and(exchange -> Mono.just(true)))));
+        var candidates = index.candidates(PathContainer.parsePath("/hello"));
+        assertThat(candidates[0].test).isNotNull();
+        assertThat(candidates[1].test).isNull();
+        assertThat(SynchronousPredicate.of(exchange -> true).negate()).isInstanceOf(SynchronousPredicate.class);
+    }
+
+    private List<String> candidates(String path) {
+        return ids(this.index.candidates(PathContainer.parsePath(path)));
+    }
+
+    private static List<String> ids(RouteIndex.Candidate[] candidates) {
+        return Arrays.stream(candidates).map(candidate -> candidate.route.getId()).collect(Collectors.toList());
+    }
+
+    private static AsyncPredicate<ServerWebExchange> path(String... patterns) {
+        return new IndexingPathRoutePredicateFactory().applyAsync(c -> c.setPatterns(List.of(patterns)));
+    }
+
+    private static Route route(String id, AsyncPredicate<ServerWebExchange> predicate) {
+        return Route.async().id(id).uri("http://localhost").asyncPredicate(predicate).build();
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.gateway;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.route.CachingRouteLocator;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the stock route lookup with the indexed, synchronous one for a request that
+ * matches the last of {@code routes} {@code path(...)} routes. Run {@link #main(String[])}
+ * from the IDE (or with the test classpath) and compare {@code gc.alloc.rate.norm}, the
+ * bytes allocated per lookup, between the two.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteLookupBenchmark {
+
+    @Param({"100", "4000"})
+    int routes;
+
+    private StockRoutePredicateHandlerMapping stock;
+
+    private IndexedRoutePredicateHandlerMapping indexed;
+
+    private ServerWebExchange exchange;
+
+    @Setup
+    public void setup() {
+        var cors = new GlobalCorsProperties();
+        var environment = new StandardEnvironment();
+        var webHandler = new FilteringWebHandler(List.of());
+
+        var stockRoutes = new CachingRouteLocator(locator(new PathRoutePredicateFactory()));
+        this.stock = new StockRoutePredicateHandlerMapping(webHandler, stockRoutes, cors, environment);
+
+        var indexedRoutes = new CachingRouteLocator(locator(new IndexingPathRoutePredicateFactory()));
+        var routeIndexer = new RouteIndexer();
+        routeIndexer.onApplicationEvent(new RefreshRoutesResultEvent(indexedRoutes));
+        this.indexed = new IndexedRoutePredicateHandlerMapping(webHandler, indexedRoutes, cors, environment, routeIndexer);
+
+        this.exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/service-" + (this.routes - 1) + "/greetings"));
+    }
+
+    @Benchmark
+    public Route stock() {
+        return this.stock.lookup(this.exchange).block();
+    }
+
+    @Benchmark
+    public Route indexed() {
+        return this.indexed.lookupRoute(this.exchange).block();
+    }
+
+    private RouteLocator locator(PathRoutePredicateFactory factory) {
+        var list = IntStream.range(0, this.routes)
+                .mapToObj(i -> Route.async()
+                        .id("service-" + i)
+                        .uri("lb://service-" + i)
+                        .asyncPredicate(factory.applyAsync(c -> c.setPatterns(List.of("/service-" + i + "/**"))))
+                        .build())
+                .collect(Collectors.toList());
+        return () -> Flux.fromIterable(list);
+    }
+
+    static class StockRoutePredicateHandlerMapping extends RoutePredicateHandlerMapping {
+
+        StockRoutePredicateHandlerMapping(FilteringWebHandler webHandler, RouteLocator routeLocator,
+                                          GlobalCorsProperties globalCorsProperties, StandardEnvironment environment) {
+            super(webHandler, routeLocator, globalCorsProperties, environment);
+        }
+
+        Mono<Route> lookup(ServerWebExchange exchange) {
+            return lookupRoute(exchange);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(RouteLookupBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
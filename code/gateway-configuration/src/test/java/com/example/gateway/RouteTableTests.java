@@ -0,0 +1,78 @@
+package com.example.gateway;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.factory.SetPathGatewayFilterFactory;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.route.Route;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RouteTableTests {
+
+    private final RouteTable table = RouteTable.EMPTY
+            .update(List.of(route("customers", "/c", "/hello"), route("orders", "/o", "/orders"), route("hello", "/h", "/hello")))
+            .table;
+
+    @Test
+    void unchangedRoutesKeepTheirInstances() {
+        var update = this.table.update(List.of(route("customers", "/c", "/hello"), route("orders", "/o", "/orders"), route("hello", "/h", "/hello")));
+        assertThat(update.added).isEmpty();
+        assertThat(update.removed).isEmpty();
+        assertThat(update.changed).isEmpty();
+        assertThat(update.table.getRoutes()).containsExactlyElementsOf(this.table.getRoutes());
+    }
+
+    @Test
+    void reportsAddedRemovedAndChangedRoutes() {
+        var customers = route("customers", "/c", "/customers");
+        var update = this.table.update(List.of(customers, route("orders", "/o", "/orders"), route("greetings", "/g", "/hello")));
+        assertThat(update.added).containsExactly("greetings");
+        assertThat(update.removed).containsExactly("hello");
+        assertThat(update.changed).containsExactly("customers");
+        assertThat(update.table.getRoutes().get(0)).isSameAs(customers);
+        assertThat(update.table.getRoutes().get(1)).isSameAs(this.table.getRoutes().get(1));
+    }
+
+    @Test
+    void duplicateIdsAreComparedInOrder() {
+        var duplicates = RouteTable.EMPTY.update(List.of(route("customers", "/c", "/hello"), route("customers", "/h", "/hello"))).table;
+        assertThat(duplicates.update(List.of(route("customers", "/c", "/hello"), route("customers", "/h", "/hello"))).changed).isEmpty();
+        assertThat(duplicates.update(List.of(route("customers", "/c", "/hello"))).changed).containsExactly("customers");
+    }
+
+    @Test
+    void routesThatCannotDescribeThemselvesAlwaysChange() {
+        var custom = RouteTable.EMPTY.update(List.of(Route.async().id("custom").uri("http://localhost:9191")
+                .asyncPredicate(exchange -> Mono.just(true)).build())).table;
+        var update = custom.update(List.of(Route.async().id("custom").uri("http://localhost:9191")
+                .asyncPredicate(exchange -> Mono.just(true)).build()));
+        assertThat(update.changed).containsExactly("custom");
+    }
+
+    @Test
+    void combinedSynchronousPredicatesDescribeThemselves() {
+        var combined = RouteTable.EMPTY.update(List.of(synchronous("combined"))).table;
+        var update = combined.update(List.of(synchronous("combined")));
+        assertThat(update.changed).isEmpty();
+        assertThat(update.table.getRoutes().get(0).getPredicate().toString())
+                .isEqualTo("!((Paths: [/a], match trailing slash: true || Paths: [/b], match trailing slash: true))");
+    }
+
+    private static Route synchronous(String id) {
+        var a = SynchronousPredicate.of(new PathRoutePredicateFactory().apply(c -> c.setPatterns(List.of("/a"))));
+        var b = SynchronousPredicate.of(new PathRoutePredicateFactory().apply(c -> c.setPatterns(List.of("/b"))));
+        return Route.async().id(id).uri("http://localhost:9191").asyncPredicate(a.or(b).negate()).build();
+    }
+
+    private static Route route(String id, String path, String setPath) {
+        return Route.async()
+                .id(id)
+                .uri("http://localhost:9191")
+                .asyncPredicate(new PathRoutePredicateFactory().applyAsync(c -> c.setPatterns(List.of(path))))
+                .filter(new SetPathGatewayFilterFactory().apply(c -> c.setTemplate(setPath)))
+                .build();
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.gateway;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.client.discovery.event.ParentHeartbeatEvent;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.discovery.DiscoveryLocatorProperties;
+import org.springframework.cloud.gateway.filter.factory.GatewayFilterFactory;
+import org.springframework.cloud.gateway.handler.predicate.RoutePredicateFactory;
+import org.springframework.cloud.gateway.route.RouteRefreshListener;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * Opt-in discovery routes kept up to date a service at a time by a
+ * {@link DiscoveryRouteLocator}. Turn it on with
+ * {@code gateway.discovery.incremental-refresh.enabled=true}, in place of
+ * {@code spring.cloud.gateway.discovery.locator.enabled}; the rest of the
+ * {@code spring.cloud.gateway.discovery.locator.*} properties still apply.
+ * <p>
+ * The gateway's own {@link RouteRefreshListener} refreshes every route on every heartbeat
+ * that changes, which is every time Eureka fetches the registry, so it's swapped for one
+ * that leaves heartbeats to the {@link DiscoveryRouteLocator}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "gateway.discovery.incremental-refresh.enabled", havingValue = "true")
+class DiscoveryRefreshConfiguration {
+
+    @Bean
+    DiscoveryRouteLocator discoveryRouteLocator(ReactiveDiscoveryClient discoveryClient, DiscoveryLocatorProperties properties,
+                                                List<RoutePredicateFactory> predicates, List<GatewayFilterFactory> filterFactories,
+                                                GatewayProperties gatewayProperties, ConfigurationService configurationService) {
+        return new DiscoveryRouteLocator(discoveryClient, properties, predicates, filterFactories, gatewayProperties, configurationService);
+    }
+
+    @Bean
+    static BeanPostProcessor heartbeatIgnoringRouteRefreshListener(ApplicationEventPublisher applicationEventPublisher) {
+        return new BeanPostProcessor() {
+
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                return bean.getClass() == RouteRefreshListener.class ? new HeartbeatIgnoringRouteRefreshListener(applicationEventPublisher) : bean;
+            }
+        };
+    }
+
+    static class HeartbeatIgnoringRouteRefreshListener extends RouteRefreshListener {
+
+        HeartbeatIgnoringRouteRefreshListener(ApplicationEventPublisher publisher) {
+            super(publisher);
+        }
+
+        @Override
+        public void onApplicationEvent(ApplicationEvent event) {
+            if (!(event instanceof HeartbeatEvent || event instanceof ParentHeartbeatEvent)) {
+                super.onApplicationEvent(event);
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.gateway;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.client.discovery.event.HeartbeatMonitor;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.discovery.DiscoveryClientRouteDefinitionLocator;
+import org.springframework.cloud.gateway.discovery.DiscoveryLocatorProperties;
+import org.springframework.cloud.gateway.filter.factory.GatewayFilterFactory;
+import org.springframework.cloud.gateway.handler.predicate.RoutePredicateFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.route.RouteDefinitionRouteLocator;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.context.ApplicationListener;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Routes to every service in the registry, the same ones the gateway's own discovery
+ * locator would, but kept up to date a service at a time. Whenever the discovery client's
+ * heartbeat says the registry changed, each service's route definition is worked out again,
+ * which is cheap, and compared with the last one. Only the routes of services that were
+ * added or whose definitions changed are built again, those of services that went away are
+ * dropped, and every other {@link Route} is kept as it was, filters and all.
+ * <p>
+ * If anything changed, a {@link RefreshDiscoveryRoutesEvent} says which routes, rather than
+ * a plain {@code RefreshRoutesEvent}.
+ */
+@Log4j2
+class DiscoveryRouteLocator implements RouteLocator, ApplicationListener<HeartbeatEvent>, ApplicationEventPublisherAware {
+
+    private final RouteDefinitionLocator definitions;
+
+    private final RouteLocator compiler;
+
+    private final HeartbeatMonitor heartbeatMonitor = new HeartbeatMonitor();
+
+    private final AtomicReference<Table> table = new AtomicReference<>();
+
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    DiscoveryRouteLocator(ReactiveDiscoveryClient discoveryClient, DiscoveryLocatorProperties properties,
+                          List<RoutePredicateFactory> predicates, List<GatewayFilterFactory> filterFactories,
+                          GatewayProperties gatewayProperties, ConfigurationService configurationService) {
+        this.definitions = new DiscoveryClientRouteDefinitionLocator(discoveryClient, properties);
+        // builds whichever definition it's handed in the subscriber's context
+        RouteDefinitionLocator definition = () -> Flux.deferContextual(context -> Flux.just(context.get(RouteDefinition.class)));
+        this.compiler = new RouteDefinitionRouteLocator(definition, predicates, filterFactories, gatewayProperties, configurationService);
+    }
+
+    @Override
+    public Flux<Route> getRoutes() {
+        return Flux.defer(() -> {
+            var current = this.table.get();
+            return current != null ? Flux.fromIterable(current.routes.values()) : refresh().flatMapIterable(update -> update.table.routes.values());
+        });
+    }
+
+    @Override
+    public void onApplicationEvent(HeartbeatEvent event) {
+        if (this.heartbeatMonitor.update(event.getValue())) {
+            refresh()
+                    .filter(update -> !update.isEmpty())
+                    .subscribe(update -> {
+                        log.info("discovery routes added " + update.added + ", removed " + update.removed + ", changed " + update.changed);
+                        this.applicationEventPublisher.publishEvent(new RefreshDiscoveryRoutesEvent(this, update.added, update.removed, update.changed));
+                    }, e -> log.error("couldn't refresh the discovery routes", e));
+        }
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    /**
+     * Works out every service's route definition again, builds the routes that need it and
+     * swaps in the result. If another refresh swapped in routes in the meantime we start over
+     * from those, so that every update describes exactly the swap it made.
+     */
+    Mono<Update> refresh() {
+        return this.definitions.getRouteDefinitions()
+                .collectMap(RouteDefinition::getId, definition -> definition, LinkedHashMap::new)
+                .flatMap(definitions -> Mono.defer(() -> install(definitions)).repeatWhenEmpty(repeats -> repeats));
+    }
+
+    private Mono<Update> install(Map<String, RouteDefinition> definitions) {
+        var current = this.table.get();
+        var previous = current == null ? Table.EMPTY : current;
+        var stale = definitions.values().stream()
+                .filter(definition -> !definition.equals(previous.definitions.get(definition.getId())))
+                .collect(Collectors.toList());
+        if (current != null && stale.isEmpty() && previous.definitions.keySet().equals(definitions.keySet())) {
+            return Mono.just(new Update(current, List.of(), List.of(), List.of()));
+        }
+        return Flux.fromIterable(stale)
+                .concatMap(this::compile)
+                .collectMap(Route::getId)
+                .flatMap(compiled -> {
+                    var update = previous.update(definitions, compiled);
+                    return this.table.compareAndSet(current, update.table) ? Mono.just(update) : Mono.empty();
+                });
+    }
+
+    private Mono<Route> compile(RouteDefinition definition) {
+        return this.compiler.getRoutes()
+                .contextWrite(Context.of(RouteDefinition.class, definition))
+                .next()
+                .onErrorResume(e -> {
+                    log.warn("couldn't build the route " + definition.getId(), e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * The routes there are, by id, along with the definitions they were built from.
+     */
+    private static final class Table {
+
+        static final Table EMPTY = new Table(Map.of(), Map.of());
+
+        private final Map<String, RouteDefinition> definitions;
+
+        private final Map<String, Route> routes;
+
+        Table(Map<String, RouteDefinition> definitions, Map<String, Route> routes) {
+            this.definitions = definitions;
+            this.routes = routes;
+        }
+
+        /**
+         * The table for {@code definitions}, taking the routes just built from
+         * {@code compiled} and the rest from this one. A definition that couldn't be built is
+         * left out, so that it's tried again next time.
+         */
+        Update update(Map<String, RouteDefinition> definitions, Map<String, Route> compiled) {
+            var nextDefinitions = new LinkedHashMap<String, RouteDefinition>();
+            var nextRoutes = new LinkedHashMap<String, Route>();
+            var added = new ArrayList<String>();
+            var changed = new ArrayList<String>();
+            for (var definition : definitions.values()) {
+                var id = definition.getId();
+                var route = compiled.get(id);
+                if (route != null) {
+                    (this.routes.containsKey(id) ? changed : added).add(id);
+                }
+                else if (definition.equals(this.definitions.get(id))) {
+                    route = this.routes.get(id);
+                }
+                else {
+                    continue;
+                }
+                nextDefinitions.put(id, definition);
+                nextRoutes.put(id, route);
+            }
+            var removed = this.routes.keySet().stream()
+                    .filter(id -> !nextRoutes.containsKey(id))
+                    .collect(Collectors.toList());
+            return new Update(new Table(nextDefinitions, nextRoutes), added, removed, changed);
+        }
+    }
+
+    static final class Update {
+
+        private final Table table;
+
+        private final List<String> added;
+
+        private final List<String> removed;
+
+        private final List<String> changed;
+
+        Update(Table table, List<String> added, List<String> removed, List<String> changed) {
+            this.table = table;
+            this.added = added;
+            this.removed = removed;
+            this.changed = changed;
+        }
+
+        List<String> getAdded() {
+            return this.added;
+        }
+
+        List<String> getRemoved() {
+            return this.removed;
+        }
+
+        List<String> getChanged() {
+            return this.changed;
+        }
+
+        boolean isEmpty() {
+            return this.added.isEmpty() && this.removed.isEmpty() && this.changed.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.gateway;
+
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+
+import java.util.List;
+
+/**
+ * A {@link RefreshRoutesEvent} for a change in the registry, saying which discovery routes
+ * were added, removed or changed. The {@code CachingRouteLocator} refreshes on it as on any
+ * other, and gets every discovery route that didn't change back as it was.
+ */
+class RefreshDiscoveryRoutesEvent extends RefreshRoutesEvent {
+
+    private final List<String> added;
+
+    private final List<String> removed;
+
+    private final List<String> changed;
+
+    RefreshDiscoveryRoutesEvent(Object source, List<String> added, List<String> removed, List<String> changed) {
+        super(source);
+        this.added = added;
+        this.removed = removed;
+        this.changed = changed;
+    }
+
+    List<String> getAdded() {
+        return this.added;
+    }
+
+    List<String> getRemoved() {
+        return this.removed;
+    }
+
+    List<String> getChanged() {
+        return this.changed;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{added=" + this.added + ", removed=" + this.removed + ", changed=" + this.changed + "}";
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.gateway;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.EurekaClientConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Opt-in discovery that follows the registry's stream of changes through a
+ * {@link StreamingDiscoveryClient}. Turn it on with
+ * {@code gateway.discovery.registry-stream.enabled=true}, and point
+ * {@code gateway.discovery.registry-stream.uri} at the registry if it's not on
+ * {@code localhost:8761}.
+ * <p>
+ * The client takes the place of Eureka's own reactive discovery client, which backs off
+ * when there's already one.
+ */
+@Configuration
+@ConditionalOnProperty(name = "gateway.discovery.registry-stream.enabled", havingValue = "true")
+class RegistryStreamConfiguration {
+
+    @Bean
+    StreamingDiscoveryClient streamingDiscoveryClient(EurekaClient eurekaClient, EurekaClientConfig clientConfig,
+                                                      WebClient.Builder webClientBuilder, ObjectMapper objectMapper,
+                                                      @Value("${gateway.discovery.registry-stream.uri:http://localhost:8761/registry/changes}") URI uri,
+                                                      @Value("${gateway.discovery.registry-stream.idle-timeout:45s}") Duration idleTimeout) {
+        return new StreamingDiscoveryClient(eurekaClient, clientConfig, webClientBuilder.build(), uri, idleTimeout, objectMapper);
+    }
+}
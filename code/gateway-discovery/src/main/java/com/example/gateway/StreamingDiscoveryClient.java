@@ -0,0 +1,283 @@
+package com.example.gateway;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.EurekaClientConfig;
+import lombok.Data;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.netflix.eureka.reactive.EurekaReactiveDiscoveryClient;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * A discovery client that keeps up with the registry as it changes, rather than every
+ * time Eureka polls it. It listens to the registry's stream of changes, starting from a
+ * snapshot of every instance there is, applies each change to its own copy of the
+ * registry as it comes in, and answers from that. When it reconnects, it asks for just
+ * the changes it missed.
+ * <p>
+ * While it's not connected, before the first snapshot or after the stream broke and until
+ * it's back, it answers from Eureka's own, polled, copy of the registry instead. Every time
+ * its copy changes it publishes a {@link HeartbeatEvent}, so that the routes catch up
+ * straight away.
+ */
+@Log4j2
+class StreamingDiscoveryClient extends EurekaReactiveDiscoveryClient implements InitializingBean, DisposableBean, ApplicationEventPublisherAware {
+
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> EVENTS = new ParameterizedTypeReference<>() {
+    };
+
+    private final WebClient webClient;
+
+    private final URI uri;
+
+    private final Duration idleTimeout;
+
+    private final ObjectMapper objectMapper;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    private volatile boolean live;
+
+    private Disposable subscription;
+
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    StreamingDiscoveryClient(EurekaClient eurekaClient, EurekaClientConfig clientConfig, WebClient webClient,
+                             URI uri, Duration idleTimeout, ObjectMapper objectMapper) {
+        super(eurekaClient, clientConfig);
+        this.webClient = webClient;
+        this.uri = uri;
+        this.idleTimeout = idleTimeout;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String description() {
+        return "Spring Cloud Eureka Reactive Discovery Client, kept up to date by " + this.uri;
+    }
+
+    @Override
+    public Flux<ServiceInstance> getInstances(String serviceId) {
+        return Flux.defer(() -> this.live ? Flux.fromIterable(this.snapshot.getInstances(serviceId)) : super.getInstances(serviceId));
+    }
+
+    @Override
+    public Flux<String> getServices() {
+        return Flux.defer(() -> this.live ? Flux.fromIterable(this.snapshot.getServices()) : super.getServices());
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        this.subscription = Flux.defer(this::connect)
+                .concatWith(Mono.error(() -> new IllegalStateException("the registry closed the stream")))
+                .doOnError(e -> {
+                    if (this.live) {
+                        log.warn("lost the registry's stream of changes, polling until it's back: " + e.getMessage());
+                    }
+                    this.live = false;
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)).transientErrors(true))
+                .subscribe();
+    }
+
+    @Override
+    public void destroy() {
+        if (this.subscription != null) {
+            this.subscription.dispose();
+        }
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    private Flux<ServerSentEvent<String>> connect() {
+        var snapshot = this.snapshot;
+        var uri = UriComponentsBuilder.fromUri(this.uri);
+        if (snapshot.epoch != null) {
+            uri.queryParam("epoch", snapshot.epoch).queryParam("since", snapshot.version);
+        }
+        return this.webClient.get()
+                .uri(uri.build().toUri())
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .retrieve()
+                .bodyToFlux(EVENTS)
+                .timeout(this.idleTimeout)
+                .doOnNext(this::apply);
+    }
+
+    private void apply(ServerSentEvent<String> event) {
+        if ("snapshot".equals(event.event())) {
+            update(Snapshot.of(read(event.data(), Registry.class)));
+        }
+        else if ("change".equals(event.event())) {
+            update(this.snapshot.apply(read(event.data(), Change.class)));
+        }
+        if (!this.live) {
+            log.info("following the registry's stream of changes from version " + this.snapshot.version);
+            this.live = true;
+        }
+    }
+
+    private void update(Snapshot snapshot) {
+        this.snapshot = snapshot;
+        this.applicationEventPublisher.publishEvent(new HeartbeatEvent(this, snapshot.version));
+    }
+
+    private <T> T read(String data, Class<T> type) {
+        try {
+            return this.objectMapper.readValue(data, type);
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalStateException("couldn't read " + data, e);
+        }
+    }
+
+    /**
+     * The instances that are up, by service, as of some version of the registry.
+     */
+    static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(null, -1, Map.of());
+
+        private final String epoch;
+
+        private final long version;
+
+        private final Map<String, List<ServiceInstance>> instances;
+
+        private Snapshot(String epoch, long version, Map<String, List<ServiceInstance>> instances) {
+            this.epoch = epoch;
+            this.version = version;
+            this.instances = instances;
+        }
+
+        static Snapshot of(Registry registry) {
+            var instances = registry.getInstances().stream()
+                    .filter(Instance::isUp)
+                    .collect(Collectors.groupingBy(instance -> serviceId(instance.getApp()),
+                            Collectors.mapping(Instance::toServiceInstance, Collectors.toList())));
+            return new Snapshot(registry.getEpoch(), registry.getVersion(), instances);
+        }
+
+        /**
+         * This snapshot with {@code change} applied, which has to be the very next one.
+         */
+        Snapshot apply(Change change) {
+            if (change.getVersion() != this.version + 1) {
+                throw new IllegalStateException("expected version " + (this.version + 1) + " of the registry, not " + change.getVersion());
+            }
+            var instance = change.getInstance();
+            var app = instance != null ? instance.getApp() : change.getApp();
+            var id = instance != null ? instance.getId() : change.getId();
+            var serviceId = serviceId(app);
+            var next = new ArrayList<ServiceInstance>();
+            for (var existing : this.instances.getOrDefault(serviceId, List.of())) {
+                if (!existing.getInstanceId().equals(id)) {
+                    next.add(existing);
+                }
+            }
+            if (instance != null && instance.isUp()) {
+                next.add(instance.toServiceInstance());
+            }
+            var instances = new HashMap<>(this.instances);
+            if (next.isEmpty()) {
+                instances.remove(serviceId);
+            }
+            else {
+                instances.put(serviceId, next);
+            }
+            return new Snapshot(this.epoch, change.getVersion(), instances);
+        }
+
+        long getVersion() {
+            return this.version;
+        }
+
+        List<ServiceInstance> getInstances(String serviceId) {
+            return this.instances.getOrDefault(serviceId(serviceId), List.of());
+        }
+
+        List<String> getServices() {
+            return new ArrayList<>(this.instances.keySet());
+        }
+
+        private static String serviceId(String app) {
+            return app.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    @Data
+    static class Registry {
+
+        private String epoch;
+
+        private long version;
+
+        private List<Instance> instances = List.of();
+    }
+
+    @Data
+    static class Change {
+
+        private long version;
+
+        private String app;
+
+        private String id;
+
+        private Instance instance;
+    }
+
+    @Data
+    static class Instance {
+
+        private String app;
+
+        private String id;
+
+        private String host;
+
+        private int port;
+
+        private boolean secure;
+
+        private String status;
+
+        private Map<String, String> metadata = Map.of();
+
+        boolean isUp() {
+            return "UP".equals(this.status);
+        }
+
+        ServiceInstance toServiceInstance() {
+            return new DefaultServiceInstance(this.id, Snapshot.serviceId(this.app), this.host, this.port, this.secure, this.metadata);
+        }
+    }
+}
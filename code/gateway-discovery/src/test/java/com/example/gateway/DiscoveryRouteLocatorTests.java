@@ -0,0 +1,118 @@
+package com.example.gateway;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.discovery.DiscoveryLocatorProperties;
+import org.springframework.cloud.gateway.discovery.GatewayDiscoveryClientAutoConfiguration;
+import org.springframework.cloud.gateway.filter.factory.RewritePathGatewayFilterFactory;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.format.support.DefaultFormattingConversionService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DiscoveryRouteLocatorTests {
+
+    private final Registry registry = new Registry();
+
+    private final DiscoveryRouteLocator locator = locator(this.registry);
+
+    @Test
+    void buildsARouteForEveryService() {
+        this.registry.register("customers", Map.of());
+        this.registry.register("orders", Map.of());
+
+        var update = this.locator.refresh().block();
+
+        assertThat(update.getAdded()).containsExactlyInAnyOrder("Registry_customers", "Registry_orders");
+        assertThat(this.locator.getRoutes().map(Route::getUri).map(Object::toString).collectList().block())
+                .containsExactlyInAnyOrder("lb://customers", "lb://orders");
+    }
+
+    @Test
+    void keepsTheRoutesOfServicesThatDidNotChange() {
+        this.registry.register("customers", Map.of());
+        this.registry.register("orders", Map.of());
+        this.registry.register("profiles", Map.of());
+        var before = routes();
+
+        this.registry.deregister("orders");
+        this.registry.register("profiles", Map.of("zone", "b"));
+        this.registry.register("shipping", Map.of());
+        var update = this.locator.refresh().block();
+        var after = routes();
+
+        assertThat(update.getAdded()).containsExactly("Registry_shipping");
+        assertThat(update.getRemoved()).containsExactly("Registry_orders");
+        assertThat(update.getChanged()).containsExactly("Registry_profiles");
+        assertThat(after.get("Registry_customers")).isSameAs(before.get("Registry_customers"));
+        assertThat(after.get("Registry_profiles")).isNotSameAs(before.get("Registry_profiles"));
+        assertThat(after).doesNotContainKey("Registry_orders");
+    }
+
+    @Test
+    void changesNothingWhenTheRegistryDidNotChange() {
+        this.registry.register("customers", Map.of());
+        var before = routes();
+
+        var update = this.locator.refresh().block();
+
+        assertThat(update.isEmpty()).isTrue();
+        assertThat(routes().get("Registry_customers")).isSameAs(before.get("Registry_customers"));
+    }
+
+    private Map<String, Route> routes() {
+        return this.locator.getRoutes().collectMap(Route::getId, Function.identity()).block();
+    }
+
+    private static DiscoveryRouteLocator locator(ReactiveDiscoveryClient discoveryClient) {
+        var properties = new DiscoveryLocatorProperties();
+        properties.setPredicates(GatewayDiscoveryClientAutoConfiguration.initPredicates());
+        properties.setFilters(GatewayDiscoveryClientAutoConfiguration.initFilters());
+        var conversionService = new DefaultFormattingConversionService();
+        var configurationService = new ConfigurationService(new DefaultListableBeanFactory(), () -> conversionService, () -> null);
+        return new DiscoveryRouteLocator(discoveryClient, properties, List.of(new PathRoutePredicateFactory()),
+                List.of(new RewritePathGatewayFilterFactory()), new GatewayProperties(), configurationService);
+    }
+
+    private static class Registry implements ReactiveDiscoveryClient {
+
+        private final Map<String, ServiceInstance> instances = new ConcurrentHashMap<>();
+
+        void register(String serviceId, Map<String, String> metadata) {
+            this.instances.put(serviceId, new DefaultServiceInstance(serviceId + "-1", serviceId, "localhost", 8080, false, metadata));
+        }
+
+        void deregister(String serviceId) {
+            this.instances.remove(serviceId);
+        }
+
+        @Override
+        public String description() {
+            return "registry";
+        }
+
+        @Override
+        public Flux<ServiceInstance> getInstances(String serviceId) {
+            return Mono.justOrEmpty(this.instances.get(serviceId)).flux();
+        }
+
+        @Override
+        public Flux<String> getServices() {
+            return Flux.defer(() -> Flux.fromIterable(this.instances.keySet().stream().sorted().collect(Collectors.toList())));
+        }
+    }
+}
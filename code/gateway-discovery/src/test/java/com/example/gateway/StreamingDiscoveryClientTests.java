@@ -0,0 +1,79 @@
+package com.example.gateway;
+
+import com.example.gateway.StreamingDiscoveryClient.Change;
+import com.example.gateway.StreamingDiscoveryClient.Instance;
+import com.example.gateway.StreamingDiscoveryClient.Registry;
+import com.example.gateway.StreamingDiscoveryClient.Snapshot;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+class StreamingDiscoveryClientTests {
+
+    @Test
+    void keepsOnlyTheInstancesThatAreUp() {
+        var snapshot = snapshot(instance("CUSTOMERS", "c1", "UP"), instance("CUSTOMERS", "c2", "DOWN"), instance("ORDERS", "o1", "UP"));
+
+        assertThat(snapshot.getServices()).containsExactlyInAnyOrder("customers", "orders");
+        assertThat(snapshot.getInstances("customers")).extracting(ServiceInstance::getInstanceId).containsExactly("c1");
+        assertThat(snapshot.getInstances("CUSTOMERS")).extracting(ServiceInstance::getInstanceId).containsExactly("c1");
+    }
+
+    @Test
+    void appliesChangesInOrder() {
+        var snapshot = snapshot(instance("CUSTOMERS", "c1", "UP"))
+                .apply(change(4, instance("CUSTOMERS", "c2", "UP")))
+                .apply(change(5, instance("CUSTOMERS", "c1", "OUT_OF_SERVICE")))
+                .apply(change(6, instance("ORDERS", "o1", "UP")))
+                .apply(removal(7, "ORDERS", "o1"));
+
+        assertThat(snapshot.getVersion()).isEqualTo(7);
+        assertThat(snapshot.getServices()).containsExactly("customers");
+        assertThat(snapshot.getInstances("customers")).extracting(ServiceInstance::getInstanceId).containsExactly("c2");
+    }
+
+    @Test
+    void refusesToSkipAChange() {
+        var snapshot = snapshot(instance("CUSTOMERS", "c1", "UP"));
+
+        assertThatIllegalStateException().isThrownBy(() -> snapshot.apply(change(5, instance("CUSTOMERS", "c2", "UP"))));
+        assertThatIllegalStateException().isThrownBy(() -> snapshot.apply(change(3, instance("CUSTOMERS", "c2", "UP"))));
+    }
+
+    private static Snapshot snapshot(Instance... instances) {
+        var registry = new Registry();
+        registry.setEpoch("epoch");
+        registry.setVersion(3);
+        registry.setInstances(List.of(instances));
+        return Snapshot.of(registry);
+    }
+
+    private static Change change(long version, Instance instance) {
+        var change = new Change();
+        change.setVersion(version);
+        change.setInstance(instance);
+        return change;
+    }
+
+    private static Change removal(long version, String app, String id) {
+        var change = new Change();
+        change.setVersion(version);
+        change.setApp(app);
+        change.setId(id);
+        return change;
+    }
+
+    private static Instance instance(String app, String id, String status) {
+        var instance = new Instance();
+        instance.setApp(app);
+        instance.setId(id);
+        instance.setHost("localhost");
+        instance.setPort(8080);
+        instance.setStatus(status);
+        return instance;
+    }
+}
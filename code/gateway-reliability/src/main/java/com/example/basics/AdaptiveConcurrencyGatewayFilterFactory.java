@@ -0,0 +1,161 @@
+package com.example.basics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.setResponseStatus;
+
+/**
+ * Limits the requests in flight on each route to an {@link AdaptiveConcurrencyLimit}
+ * learned from how long they take, instead of a number picked by hand. A request over the
+ * limit isn't queued but turned away right away with a {@code 503}, so that a backend
+ * that's slowing down sheds load instead of building up a backlog.
+ * <p>
+ * Each route's limit and requests in flight are published as the {@value #LIMIT_METRIC}
+ * and {@value #IN_FLIGHT_METRIC} gauges, and the requests turned away as the
+ * {@value #REJECTIONS_METRIC} counter, all tagged with the route id.
+ */
+public class AdaptiveConcurrencyGatewayFilterFactory extends AbstractGatewayFilterFactory<AdaptiveConcurrencyGatewayFilterFactory.Config> {
+
+    public static final String LIMIT_METRIC = "spring.cloud.gateway.concurrency.limit";
+
+    public static final String IN_FLIGHT_METRIC = "spring.cloud.gateway.concurrency.in-flight";
+
+    public static final String REJECTIONS_METRIC = "spring.cloud.gateway.concurrency.rejections";
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final LongSupplier nanoTime;
+
+    public AdaptiveConcurrencyGatewayFilterFactory(ObjectProvider<MeterRegistry> meterRegistry) {
+        this(meterRegistry, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyGatewayFilterFactory(ObjectProvider<MeterRegistry> meterRegistry, LongSupplier nanoTime) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+        this.nanoTime = nanoTime;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        var limits = new ConcurrentHashMap<String, Limit>();
+        return (exchange, chain) -> {
+            Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+            var limit = limits.get(route.getId());
+            if (limit == null) {
+                limit = limits.computeIfAbsent(route.getId(), id -> limit(id, config));
+            }
+            if (!limit.limit.tryAcquire()) {
+                if (limit.rejections != null) {
+                    limit.rejections.increment();
+                }
+                setResponseStatus(exchange, HttpStatus.SERVICE_UNAVAILABLE);
+                return exchange.getResponse().setComplete();
+            }
+            var acquired = limit.limit;
+            var start = this.nanoTime.getAsLong();
+            return chain.filter(exchange).doFinally(signal ->
+                    acquired.release(signal == SignalType.ON_COMPLETE ? this.nanoTime.getAsLong() - start : -1));
+        };
+    }
+
+    private Limit limit(String routeId, Config config) {
+        var limit = new AdaptiveConcurrencyLimit(config.initialLimit, config.minLimit, config.maxLimit,
+                config.window.toNanos(), config.minSamples, this.nanoTime);
+        var registry = this.meterRegistry.getIfAvailable();
+        if (registry == null) {
+            return new Limit(limit, null);
+        }
+        Gauge.builder(LIMIT_METRIC, limit, AdaptiveConcurrencyLimit::getLimit).tag("routeId", routeId).register(registry);
+        Gauge.builder(IN_FLIGHT_METRIC, limit, AdaptiveConcurrencyLimit::getInFlight).tag("routeId", routeId).register(registry);
+        return new Limit(limit, Counter.builder(REJECTIONS_METRIC).tag("routeId", routeId).register(registry));
+    }
+
+    private static final class Limit {
+
+        private final AdaptiveConcurrencyLimit limit;
+
+        private final Counter rejections;
+
+        Limit(AdaptiveConcurrencyLimit limit, Counter rejections) {
+            this.limit = limit;
+            this.rejections = rejections;
+        }
+    }
+
+    public static class Config {
+
+        private int initialLimit = 20;
+
+        private int minLimit = 1;
+
+        private int maxLimit = 1000;
+
+        private Duration window = Duration.ofMillis(250);
+
+        private int minSamples = 10;
+
+        public int getInitialLimit() {
+            return this.initialLimit;
+        }
+
+        public Config setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        public int getMinLimit() {
+            return this.minLimit;
+        }
+
+        public Config setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        public int getMaxLimit() {
+            return this.maxLimit;
+        }
+
+        public Config setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        public Duration getWindow() {
+            return this.window;
+        }
+
+        /**
+         * How often the limit's adjusted, given at least {@code minSamples} completed
+         * requests since the last time.
+         */
+        public Config setWindow(Duration window) {
+            this.window = window;
+            return this;
+        }
+
+        public int getMinSamples() {
+            return this.minSamples;
+        }
+
+        public Config setMinSamples(int minSamples) {
+            this.minSamples = minSamples;
+            return this;
+        }
+    }
+}
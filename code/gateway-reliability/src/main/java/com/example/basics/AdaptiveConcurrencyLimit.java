@@ -0,0 +1,141 @@
+package com.example.basics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A limit on the requests in flight that finds its own level, in the manner of TCP Vegas
+ * and Netflix's gradient limiters: as long as responses come back about as fast as they
+ * do without load, there's room for more, and once they slow down, requests are queueing
+ * somewhere and the limit shrinks in proportion.
+ * <p>
+ * Every {@code window}, the average round trip time of the requests that completed is
+ * compared with the no-load baseline, the fastest window seen so far, drifting slowly
+ * towards the current one so that a backend that's simply gotten slower for good becomes
+ * the new normal. The limit is then scaled by {@code 1.5 * baseline / rtt}, between
+ * a half and one, plus the square root of the limit as headroom to probe with, and smoothed.
+ * It doesn't grow while fewer than half the permits are in use, since nothing was learned
+ * about more load. Between windows, taking or giving back a permit is a compare-and-set
+ * and a couple of adds.
+ */
+final class AdaptiveConcurrencyLimit {
+
+    private static final AtomicLongFieldUpdater<AdaptiveConcurrencyLimit> WINDOW_START =
+            AtomicLongFieldUpdater.newUpdater(AdaptiveConcurrencyLimit.class, "windowStart");
+
+    private static final double BASELINE_DRIFT = 0.005;
+
+    private static final double SMOOTHING = 0.2;
+
+    private static final double TOLERANCE = 1.5;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long window;
+
+    private final int minSamples;
+
+    private final LongSupplier nanoTime;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    private final LongAdder rttSum = new LongAdder();
+
+    private final LongAdder samples = new LongAdder();
+
+    private volatile double limit;
+
+    private volatile long windowStart;
+
+    /**
+     * Only updated by whichever thread closes a window.
+     */
+    private volatile double baseline = Double.NaN;
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long window, int minSamples, LongSupplier nanoTime) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.window = window;
+        this.minSamples = minSamples;
+        this.nanoTime = nanoTime;
+        this.windowStart = nanoTime.getAsLong();
+    }
+
+    int getLimit() {
+        return (int) this.limit;
+    }
+
+    int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * Takes a permit, unless they're all in use.
+     */
+    boolean tryAcquire() {
+        var limit = (int) this.limit;
+        while (true) {
+            var inFlight = this.inFlight.get();
+            if (inFlight >= limit) {
+                return false;
+            }
+            if (this.inFlight.compareAndSet(inFlight, inFlight + 1)) {
+                if (inFlight + 1 > this.peakInFlight.get()) {
+                    this.peakInFlight.accumulateAndGet(inFlight + 1, Math::max);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives a permit back.
+     * @param rtt how long the request took, or a negative number if it didn't complete
+     * normally and says nothing about how loaded the backend is
+     */
+    void release(long rtt) {
+        this.inFlight.decrementAndGet();
+        if (rtt < 0) {
+            return;
+        }
+        this.rttSum.add(rtt);
+        this.samples.increment();
+        var now = this.nanoTime.getAsLong();
+        var windowStart = this.windowStart;
+        if (now - windowStart >= this.window && this.samples.sum() >= this.minSamples
+                && WINDOW_START.compareAndSet(this, windowStart, now)) {
+            update();
+        }
+    }
+
+    private void update() {
+        var samples = this.samples.sumThenReset();
+        var rttSum = this.rttSum.sumThenReset();
+        var peak = this.peakInFlight.getAndSet(this.inFlight.get());
+        if (samples == 0) {
+            return;
+        }
+        var rtt = (double) rttSum / samples;
+        if (Double.isNaN(this.baseline) || rtt < this.baseline) {
+            this.baseline = rtt;
+        }
+        else {
+            this.baseline += (rtt - this.baseline) * BASELINE_DRIFT;
+        }
+        var limit = this.limit;
+        var gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * this.baseline / rtt));
+        var newLimit = limit * gradient + Math.sqrt(limit);
+        if (newLimit > limit && peak < limit / 2) {
+            return;
+        }
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, newLimit));
+    }
+}
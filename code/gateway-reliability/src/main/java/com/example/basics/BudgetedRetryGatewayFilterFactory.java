@@ -0,0 +1,117 @@
+package com.example.basics;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.RetryGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.NameUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * The stock {@code retry(...)} filter, except that every retry has to fit in its route's
+ * {@link RetryBudget}, if there is one, and that a request whose body the
+ * {@link ReplayableBodyFilter} couldn't keep isn't retried at all. A failed attempt that
+ * can't be retried is returned to the client as it is, without backing off and trying
+ * again, however many retries the route allows.
+ */
+class BudgetedRetryGatewayFilterFactory extends RetryGatewayFilterFactory {
+
+    /**
+     * The exception the last attempt failed with, if it did, since the stock filter
+     * doesn't hand it to {@link #exceedsMaxIterations(ServerWebExchange, RetryConfig)}.
+     */
+    private static final String ATTEMPT_ERROR_ATTR = BudgetedRetryGatewayFilterFactory.class.getName() + ".attemptError";
+
+    private final RetryBudget budget;
+
+    /**
+     * @param budget the retry budget, or {@code null} to retry as often as the route allows
+     */
+    BudgetedRetryGatewayFilterFactory(RetryBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public String name() {
+        return NameUtils.normalizeFilterFactoryName(RetryGatewayFilterFactory.class);
+    }
+
+    @Override
+    public GatewayFilter apply(RetryConfig config) {
+        var retry = super.apply(config);
+        return new GatewayFilter() {
+
+            @Override
+            public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+                GatewayFilterChain attempt = e -> Mono.defer(() -> {
+                    e.getAttributes().remove(ATTEMPT_ERROR_ATTR);
+                    return chain.filter(e).doOnError(error -> e.getAttributes().put(ATTEMPT_ERROR_ATTR, error));
+                });
+                return retry.filter(exchange, attempt).doOnSuccess(done -> {
+                    if (budget != null && !failed(exchange, config)) {
+                        budget.recordSuccess(routeId(exchange));
+                    }
+                });
+            }
+
+            @Override
+            public String toString() {
+                return retry.toString();
+            }
+        };
+    }
+
+    /**
+     * Called before every retry the stock filter considers, on success as well as on
+     * failure, so the budget's only consulted when there's a failure to retry.
+     */
+    @Override
+    public boolean exceedsMaxIterations(ServerWebExchange exchange, RetryConfig config) {
+        if (super.exceedsMaxIterations(exchange, config) || !ReplayableBodyFilter.isReplayable(exchange)) {
+            return true;
+        }
+        if (this.budget == null) {
+            return false;
+        }
+        var retryable = config.getMethods().contains(exchange.getRequest().getMethod())
+                && failed(exchange, config);
+        return retryable && !this.budget.canRetry(routeId(exchange));
+    }
+
+    /**
+     * Called right before each retry, which is when it's spent.
+     */
+    @Override
+    public void reset(ServerWebExchange exchange) {
+        if (this.budget != null) {
+            this.budget.recordRetry(routeId(exchange));
+        }
+        super.reset(exchange);
+    }
+
+    /**
+     * Whether the attempt failed in a way the stock filter might retry: with one of the
+     * exceptions it retries, or with one of the statuses it retries.
+     */
+    private static boolean failed(ServerWebExchange exchange, RetryConfig config) {
+        Throwable error = exchange.getAttribute(ATTEMPT_ERROR_ATTR);
+        if (error != null) {
+            for (var retryable : config.getExceptions()) {
+                if (retryable.isInstance(error) || retryable.isInstance(error.getCause())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        var status = exchange.getResponse().getStatusCode();
+        return status != null && (config.getStatuses().contains(status) || config.getSeries().contains(status.series()));
+    }
+
+    private static String routeId(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        return route == null ? "" : route.getId();
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.basics;
+
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.filter.ratelimit.PrincipalNameKeyResolver;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ipresolver.RemoteAddressResolver;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * A {@link KeyResolver} that builds the rate limiting key out of any combination of the
+ * principal's name, the route id, a request header and the client's IP address, joined
+ * with {@code :}. If any of them is missing the key is empty, just like
+ * {@link PrincipalNameKeyResolver}'s without a principal.
+ * <p>
+ * Resolving the principal goes through the reactive security context, which can mean
+ * loading the session or checking a password, so the name is remembered per session
+ * cookie or per {@code Authorization} header. The next request with the same session or
+ * credentials gets its key without touching the security context at all. This only
+ * spares the key; the security filter chain still authenticates every request. The
+ * header values are kept as they are, for at most the cache's time to live, since hashing
+ * them on every request would cost about as much as it spares.
+ */
+public class CompositeKeyResolver implements KeyResolver {
+
+    private static final String SESSION_COOKIE = "SESSION";
+
+    private final List<Part> parts;
+
+    private final boolean principal;
+
+    private final PrincipalNames principalNames;
+
+    private CompositeKeyResolver(List<Part> parts, boolean principal, PrincipalNames principalNames) {
+        this.parts = List.copyOf(parts);
+        this.principal = principal;
+        this.principalNames = principalNames;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Mono<String> resolve(ServerWebExchange exchange) {
+        if (!this.principal) {
+            return Mono.justOrEmpty(key(exchange, null));
+        }
+        var credentials = credentials(exchange);
+        var name = credentials == null ? null : this.principalNames.get(credentials);
+        if (name != null) {
+            return Mono.justOrEmpty(key(exchange, name));
+        }
+        return exchange.getPrincipal()
+                .map(Principal::getName)
+                .doOnNext(resolved -> {
+                    if (credentials != null) {
+                        this.principalNames.put(credentials, resolved);
+                    }
+                })
+                .flatMap(resolved -> Mono.justOrEmpty(key(exchange, resolved)));
+    }
+
+    private String key(ServerWebExchange exchange, String principal) {
+        if (this.parts.size() == 1) {
+            return this.parts.get(0).resolve(exchange, principal);
+        }
+        var key = new StringBuilder();
+        for (var part : this.parts) {
+            var value = part.resolve(exchange, principal);
+            if (value == null) {
+                return null;
+            }
+            if (key.length() > 0) {
+                key.append(':');
+            }
+            key.append(value);
+        }
+        return key.toString();
+    }
+
+    /**
+     * What identifies the caller's credentials: the {@code Authorization} header or, failing
+     * that, the session id.
+     */
+    private static String credentials(ServerWebExchange exchange) {
+        var authorization = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization != null) {
+            return authorization;
+        }
+        HttpCookie session = exchange.getRequest().getCookies().getFirst(SESSION_COOKIE);
+        return session == null ? null : "session:" + session.getValue();
+    }
+
+    @FunctionalInterface
+    private interface Part {
+
+        String resolve(ServerWebExchange exchange, String principal);
+    }
+
+    public static class Builder {
+
+        private final List<Part> parts = new ArrayList<>();
+
+        private boolean principal;
+
+        private int cacheSize = 10_000;
+
+        private Duration cacheTtl = Duration.ofMinutes(5);
+
+        public Builder principal() {
+            this.principal = true;
+            this.parts.add((exchange, principal) -> principal);
+            return this;
+        }
+
+        public Builder routeId() {
+            this.parts.add((exchange, principal) -> {
+                Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+                return route == null ? null : route.getId();
+            });
+            return this;
+        }
+
+        public Builder header(String name) {
+            this.parts.add((exchange, principal) -> exchange.getRequest().getHeaders().getFirst(name));
+            return this;
+        }
+
+        public Builder clientIp() {
+            return clientIp(new RemoteAddressResolver() {
+            });
+        }
+
+        /**
+         * The client's IP address as resolved by, say, an {@code XForwardedRemoteAddressResolver}
+         * when the gateway sits behind a proxy.
+         */
+        public Builder clientIp(RemoteAddressResolver remoteAddressResolver) {
+            this.parts.add((exchange, principal) -> {
+                var address = remoteAddressResolver.resolve(exchange);
+                return address == null || address.getAddress() == null ? null : address.getAddress().getHostAddress();
+            });
+            return this;
+        }
+
+        /**
+         * How many sessions or credentials to remember the principal's name for.
+         */
+        public Builder cacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * How long to remember a principal's name for, so that a session that's gone or a
+         * password that's changed doesn't linger.
+         */
+        public Builder cacheTtl(Duration cacheTtl) {
+            this.cacheTtl = cacheTtl;
+            return this;
+        }
+
+        public CompositeKeyResolver build() {
+            if (this.parts.isEmpty()) {
+                throw new IllegalStateException("a key needs at least one part");
+            }
+            return new CompositeKeyResolver(this.parts, this.principal, new PrincipalNames(this.cacheSize, this.cacheTtl.toNanos(), System::nanoTime));
+        }
+    }
+
+    /**
+     * Principal names by credentials, each for at most the time to live. When there are
+     * more than {@code size} of them the least recently used goes: for a key cache a miss
+     * only costs a lookup.
+     */
+    static final class PrincipalNames {
+
+        private final Map<String, Entry> names;
+
+        private final long ttl;
+
+        private final LongSupplier nanoTime;
+
+        PrincipalNames(int size, long ttl, LongSupplier nanoTime) {
+            this.names = new LinkedHashMap<>(16, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > size;
+                }
+            };
+            this.ttl = ttl;
+            this.nanoTime = nanoTime;
+        }
+
+        String get(String credentials) {
+            var now = this.nanoTime.getAsLong();
+            synchronized (this.names) {
+                var entry = this.names.get(credentials);
+                if (entry == null) {
+                    return null;
+                }
+                if (now - entry.expires >= 0) {
+                    this.names.remove(credentials);
+                    return null;
+                }
+                return entry.name;
+            }
+        }
+
+        void put(String credentials, String name) {
+            var entry = new Entry(name, this.nanoTime.getAsLong() + this.ttl);
+            synchronized (this.names) {
+                this.names.put(credentials, entry);
+            }
+        }
+
+        int size() {
+            synchronized (this.names) {
+                return this.names.size();
+            }
+        }
+
+        private static final class Entry {
+
+            private final String name;
+
+            private final long expires;
+
+            Entry(String name, long expires) {
+                this.name = name;
+                this.expires = expires;
+            }
+        }
+    }
+}
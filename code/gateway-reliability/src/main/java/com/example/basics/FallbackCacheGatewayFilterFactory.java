@@ -0,0 +1,201 @@
+package com.example.basics;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Answers the requests on a fallback route, say the one a {@code circuitBreaker(...)}
+ * forwards to, from responses kept in memory rather than by calling the route's uri every
+ * time. While a breaker's open every request falls back, and an outage is the worst time
+ * to double the number of outbound calls.
+ * <p>
+ * A response is fetched the first time a route and path is asked for, once however many
+ * requests are waiting for it, and then served from memory. Every refresh interval all of
+ * them are fetched again in the background, keeping the previous response if that fails,
+ * so requests never wait on the fallback's upstream once it's cached. Only successful
+ * responses are kept, at most {@code maxEntries} of them, the ones served longest ago
+ * going first; if a response can't be fetched at all the request's proxied as usual.
+ * <p>
+ * Only {@code GET} and {@code HEAD} requests are answered from memory; anything else is
+ * proxied as usual. The responses are fetched without any of the caller's headers and
+ * served to every caller alike, so the fallback's uri must be one that answers the same
+ * for everyone: a public page, never one that depends on who's asking.
+ */
+@Log4j2
+public class FallbackCacheGatewayFilterFactory extends AbstractGatewayFilterFactory<Object> implements InitializingBean, DisposableBean {
+
+    /**
+     * Headers that only made sense for the connection the response came in on, or for
+     * whoever it was first sent to.
+     */
+    private static final List<String> EXCLUDED_HEADERS = List.of(HttpHeaders.CONNECTION, HttpHeaders.TRANSFER_ENCODING,
+            HttpHeaders.CONTENT_LENGTH, "Keep-Alive", HttpHeaders.SET_COOKIE);
+
+    private final WebClient webClient;
+
+    private final Duration refreshInterval;
+
+    private final int maxEntries;
+
+    private final LongSupplier nanoTime;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Map<String, Mono<Entry>> loading = new ConcurrentHashMap<>();
+
+    private Disposable refresh;
+
+    public FallbackCacheGatewayFilterFactory(WebClient webClient, Duration refreshInterval, int maxEntries) {
+        this(webClient, refreshInterval, maxEntries, System::nanoTime);
+    }
+
+    FallbackCacheGatewayFilterFactory(WebClient webClient, Duration refreshInterval, int maxEntries, LongSupplier nanoTime) {
+        this.webClient = webClient;
+        this.refreshInterval = refreshInterval;
+        this.maxEntries = maxEntries;
+        this.nanoTime = nanoTime;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        this.refresh = Flux.interval(this.refreshInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> refresh())
+                .subscribe();
+    }
+
+    @Override
+    public void destroy() {
+        if (this.refresh != null) {
+            this.refresh.dispose();
+        }
+    }
+
+    @Override
+    public GatewayFilter apply(Object config) {
+        return (exchange, chain) -> {
+            var method = exchange.getRequest().getMethod();
+            if (method != HttpMethod.GET && method != HttpMethod.HEAD) {
+                return chain.filter(exchange);
+            }
+            Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+            var uri = UriComponentsBuilder.fromUri(exchange.getRequest().getURI())
+                    .scheme(route.getUri().getScheme())
+                    .host(route.getUri().getHost())
+                    .port(route.getUri().getPort())
+                    .build(true)
+                    .toUri();
+            var key = route.getId() + " " + uri;
+            var entry = this.entries.get(key);
+            if (entry != null) {
+                return write(exchange, entry);
+            }
+            return load(key, uri)
+                    .map(loaded -> write(exchange, loaded))
+                    .defaultIfEmpty(Mono.defer(() -> chain.filter(exchange)))
+                    .flatMap(Function.identity());
+        };
+    }
+
+    /**
+     * Fetches every response again, one at a time.
+     */
+    Mono<Void> refresh() {
+        return Flux.fromIterable(this.entries.entrySet())
+                .concatMap(cached -> fetch(cached.getValue().uri)
+                        .doOnNext(fetched -> this.entries.replace(cached.getKey(), cached.getValue(), fetched.servedAt(cached.getValue()))))
+                .then();
+    }
+
+    int size() {
+        return this.entries.size();
+    }
+
+    private Mono<Entry> load(String key, URI uri) {
+        return this.loading.computeIfAbsent(key, k -> fetch(uri)
+                .doOnNext(fetched -> put(key, fetched))
+                .doFinally(signal -> this.loading.remove(key))
+                .cache());
+    }
+
+    private Mono<Entry> fetch(URI uri) {
+        return this.webClient.get()
+                .uri(uri)
+                .exchangeToMono(response -> response.bodyToMono(byte[].class)
+                        .defaultIfEmpty(new byte[0])
+                        .filter(body -> response.statusCode().is2xxSuccessful())
+                        .map(body -> new Entry(uri, response.statusCode(), response.headers().asHttpHeaders(), body, this.nanoTime.getAsLong())))
+                .onErrorResume(e -> {
+                    log.debug("Error fetching fallback response from " + uri, e);
+                    return Mono.empty();
+                });
+    }
+
+    private void put(String key, Entry entry) {
+        this.entries.put(key, entry);
+        if (this.entries.size() > this.maxEntries) {
+            this.entries.entrySet().stream()
+                    .min((a, b) -> Long.compare(a.getValue().servedAt - b.getValue().servedAt, 0))
+                    .ifPresent(oldest -> this.entries.remove(oldest.getKey(), oldest.getValue()));
+        }
+    }
+
+    private Mono<Void> write(ServerWebExchange exchange, Entry entry) {
+        entry.servedAt = this.nanoTime.getAsLong();
+        var response = exchange.getResponse();
+        response.setStatusCode(entry.status);
+        response.getHeaders().putAll(entry.headers);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(entry.body)));
+    }
+
+    private static final class Entry {
+
+        private final URI uri;
+
+        private final HttpStatus status;
+
+        private final HttpHeaders headers;
+
+        private final byte[] body;
+
+        private volatile long servedAt;
+
+        Entry(URI uri, HttpStatus status, HttpHeaders headers, byte[] body, long servedAt) {
+            this.uri = uri;
+            this.status = status;
+            this.headers = new HttpHeaders();
+            this.headers.putAll(headers);
+            EXCLUDED_HEADERS.forEach(this.headers::remove);
+            this.body = body;
+            this.servedAt = servedAt;
+        }
+
+        Entry servedAt(Entry previous) {
+            this.servedAt = previous.servedAt;
+            return this;
+        }
+    }
+}
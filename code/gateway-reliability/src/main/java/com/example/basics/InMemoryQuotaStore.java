@@ -0,0 +1,66 @@
+package com.example.basics;
+
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link QuotaStore} that lives in this process: the stand-in for Redis in tests, or
+ * when every {@link LeasingRateLimiter} sharing the quota runs in the same JVM. A bucket
+ * that's full again is dropped, since that's how a new one starts out anyway.
+ */
+public class InMemoryQuotaStore implements QuotaStore {
+
+    private final Map<String, Bucket> buckets = new HashMap<>();
+
+    private final LongSupplier nanoTime;
+
+    public InMemoryQuotaStore() {
+        this(System::nanoTime);
+    }
+
+    InMemoryQuotaStore(LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    @Override
+    public Mono<List<Long>> lease(List<Lease> leases) {
+        return Mono.fromSupplier(() -> {
+            var now = this.nanoTime.getAsLong();
+            var granted = new ArrayList<Long>(leases.size());
+            synchronized (this.buckets) {
+                for (var lease : leases) {
+                    var config = lease.getConfig();
+                    var bucket = this.buckets.computeIfAbsent(lease.getKey(), key -> new Bucket(config.getBurstCapacity(), now));
+                    var elapsed = (double) (now - bucket.refreshed) / TimeUnit.SECONDS.toNanos(1);
+                    var filled = Math.min(config.getBurstCapacity(), bucket.tokens + lease.getReturned() + elapsed * config.getReplenishRate());
+                    var tokens = Math.max(0, Math.min(lease.getRequested(), (long) filled));
+                    bucket.tokens = filled - tokens;
+                    bucket.refreshed = now;
+                    if (bucket.tokens >= config.getBurstCapacity()) {
+                        this.buckets.remove(lease.getKey());
+                    }
+                    granted.add(tokens);
+                }
+            }
+            return granted;
+        });
+    }
+
+    private static final class Bucket {
+
+        private double tokens;
+
+        private long refreshed;
+
+        Bucket(double tokens, long refreshed) {
+            this.tokens = tokens;
+            this.refreshed = refreshed;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.example.basics;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.route.RouteDefinitionRouteLocator;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A rate limiter for a fleet of gateway instances that share one quota per key, without a
+ * round trip to the shared {@link QuotaStore} for every request.
+ * <p>
+ * Each instance leases a slice of every key's quota and admits requests against it with a
+ * compare-and-set. Every {@link #setSyncInterval(Duration) sync interval} a single batch
+ * tops up the leases that saw traffic, up to the {@link #setLeaseSize(int) lease size},
+ * and gives back what's left of the ones that went idle. A key that runs out in between
+ * leases more right away, once per interval, with concurrent requests for it waiting on
+ * the same call.
+ * <p>
+ * Since tokens are taken from the shared bucket before they're spent, the fleet can't
+ * admit more than the global limit; what it trades for fewer round trips is that tokens
+ * leased by one instance aren't available to the others until they're given back. Smaller
+ * leases and shorter intervals make that more accurate. As with the
+ * {@link RedisRateLimiter}, requests are let through if the store can't be reached.
+ */
+@Log4j2
+public class LeasingRateLimiter extends AbstractRateLimiter<LocalRateLimiter.Config> implements InitializingBean, DisposableBean {
+
+    public static final String CONFIGURATION_PROPERTY_NAME = "leasing-rate-limiter";
+
+    private final QuotaStore store;
+
+    private final LocalRateLimiter.Config defaultConfig;
+
+    private final Map<String, Map<String, Lease>> leases = new ConcurrentHashMap<>();
+
+    /**
+     * Tokens granted to leases that had already been dropped, to give back with the next
+     * sync.
+     */
+    private final Queue<QuotaStore.Lease> orphaned = new ConcurrentLinkedQueue<>();
+
+    private boolean includeHeaders = true;
+
+    private int leaseSize;
+
+    private Duration syncInterval = Duration.ofMillis(500);
+
+    private Disposable sync;
+
+    public LeasingRateLimiter(QuotaStore store, int replenishRate, int burstCapacity) {
+        this(store, new LocalRateLimiter.Config().setReplenishRate(replenishRate).setBurstCapacity(burstCapacity));
+    }
+
+    public LeasingRateLimiter(QuotaStore store, LocalRateLimiter.Config defaultConfig) {
+        super(LocalRateLimiter.Config.class, CONFIGURATION_PROPERTY_NAME, (ConfigurationService) null);
+        this.store = store;
+        this.defaultConfig = defaultConfig;
+    }
+
+    public boolean isIncludeHeaders() {
+        return this.includeHeaders;
+    }
+
+    public void setIncludeHeaders(boolean includeHeaders) {
+        this.includeHeaders = includeHeaders;
+    }
+
+    /**
+     * How many tokens of each key's quota an instance holds on to. Defaults to what the key
+     * replenishes in one sync interval.
+     */
+    public void setLeaseSize(int leaseSize) {
+        this.leaseSize = leaseSize;
+    }
+
+    public void setSyncInterval(Duration syncInterval) {
+        this.syncInterval = syncInterval;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        this.sync = Flux.interval(this.syncInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> sync().onErrorResume(e -> {
+                    log.debug("Error syncing leases", e);
+                    return Mono.empty();
+                }))
+                .subscribe();
+    }
+
+    @Override
+    public void destroy() {
+        if (this.sync != null) {
+            this.sync.dispose();
+        }
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        var config = loadConfiguration(routeId);
+        var requested = config.getRequestedTokens();
+        var keys = this.leases.computeIfAbsent(routeId, key -> new ConcurrentHashMap<>());
+        var lease = keys.get(id);
+        if (lease == null || lease.retired.get()) {
+            lease = keys.compute(id, (key, existing) -> existing == null || existing.retired.get()
+                    ? new Lease(routeId + "." + key, config) : existing);
+        }
+        lease.config = config;
+        lease.demand.addAndGet(requested);
+        if (lease.tryAcquire(requested)) {
+            return Mono.just(new Response(true, getHeaders(config, lease.tokens.get())));
+        }
+        if (lease.exhausted) {
+            return Mono.just(new Response(false, getHeaders(config, lease.tokens.get())));
+        }
+        var leased = lease;
+        return refill(leased)
+                .then(Mono.fromSupplier(() -> new Response(leased.tryAcquire(requested), getHeaders(config, leased.tokens.get()))))
+                .onErrorResume(e -> {
+                    log.debug("Error leasing quota", e);
+                    return Mono.just(new Response(true, getHeaders(config, -1L)));
+                });
+    }
+
+    /**
+     * Leases more tokens for a key that's run out, sharing the call with any other request
+     * that's waiting for the same key.
+     */
+    private Mono<Void> refill(Lease lease) {
+        var pending = lease.refill.get();
+        if (pending != null) {
+            return pending;
+        }
+        var refill = this.store.lease(List.of(new QuotaStore.Lease(lease.key, lease.config, 0, leaseSize(lease.config))))
+                .doOnNext(granted -> {
+                    credit(lease, granted.get(0));
+                    lease.exhausted = granted.get(0) == 0;
+                })
+                .then()
+                .doFinally(signal -> lease.refill.set(null))
+                .cache();
+        if (lease.refill.compareAndSet(null, refill)) {
+            return refill;
+        }
+        pending = lease.refill.get();
+        return pending != null ? pending : Mono.empty();
+    }
+
+    /**
+     * Adds tokens the store granted to {@code lease}, unless the sync has dropped it in the
+     * meantime, in which case they go back to the store with the next sync rather than
+     * being lost to the quota until the bucket refills.
+     */
+    private void credit(Lease lease, long granted) {
+        lease.tokens.addAndGet(granted);
+        if (lease.retired.get()) {
+            var returned = lease.tokens.getAndSet(0);
+            if (returned > 0) {
+                this.orphaned.add(new QuotaStore.Lease(lease.key, lease.config, returned, 0));
+            }
+        }
+    }
+
+    /**
+     * Settles every lease with the store in one batch. Leases that saw no traffic for two
+     * intervals in a row are retired and their tokens given back; a request that still had
+     * hold of one can only be denied, never admitted twice, and whatever the store grants
+     * it afterwards is given back too.
+     */
+    Mono<Void> sync() {
+        var batch = new ArrayList<QuotaStore.Lease>();
+        var targets = new ArrayList<Lease>();
+        for (QuotaStore.Lease returned; (returned = this.orphaned.poll()) != null; ) {
+            batch.add(returned);
+            targets.add(null);
+        }
+        this.leases.forEach((routeId, keys) -> keys.forEach((id, lease) -> {
+            var config = lease.config;
+            lease.exhausted = false;
+            if (lease.demand.getAndSet(0) == 0) {
+                if (++lease.idle < 2 || !lease.retired.compareAndSet(false, true)) {
+                    return;
+                }
+                keys.remove(id, lease);
+                var returned = lease.tokens.getAndSet(0);
+                if (returned > 0) {
+                    batch.add(new QuotaStore.Lease(lease.key, config, returned, 0));
+                    targets.add(null);
+                }
+                return;
+            }
+            lease.idle = 0;
+            var requested = leaseSize(config) - lease.tokens.get();
+            if (requested > 0) {
+                batch.add(new QuotaStore.Lease(lease.key, config, 0, requested));
+                targets.add(lease);
+            }
+        }));
+        if (batch.isEmpty()) {
+            return Mono.empty();
+        }
+        return this.store.lease(batch)
+                .doOnNext(granted -> {
+                    for (var i = 0; i < granted.size(); i++) {
+                        var target = targets.get(i);
+                        if (target != null) {
+                            credit(target, granted.get(i));
+                        }
+                    }
+                })
+                .then();
+    }
+
+    LocalRateLimiter.Config loadConfiguration(String routeId) {
+        var config = getConfig().getOrDefault(routeId, this.defaultConfig);
+        if (config == null) {
+            config = getConfig().get(RouteDefinitionRouteLocator.DEFAULT_FILTERS);
+        }
+        if (config == null) {
+            throw new IllegalArgumentException("No Configuration found for route " + routeId + " or defaultFilters");
+        }
+        return config;
+    }
+
+    Map<String, String> getHeaders(LocalRateLimiter.Config config, long tokensLeft) {
+        var headers = new HashMap<String, String>();
+        if (isIncludeHeaders()) {
+            headers.put(RedisRateLimiter.REMAINING_HEADER, Long.toString(tokensLeft));
+            headers.put(RedisRateLimiter.REPLENISH_RATE_HEADER, String.valueOf(config.getReplenishRate()));
+            headers.put(RedisRateLimiter.BURST_CAPACITY_HEADER, String.valueOf(config.getBurstCapacity()));
+            headers.put(RedisRateLimiter.REQUESTED_TOKENS_HEADER, String.valueOf(config.getRequestedTokens()));
+        }
+        return headers;
+    }
+
+    private long leaseSize(LocalRateLimiter.Config config) {
+        if (this.leaseSize > 0) {
+            return this.leaseSize;
+        }
+        var replenished = (long) Math.ceil(config.getReplenishRate() * this.syncInterval.toMillis() / 1000.0);
+        return Math.max(config.getRequestedTokens(), replenished);
+    }
+
+    private static final class Lease {
+
+        private final String key;
+
+        private final AtomicLong tokens = new AtomicLong();
+
+        /**
+         * Tokens asked for since the last sync, whether they were granted or not.
+         */
+        private final AtomicLong demand = new AtomicLong();
+
+        private final AtomicReference<Mono<Void>> refill = new AtomicReference<>();
+
+        /**
+         * Set, once, when the sync drops the lease.
+         */
+        private final AtomicBoolean retired = new AtomicBoolean();
+
+        private volatile LocalRateLimiter.Config config;
+
+        /**
+         * Set when the store had nothing left to lease us, so that we don't ask again
+         * before the next sync.
+         */
+        private volatile boolean exhausted;
+
+        /**
+         * How many syncs in a row saw no traffic; only touched by the sync.
+         */
+        private int idle;
+
+        Lease(String key, LocalRateLimiter.Config config) {
+            this.key = key;
+            this.config = config;
+        }
+
+        boolean tryAcquire(long requested) {
+            while (true) {
+                var tokens = this.tokens.get();
+                if (tokens < requested) {
+                    return false;
+                }
+                if (this.tokens.compareAndSet(tokens, tokens - requested)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
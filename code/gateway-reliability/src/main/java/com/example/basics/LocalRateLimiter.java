@@ -0,0 +1,158 @@
+package com.example.basics;
+
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.route.RouteDefinitionRouteLocator;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.validation.annotation.Validated;
+import reactor.core.publisher.Mono;
+
+import javax.validation.constraints.Min;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * An in-memory alternative to the {@link RedisRateLimiter} for a single gateway instance:
+ * the same {@code replenishRate}/{@code burstCapacity}/{@code requestedTokens} token bucket
+ * and the same response headers, but no network hop. The buckets are {@link TokenBuckets},
+ * so admitting a request is one compare-and-set on that key's state, and idle keys are
+ * evicted every {@link #setEvictionInterval(Duration) eviction interval}.
+ */
+public class LocalRateLimiter extends AbstractRateLimiter<LocalRateLimiter.Config> {
+
+    public static final String CONFIGURATION_PROPERTY_NAME = "local-rate-limiter";
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Config defaultConfig;
+
+    private final LongSupplier nanoTime;
+
+    private final Map<String, TokenBuckets> buckets = new ConcurrentHashMap<>();
+
+    private boolean includeHeaders = true;
+
+    private long evictionInterval = TimeUnit.SECONDS.toNanos(10);
+
+    public LocalRateLimiter(int replenishRate, int burstCapacity) {
+        this(replenishRate, burstCapacity, 1);
+    }
+
+    public LocalRateLimiter(int replenishRate, int burstCapacity, int requestedTokens) {
+        this(new Config().setReplenishRate(replenishRate).setBurstCapacity(burstCapacity).setRequestedTokens(requestedTokens), System::nanoTime);
+    }
+
+    LocalRateLimiter(Config defaultConfig, LongSupplier nanoTime) {
+        super(Config.class, CONFIGURATION_PROPERTY_NAME, (ConfigurationService) null);
+        this.defaultConfig = defaultConfig;
+        this.nanoTime = nanoTime;
+    }
+
+    public boolean isIncludeHeaders() {
+        return this.includeHeaders;
+    }
+
+    public void setIncludeHeaders(boolean includeHeaders) {
+        this.includeHeaders = includeHeaders;
+    }
+
+    public void setEvictionInterval(Duration evictionInterval) {
+        this.evictionInterval = evictionInterval.toNanos();
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        var config = loadConfiguration(routeId);
+        var interval = NANOS_PER_SECOND / config.getReplenishRate();
+        var tolerance = interval * config.getBurstCapacity();
+        var increment = interval * config.getRequestedTokens();
+        var keys = this.buckets.computeIfAbsent(routeId, key -> new TokenBuckets(this.nanoTime, this.evictionInterval));
+        var ahead = keys.take(id, this.nanoTime.getAsLong(), increment, tolerance);
+        var allowed = ahead >= 0;
+        var tokensLeft = (tolerance - (allowed ? ahead : -1 - ahead)) / interval;
+        return Mono.just(new Response(allowed, getHeaders(config, tokensLeft)));
+    }
+
+    Config loadConfiguration(String routeId) {
+        var config = getConfig().getOrDefault(routeId, this.defaultConfig);
+        if (config == null) {
+            config = getConfig().get(RouteDefinitionRouteLocator.DEFAULT_FILTERS);
+        }
+        if (config == null) {
+            throw new IllegalArgumentException("No Configuration found for route " + routeId + " or defaultFilters");
+        }
+        return config;
+    }
+
+    Map<String, String> getHeaders(Config config, long tokensLeft) {
+        var headers = new HashMap<String, String>();
+        if (isIncludeHeaders()) {
+            headers.put(RedisRateLimiter.REMAINING_HEADER, Long.toString(tokensLeft));
+            headers.put(RedisRateLimiter.REPLENISH_RATE_HEADER, String.valueOf(config.getReplenishRate()));
+            headers.put(RedisRateLimiter.BURST_CAPACITY_HEADER, String.valueOf(config.getBurstCapacity()));
+            headers.put(RedisRateLimiter.REQUESTED_TOKENS_HEADER, String.valueOf(config.getRequestedTokens()));
+        }
+        return headers;
+    }
+
+    /**
+     * The number of keys currently tracked, across all routes.
+     */
+    int size() {
+        return this.buckets.values().stream().mapToInt(TokenBuckets::size).sum();
+    }
+
+    void evictIdleKeys() {
+        this.buckets.values().forEach(TokenBuckets::evictIdleKeys);
+    }
+
+    @Validated
+    public static class Config {
+
+        @Min(1)
+        private int replenishRate;
+
+        @Min(0)
+        private int burstCapacity = 1;
+
+        @Min(1)
+        private int requestedTokens = 1;
+
+        public int getReplenishRate() {
+            return this.replenishRate;
+        }
+
+        public Config setReplenishRate(int replenishRate) {
+            this.replenishRate = replenishRate;
+            return this;
+        }
+
+        public int getBurstCapacity() {
+            return this.burstCapacity;
+        }
+
+        public Config setBurstCapacity(int burstCapacity) {
+            this.burstCapacity = burstCapacity;
+            return this;
+        }
+
+        public int getRequestedTokens() {
+            return this.requestedTokens;
+        }
+
+        public Config setRequestedTokens(int requestedTokens) {
+            this.requestedTokens = requestedTokens;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "Config{replenishRate=" + this.replenishRate + ", burstCapacity=" + this.burstCapacity
+                    + ", requestedTokens=" + this.requestedTokens + "}";
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.basics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.setResponseStatus;
+
+/**
+ * Checks a request against a tree of limits in one pass: a token bucket per key, one per
+ * route, and a ceiling on the requests in flight across every route that uses the filter.
+ * Since that ceiling is shared, it's set once, on the factory, rather than per route.
+ * <p>
+ * The levels are checked from the most specific up, so a single noisy key is turned away
+ * before it touches the route's shared state, and a level that passes gives its token back
+ * if a later one fails. That's a compare-and-set per bucket plus an increment and a
+ * decrement of the in-flight count. A rejected request gets a {@code 429} for the rate
+ * limits or a {@code 503} for the concurrency ceiling, with the level that rejected it in
+ * the {@value #REJECTED_BY_HEADER} header and counted in the
+ * {@value #REJECTIONS_METRIC} metric, tagged with the route id and the level.
+ */
+public class QuotaGatewayFilterFactory extends AbstractGatewayFilterFactory<QuotaGatewayFilterFactory.Config> {
+
+    public static final String REJECTED_BY_HEADER = "X-Quota-Rejected-By";
+
+    public static final String REJECTIONS_METRIC = "spring.cloud.gateway.quota.rejections";
+
+    private static final String EMPTY_KEY = "____EMPTY_KEY__";
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static final long EVICTION_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+    enum Level {
+
+        KEY(HttpStatus.TOO_MANY_REQUESTS), ROUTE(HttpStatus.TOO_MANY_REQUESTS), GLOBAL(HttpStatus.SERVICE_UNAVAILABLE);
+
+        private final HttpStatus status;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+
+        Level(HttpStatus status) {
+            this.status = status;
+        }
+    }
+
+    private final KeyResolver defaultKeyResolver;
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final LongSupplier nanoTime;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile int maxConcurrency;
+
+    private final TokenBuckets routes;
+
+    private final Map<String, TokenBuckets> keys = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> rejections = new ConcurrentHashMap<>();
+
+    public QuotaGatewayFilterFactory(KeyResolver defaultKeyResolver, ObjectProvider<MeterRegistry> meterRegistry) {
+        this(defaultKeyResolver, meterRegistry, System::nanoTime);
+    }
+
+    QuotaGatewayFilterFactory(KeyResolver defaultKeyResolver, ObjectProvider<MeterRegistry> meterRegistry, LongSupplier nanoTime) {
+        super(Config.class);
+        this.defaultKeyResolver = defaultKeyResolver;
+        this.meterRegistry = meterRegistry;
+        this.nanoTime = nanoTime;
+        this.routes = new TokenBuckets(nanoTime, EVICTION_INTERVAL);
+    }
+
+    /**
+     * The most requests any of the routes using the filter may have in flight at once,
+     * between them. Left at zero, it isn't checked.
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * The requests currently let through while there's a concurrency ceiling.
+     */
+    int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        var keyResolver = config.keyResolver != null ? config.keyResolver : this.defaultKeyResolver;
+        var keyInterval = config.keyReplenishRate > 0 ? NANOS_PER_SECOND / config.keyReplenishRate : 0;
+        var keyTolerance = keyInterval * config.keyBurstCapacity;
+        var routeInterval = config.routeReplenishRate > 0 ? NANOS_PER_SECOND / config.routeReplenishRate : 0;
+        var routeTolerance = routeInterval * config.routeBurstCapacity;
+        return (exchange, chain) -> {
+            Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+            var routeId = route.getId();
+            return keyResolver.resolve(exchange).defaultIfEmpty(EMPTY_KEY).flatMap(key -> {
+                if (EMPTY_KEY.equals(key) && config.denyEmptyKey) {
+                    setResponseStatus(exchange, HttpStatus.FORBIDDEN);
+                    return exchange.getResponse().setComplete();
+                }
+                var now = this.nanoTime.getAsLong();
+                var keyed = keyInterval > 0 && !EMPTY_KEY.equals(key);
+                var keyBuckets = keyed ? this.keys.computeIfAbsent(routeId, id -> new TokenBuckets(this.nanoTime, EVICTION_INTERVAL)) : null;
+                if (keyed && keyBuckets.take(key, now, keyInterval, keyTolerance) < 0) {
+                    return reject(exchange, routeId, Level.KEY);
+                }
+                if (routeInterval > 0 && this.routes.take(routeId, now, routeInterval, routeTolerance) < 0) {
+                    if (keyed) {
+                        keyBuckets.refund(key, keyInterval);
+                    }
+                    return reject(exchange, routeId, Level.ROUTE);
+                }
+                var maxConcurrency = this.maxConcurrency;
+                if (maxConcurrency <= 0) {
+                    return chain.filter(exchange);
+                }
+                if (this.inFlight.incrementAndGet() > maxConcurrency) {
+                    this.inFlight.decrementAndGet();
+                    if (routeInterval > 0) {
+                        this.routes.refund(routeId, routeInterval);
+                    }
+                    if (keyed) {
+                        keyBuckets.refund(key, keyInterval);
+                    }
+                    return reject(exchange, routeId, Level.GLOBAL);
+                }
+                return chain.filter(exchange).doFinally(signal -> this.inFlight.decrementAndGet());
+            });
+        };
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, String routeId, Level level) {
+        var registry = this.meterRegistry.getIfAvailable();
+        if (registry != null) {
+            this.rejections.computeIfAbsent(routeId + "/" + level.tag, id -> Counter.builder(REJECTIONS_METRIC)
+                    .tag("routeId", routeId)
+                    .tag("level", level.tag)
+                    .register(registry))
+                    .increment();
+        }
+        setResponseStatus(exchange, level.status);
+        exchange.getResponse().getHeaders().add(REJECTED_BY_HEADER, level.tag);
+        return exchange.getResponse().setComplete();
+    }
+
+    /**
+     * Any level that's left at zero isn't checked. The ceiling on requests in flight is
+     * the factory's, see {@link QuotaGatewayFilterFactory#setMaxConcurrency(int)}.
+     */
+    public static class Config {
+
+        private KeyResolver keyResolver;
+
+        private int keyReplenishRate;
+
+        private int keyBurstCapacity;
+
+        private int routeReplenishRate;
+
+        private int routeBurstCapacity;
+
+        private boolean denyEmptyKey = true;
+
+        public KeyResolver getKeyResolver() {
+            return this.keyResolver;
+        }
+
+        public Config setKeyResolver(KeyResolver keyResolver) {
+            this.keyResolver = keyResolver;
+            return this;
+        }
+
+        public int getKeyReplenishRate() {
+            return this.keyReplenishRate;
+        }
+
+        public Config setKeyReplenishRate(int keyReplenishRate) {
+            this.keyReplenishRate = keyReplenishRate;
+            return this;
+        }
+
+        public int getKeyBurstCapacity() {
+            return this.keyBurstCapacity;
+        }
+
+        public Config setKeyBurstCapacity(int keyBurstCapacity) {
+            this.keyBurstCapacity = keyBurstCapacity;
+            return this;
+        }
+
+        public int getRouteReplenishRate() {
+            return this.routeReplenishRate;
+        }
+
+        public Config setRouteReplenishRate(int routeReplenishRate) {
+            this.routeReplenishRate = routeReplenishRate;
+            return this;
+        }
+
+        public int getRouteBurstCapacity() {
+            return this.routeBurstCapacity;
+        }
+
+        public Config setRouteBurstCapacity(int routeBurstCapacity) {
+            this.routeBurstCapacity = routeBurstCapacity;
+            return this;
+        }
+
+        public boolean isDenyEmptyKey() {
+            return this.denyEmptyKey;
+        }
+
+        public Config setDenyEmptyKey(boolean denyEmptyKey) {
+            this.denyEmptyKey = denyEmptyKey;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.basics;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * The shared token buckets behind a {@link LeasingRateLimiter}, one per key, that every
+ * gateway instance leases its slice of the quota from.
+ */
+public interface QuotaStore {
+
+    /**
+     * Settles a batch of leases in one go: for each of them, gives back the tokens that
+     * weren't used and takes up to the requested number of new ones.
+     * @return the number of tokens granted, in the same order as {@code leases}
+     */
+    Mono<List<Long>> lease(List<Lease> leases);
+
+    final class Lease {
+
+        private final String key;
+
+        private final LocalRateLimiter.Config config;
+
+        private final long returned;
+
+        private final long requested;
+
+        public Lease(String key, LocalRateLimiter.Config config, long returned, long requested) {
+            this.key = key;
+            this.config = config;
+            this.returned = returned;
+            this.requested = requested;
+        }
+
+        public String getKey() {
+            return this.key;
+        }
+
+        public LocalRateLimiter.Config getConfig() {
+            return this.config;
+        }
+
+        public long getReturned() {
+            return this.returned;
+        }
+
+        public long getRequested() {
+            return this.requested;
+        }
+
+        @Override
+        public String toString() {
+            return "Lease{key='" + this.key + "', returned=" + this.returned + ", requested=" + this.requested + "}";
+        }
+    }
+}
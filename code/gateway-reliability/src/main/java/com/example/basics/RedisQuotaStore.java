@@ -0,0 +1,47 @@
+package com.example.basics;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A {@link QuotaStore} in Redis, using the same token bucket as the {@code RedisRateLimiter}.
+ * <p>
+ * A batch is one script call per key, all sent at once over the same connection, so the
+ * keys can live on different nodes of a cluster; each key's pair of entries shares a hash
+ * tag, just like the rate limiter's.
+ */
+@Log4j2
+public class RedisQuotaStore implements QuotaStore {
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    private final RedisScript<Long> script = RedisScript.of(new ClassPathResource("scripts/quota_lease.lua"), Long.class);
+
+    public RedisQuotaStore(ReactiveStringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public Mono<List<Long>> lease(List<Lease> leases) {
+        var now = Instant.now().toEpochMilli() / 1000.0;
+        return Flux.fromIterable(leases)
+                .flatMapSequential(lease -> {
+                    var prefix = "quota_lease.{" + lease.getKey() + "}.";
+                    var config = lease.getConfig();
+                    return this.redisTemplate
+                            .execute(this.script, List.of(prefix + "tokens", prefix + "timestamp"),
+                                    List.of(String.valueOf(config.getReplenishRate()), String.valueOf(config.getBurstCapacity()),
+                                            String.valueOf(now), String.valueOf(lease.getReturned()), String.valueOf(lease.getRequested())))
+                            .next()
+                            .doOnError(e -> log.debug("Error calling quota lease lua", e));
+                })
+                .collectList();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.basics;
+
+import org.springframework.cloud.gateway.filter.AdaptCachedBodyGlobalFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CACHED_REQUEST_BODY_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * The stock {@link AdaptCachedBodyGlobalFilter} keeps the whole body of every request on
+ * a route with a {@code retry(...)}, however big it is, so that it can be sent again. This
+ * one does the same for the routes that don't say otherwise, but for those with a
+ * {@value #MAX_SIZE_METADATA} in their metadata, a number of bytes or a size like
+ * {@code 64KB}, it only keeps the bodies that fit.
+ * <p>
+ * A body that fits is read up front and held as the pooled buffers it arrived in, joined
+ * into one composite buffer without copying them. Every attempt then gets a retained slice
+ * of it, and the gateway's {@code RemoveCachedBodyFilter} releases it once the exchange
+ * completes, just like the bodies cached for the stock filters that need them. A body over
+ * the cap, or of unknown length, is streamed through untouched instead, and marked so that
+ * {@link BudgetedRetryGatewayFilterFactory} doesn't retry the request: its body is gone
+ * once it's been sent.
+ */
+class ReplayableBodyFilter extends AdaptCachedBodyGlobalFilter {
+
+    static final String MAX_SIZE_METADATA = "replayable-body-max-size";
+
+    static final String NOT_REPLAYABLE_ATTR = ReplayableBodyFilter.class.getName() + ".notReplayable";
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        var maxSize = route == null ? null : route.getMetadata().get(MAX_SIZE_METADATA);
+        if (maxSize == null || exchange.getAttribute(CACHED_REQUEST_BODY_ATTR) != null) {
+            return super.filter(exchange, chain);
+        }
+        var headers = exchange.getRequest().getHeaders();
+        var length = headers.getContentLength();
+        if (length < 0 && !headers.containsKey(HttpHeaders.TRANSFER_ENCODING) || length == 0) {
+            return chain.filter(exchange);
+        }
+        if (length < 0 || length > toBytes(maxSize)) {
+            exchange.getAttributes().put(NOT_REPLAYABLE_ATTR, Boolean.TRUE);
+            return chain.filter(exchange);
+        }
+        return ServerWebExchangeUtils.cacheRequestBody(exchange, request -> chain.filter(exchange.mutate().request(request).build()));
+    }
+
+    /**
+     * Whether the request's body, if it has one, can be sent more than once.
+     */
+    static boolean isReplayable(ServerWebExchange exchange) {
+        return !Boolean.TRUE.equals(exchange.getAttribute(NOT_REPLAYABLE_ATTR));
+    }
+
+    private static long toBytes(Object maxSize) {
+        if (maxSize instanceof Number) {
+            return ((Number) maxSize).longValue();
+        }
+        if (maxSize instanceof DataSize) {
+            return ((DataSize) maxSize).toBytes();
+        }
+        return DataSize.parse(maxSize.toString()).toBytes();
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.basics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * How many retries each route can afford: a fixed {@code ratio} of the requests that
+ * succeeded within the sliding window, plus {@code minRetriesPerSecond} so that a route
+ * with little traffic can still retry at all. Once a route's retries in the window reach
+ * that, further retries are refused until successes catch up or the failed attempts slide
+ * out of the window, which caps the extra load retries put on a degraded backend at
+ * {@code ratio} instead of multiplying it by the number of retries per request.
+ * <p>
+ * The window is a ring of one-second slots, each counting successes and retries with an
+ * atomic increment. Counts that land on a slot while it's being recycled for a new second
+ * may be lost, which only makes the budget off by a handful. How much of it is spent shows
+ * up in the {@value #USAGE_METRIC} gauge, and refused retries in the
+ * {@value #EXHAUSTED_METRIC} counter, both tagged with the route id.
+ */
+final class RetryBudget {
+
+    static final String USAGE_METRIC = "spring.cloud.gateway.retry.budget.usage";
+
+    static final String EXHAUSTED_METRIC = "spring.cloud.gateway.retry.budget.exhausted";
+
+    private static final long SLOT = Duration.ofSeconds(1).toNanos();
+
+    private final double ratio;
+
+    private final double minRetries;
+
+    private final int slots;
+
+    private final LongSupplier nanoTime;
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    RetryBudget(double ratio, int minRetriesPerSecond, Duration window, ObjectProvider<MeterRegistry> meterRegistry) {
+        this(ratio, minRetriesPerSecond, window, meterRegistry, System::nanoTime);
+    }
+
+    RetryBudget(double ratio, int minRetriesPerSecond, Duration window, ObjectProvider<MeterRegistry> meterRegistry, LongSupplier nanoTime) {
+        this.ratio = ratio;
+        this.slots = (int) Math.max(1, window.toSeconds());
+        this.minRetries = (double) minRetriesPerSecond * this.slots;
+        this.meterRegistry = meterRegistry;
+        this.nanoTime = nanoTime;
+    }
+
+    void recordSuccess(String routeId) {
+        var window = window(routeId);
+        window.add(window.successes, this.nanoTime.getAsLong());
+    }
+
+    void recordRetry(String routeId) {
+        var window = window(routeId);
+        window.add(window.retries, this.nanoTime.getAsLong());
+    }
+
+    /**
+     * Whether the route has room for one more retry. Doesn't spend any of it, since the
+     * retry may not happen after all; {@link #recordRetry(String)} does once it does.
+     */
+    boolean canRetry(String routeId) {
+        var window = window(routeId);
+        var now = this.nanoTime.getAsLong();
+        if (window.sum(window.retries, now) < allowed(window, now)) {
+            return true;
+        }
+        if (window.exhausted != null) {
+            window.exhausted.increment();
+        }
+        return false;
+    }
+
+    /**
+     * The share of the route's budget spent within the window. A route that's allowed no
+     * retries at all has spent all of it if it retried anyway, and none if it didn't.
+     */
+    double usage(String routeId) {
+        var window = window(routeId);
+        var now = this.nanoTime.getAsLong();
+        var retries = window.sum(window.retries, now);
+        var allowed = allowed(window, now);
+        if (allowed <= 0) {
+            return retries > 0 ? 1 : 0;
+        }
+        return retries / allowed;
+    }
+
+    private double allowed(Window window, long now) {
+        return this.ratio * window.sum(window.successes, now) + this.minRetries;
+    }
+
+    private Window window(String routeId) {
+        var window = this.windows.get(routeId);
+        if (window != null) {
+            return window;
+        }
+        return this.windows.computeIfAbsent(routeId, id -> {
+            var registry = this.meterRegistry.getIfAvailable();
+            if (registry == null) {
+                return new Window(this.slots, null);
+            }
+            Gauge.builder(USAGE_METRIC, this, budget -> budget.usage(id))
+                    .tag("routeId", id)
+                    .register(registry);
+            return new Window(this.slots, Counter.builder(EXHAUSTED_METRIC).tag("routeId", id).register(registry));
+        });
+    }
+
+    private static final class Window {
+
+        private final AtomicLongArray seconds;
+
+        private final AtomicLongArray successes;
+
+        private final AtomicLongArray retries;
+
+        private final Counter exhausted;
+
+        Window(int slots, Counter exhausted) {
+            this.seconds = new AtomicLongArray(slots);
+            this.successes = new AtomicLongArray(slots);
+            this.retries = new AtomicLongArray(slots);
+            this.exhausted = exhausted;
+            for (var i = 0; i < slots; i++) {
+                this.seconds.set(i, Long.MIN_VALUE);
+            }
+        }
+
+        void add(AtomicLongArray counts, long now) {
+            var second = Math.floorDiv(now, SLOT);
+            var slot = (int) Math.floorMod(second, (long) counts.length());
+            var seen = this.seconds.get(slot);
+            if (seen != second && this.seconds.compareAndSet(slot, seen, second)) {
+                this.successes.set(slot, 0);
+                this.retries.set(slot, 0);
+            }
+            counts.incrementAndGet(slot);
+        }
+
+        long sum(AtomicLongArray counts, long now) {
+            var second = Math.floorDiv(now, SLOT);
+            var sum = 0L;
+            for (var i = 0; i < counts.length(); i++) {
+                if (second - this.seconds.get(i) < counts.length()) {
+                    sum += counts.get(i);
+                }
+            }
+            return sum;
+        }
+    }
+}
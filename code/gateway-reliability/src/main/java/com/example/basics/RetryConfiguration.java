@@ -0,0 +1,66 @@
+package com.example.basics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.cloud.gateway.filter.AdaptCachedBodyGlobalFilter;
+import org.springframework.cloud.gateway.filter.factory.RetryGatewayFilterFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+/**
+ * Swaps the stock {@link RetryGatewayFilterFactory} for one that holds every route's
+ * retries to a {@link RetryBudget}, so a degraded backend sees at most
+ * {@code gateway.retry-budget.ratio} more calls than it answers, plus
+ * {@code gateway.retry-budget.min-retries-per-second}, over the last
+ * {@code gateway.retry-budget.window}, unless {@code gateway.retry-budget.enabled=false}.
+ * And swaps the stock {@link AdaptCachedBodyGlobalFilter} for the
+ * {@link ReplayableBodyFilter}, which lets routes cap the bodies kept for retries.
+ */
+@Configuration
+class RetryConfiguration {
+
+    @Bean
+    static BeanPostProcessor retryBeanPostProcessor() {
+        return new RetryBeanPostProcessor();
+    }
+
+    static class RetryBeanPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+        private AutowireCapableBeanFactory beanFactory;
+
+        @Override
+        public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+            this.beanFactory = (AutowireCapableBeanFactory) beanFactory;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+            if (bean instanceof RetryGatewayFilterFactory && !(bean instanceof BudgetedRetryGatewayFilterFactory)) {
+                return this.beanFactory.initializeBean(new BudgetedRetryGatewayFilterFactory(budget()), beanName);
+            }
+            if (bean instanceof AdaptCachedBodyGlobalFilter && !(bean instanceof ReplayableBodyFilter)) {
+                return this.beanFactory.initializeBean(new ReplayableBodyFilter(), beanName);
+            }
+            return bean;
+        }
+
+        private RetryBudget budget() {
+            var environment = this.beanFactory.getBean(Environment.class);
+            if (!environment.getProperty("gateway.retry-budget.enabled", Boolean.class, true)) {
+                return null;
+            }
+            return new RetryBudget(
+                    environment.getProperty("gateway.retry-budget.ratio", Double.class, 0.2),
+                    environment.getProperty("gateway.retry-budget.min-retries-per-second", Integer.class, 10),
+                    environment.getProperty("gateway.retry-budget.window", Duration.class, Duration.ofSeconds(10)),
+                    this.beanFactory.getBeanProvider(MeterRegistry.class));
+        }
+    }
+}
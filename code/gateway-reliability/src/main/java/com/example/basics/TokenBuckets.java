@@ -0,0 +1,127 @@
+package com.example.basics;
+
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets by key, each of them a single {@code long}: its theoretical arrival time,
+ * the instant at which the bucket will be full again. Taking tokens pushes it into the
+ * future by one replenish interval per token, and is denied if that would put it more than
+ * {@code burstCapacity} intervals ahead of now. So taking tokens is one compare-and-set on
+ * that key's {@code long}, and keys only contend with themselves.
+ * <p>
+ * A bucket whose arrival time has passed is full, exactly as if it had never been used, so
+ * idle keys can be evicted without losing anything. That happens in the background, at
+ * most once per eviction interval, which keeps memory bounded by the number of keys seen
+ * within roughly {@code burstCapacity / replenishRate} seconds.
+ */
+final class TokenBuckets {
+
+    /**
+     * Marks a bucket that's been evicted; whoever finds it looks the key up again.
+     */
+    private static final long EVICTED = Long.MIN_VALUE;
+
+    private static final AtomicLongFieldUpdater<Bucket> ARRIVAL = AtomicLongFieldUpdater.newUpdater(Bucket.class, "arrival");
+
+    private static final AtomicLongFieldUpdater<TokenBuckets> NEXT_EVICTION = AtomicLongFieldUpdater.newUpdater(TokenBuckets.class, "nextEviction");
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private final LongSupplier nanoTime;
+
+    private final long evictionInterval;
+
+    private volatile long nextEviction;
+
+    TokenBuckets(LongSupplier nanoTime, long evictionInterval) {
+        this.nanoTime = nanoTime;
+        this.evictionInterval = evictionInterval;
+        this.nextEviction = nanoTime.getAsLong() + evictionInterval;
+    }
+
+    /**
+     * Tries to take {@code increment} nanoseconds' worth of tokens from the key's bucket,
+     * given that it holds {@code tolerance} nanoseconds' worth when full.
+     * @return how far ahead of {@code now} the bucket's arrival time is afterwards if the
+     * tokens were taken, or {@code -1} minus how far ahead it is if they weren't. Either way
+     * {@code tolerance} minus that is what's left in the bucket.
+     */
+    long take(String key, long now, long increment, long tolerance) {
+        scheduleEviction(now);
+        while (true) {
+            var bucket = this.buckets.get(key);
+            if (bucket == null) {
+                bucket = this.buckets.computeIfAbsent(key, k -> new Bucket(now));
+            }
+            var arrival = bucket.arrival;
+            if (arrival == EVICTED) {
+                this.buckets.remove(key, bucket);
+                continue;
+            }
+            var from = Math.max(arrival, now);
+            var next = from + increment;
+            if (next - now > tolerance) {
+                return -1 - (from - now);
+            }
+            if (ARRIVAL.compareAndSet(bucket, arrival, next)) {
+                return next - now;
+            }
+        }
+    }
+
+    /**
+     * Puts back tokens taken from the key's bucket, say because a later check failed.
+     */
+    void refund(String key, long increment) {
+        var bucket = this.buckets.get(key);
+        if (bucket == null) {
+            return;
+        }
+        while (true) {
+            var arrival = bucket.arrival;
+            if (arrival == EVICTED || ARRIVAL.compareAndSet(bucket, arrival, arrival - increment)) {
+                return;
+            }
+        }
+    }
+
+    int size() {
+        return this.buckets.size();
+    }
+
+    private void scheduleEviction(long now) {
+        var nextEviction = this.nextEviction;
+        if (now - nextEviction >= 0 && NEXT_EVICTION.compareAndSet(this, nextEviction, now + this.evictionInterval)) {
+            Schedulers.parallel().schedule(this::evictIdleKeys);
+        }
+    }
+
+    /**
+     * Drops the buckets that are full again. A request racing with us either took its
+     * tokens first, in which case the bucket isn't idle any more and stays, or finds it
+     * marked as evicted and starts over with a fresh bucket, which is just as full.
+     */
+    void evictIdleKeys() {
+        var now = this.nanoTime.getAsLong();
+        this.buckets.forEach((key, bucket) -> {
+            var arrival = bucket.arrival;
+            if (arrival != EVICTED && arrival - now <= 0 && ARRIVAL.compareAndSet(bucket, arrival, EVICTED)) {
+                this.buckets.remove(key, bucket);
+            }
+        });
+    }
+
+    private static final class Bucket {
+
+        volatile long arrival;
+
+        Bucket(long arrival) {
+            this.arrival = arrival;
+        }
+    }
+}
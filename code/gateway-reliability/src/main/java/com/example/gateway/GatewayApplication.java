@@ -1,19 +1,28 @@
 package com.example.basics;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
-import org.springframework.cloud.gateway.filter.ratelimit.PrincipalNameKeyResolver;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
 import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
 import org.springframework.cloud.gateway.route.RouteLocator;
 import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.core.userdetails.MapReactiveUserDetailsService;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
 
 @SpringBootApplication
 public class GatewayApplication {
@@ -23,14 +32,15 @@ public class GatewayApplication {
     }
 
     @Bean
-    RouteLocator gateway(RouteLocatorBuilder routeLocatorBuilder) {
+    RouteLocator gateway(RouteLocatorBuilder routeLocatorBuilder, RateLimiter<?> rateLimiter, QuotaGatewayFilterFactory quota,
+                         AdaptiveConcurrencyGatewayFilterFactory concurrency, FallbackCacheGatewayFilterFactory fallbackCache) {
 
         return routeLocatorBuilder
                 .routes()
                 .route( rs -> rs   .path("/expensive")
                         .filters(fs -> fs
                                 .requestRateLimiter(rlc -> rlc
-                                        .setRateLimiter(rrl())
+                                        .setRateLimiter(rateLimiter)
                                         .setKeyResolver(pks())
                                 )
                                 .setPath("/hello")
@@ -40,23 +50,31 @@ public class GatewayApplication {
                         .path("/default")
                         .filters(fs -> fs
                                 .setPath("/")
-                                .filter((exchange, chain) -> {
-                                    System.out.println("new chance!");
-                                    return chain.filter(exchange);
-                                })
+                                .filter(fallbackCache.apply(config -> {
+                                }))
                         )
                         .uri("https://spring.io/guides")
                 )
                 .route(rs -> rs
                         .path("/customers")
-                        .filters(gfs -> gfs.circuitBreaker(config -> config
-                                .setFallbackUri("forward:/default")
-                        ))
+                        .filters(gfs -> gfs
+                                .filter(quota.apply(config -> config
+                                        .setKeyReplenishRate(10)
+                                        .setKeyBurstCapacity(20)
+                                        .setRouteReplenishRate(100)
+                                        .setRouteBurstCapacity(200)
+                                        .setDenyEmptyKey(false)
+                                ))
+                                .filter(concurrency.apply(config -> config.setMaxLimit(256)))
+                                .circuitBreaker(config -> config
+                                        .setFallbackUri("forward:/default")
+                                ))
                         .uri("lb://customers")
                 )
                 .route(rs -> rs
                         .path("/error/**")
                         .filters(fs -> fs.retry(5))
+                        .metadata(ReplayableBodyFilter.MAX_SIZE_METADATA, "64KB")
                         .uri("lb://customers")
                 )
                 .build();
@@ -67,9 +85,41 @@ public class GatewayApplication {
         return new RedisRateLimiter(5, 10);
     }
 
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "gateway.rate-limiter", havingValue = "local")
+    LocalRateLimiter lrl() {
+        return new LocalRateLimiter(5, 10);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "gateway.rate-limiter", havingValue = "leasing")
+    LeasingRateLimiter larl(ReactiveStringRedisTemplate redisTemplate) {
+        return new LeasingRateLimiter(new RedisQuotaStore(redisTemplate), 5, 10);
+    }
+
+    @Bean
+    QuotaGatewayFilterFactory quotaGatewayFilterFactory(KeyResolver keyResolver, ObjectProvider<MeterRegistry> meterRegistry) {
+        var quota = new QuotaGatewayFilterFactory(keyResolver, meterRegistry);
+        quota.setMaxConcurrency(256);
+        return quota;
+    }
+
+    @Bean
+    AdaptiveConcurrencyGatewayFilterFactory adaptiveConcurrencyGatewayFilterFactory(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new AdaptiveConcurrencyGatewayFilterFactory(meterRegistry);
+    }
+
+    @Bean
+    FallbackCacheGatewayFilterFactory fallbackCacheGatewayFilterFactory(WebClient.Builder webClientBuilder,
+                                                                        @Value("${gateway.fallback-cache.refresh-interval:30s}") Duration refreshInterval) {
+        return new FallbackCacheGatewayFilterFactory(webClientBuilder.build(), refreshInterval, 100);
+    }
+
     @Bean
     KeyResolver pks() {
-        return new PrincipalNameKeyResolver();
+        return CompositeKeyResolver.builder().principal().build();
     }
 
 }
@@ -0,0 +1,34 @@
+-- Settles one key's lease against the shared token bucket: gives back the tokens the
+-- gateway instance didn't use and takes up to `requested` new ones. Same bucket as
+-- Spring Cloud Gateway's request_rate_limiter.lua, so the two agree on the semantics.
+local tokens_key = KEYS[1]
+local timestamp_key = KEYS[2]
+
+local rate = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+local now = tonumber(ARGV[3])
+local returned = tonumber(ARGV[4])
+local requested = tonumber(ARGV[5])
+
+local fill_time = capacity/rate
+local ttl = math.max(1, math.ceil(fill_time*2))
+
+local last_tokens = tonumber(redis.call("get", tokens_key))
+if last_tokens == nil then
+  last_tokens = capacity
+end
+
+local last_refreshed = tonumber(redis.call("get", timestamp_key))
+if last_refreshed == nil then
+  last_refreshed = 0
+end
+
+local delta = math.max(0, now-last_refreshed)
+local filled_tokens = math.min(capacity, last_tokens+returned+(delta*rate))
+local granted = math.max(0, math.min(requested, math.floor(filled_tokens)))
+local new_tokens = filled_tokens - granted
+
+redis.call("setex", tokens_key, ttl, new_tokens)
+redis.call("setex", timestamp_key, ttl, now)
+
+return granted
@@ -0,0 +1,101 @@
+package com.example.basics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class AdaptiveConcurrencyLimitTests {
+
+    private final AtomicLong now = new AtomicLong(-TimeUnit.DAYS.toNanos(1));
+
+    private final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 1, 200,
+            TimeUnit.MILLISECONDS.toNanos(100), 10, this.now::get);
+
+    @Test
+    void growsWhileResponsesStayFastAndShrinksOnceTheySlowDown() {
+        for (var i = 0; i < 50; i++) {
+            window(this.limit.getLimit(), 10);
+        }
+        var grown = this.limit.getLimit();
+        assertThat(grown).isGreaterThan(60);
+
+        for (var i = 0; i < 20; i++) {
+            window(this.limit.getLimit(), 50);
+        }
+        assertThat(this.limit.getLimit()).isLessThan(grown / 2);
+
+        for (var i = 0; i < 100; i++) {
+            window(this.limit.getLimit(), 1000);
+        }
+        assertThat(this.limit.getLimit()).isLessThanOrEqualTo(4);
+    }
+
+    @Test
+    void doesNotGrowWhileMostPermitsAreUnused() {
+        for (var i = 0; i < 20; i++) {
+            window(5, 10);
+        }
+        assertThat(this.limit.getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    void turnsRequestsOverTheLimitAwayWithA503() {
+        var registry = new SimpleMeterRegistry();
+        var factory = new AdaptiveConcurrencyGatewayFilterFactory(
+                new StaticListableBeanFactory(Map.of("registry", registry)).getBeanProvider(MeterRegistry.class), this.now::get);
+        var filter = factory.apply(config -> config.setInitialLimit(2));
+        var upstream = Sinks.<Void>empty();
+        var pending = Mono.when(filter.filter(exchange(), e -> upstream.asMono()), filter.filter(exchange(), e -> upstream.asMono()))
+                .toFuture();
+        assertThat(registry.get(AdaptiveConcurrencyGatewayFilterFactory.IN_FLIGHT_METRIC).tag("routeId", "customers").gauge().value())
+                .isEqualTo(2);
+
+        var rejected = exchange();
+        filter.filter(rejected, e -> Mono.empty()).block();
+        assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(registry.get(AdaptiveConcurrencyGatewayFilterFactory.REJECTIONS_METRIC).tag("routeId", "customers").counter().count())
+                .isEqualTo(1);
+
+        upstream.tryEmitEmpty();
+        pending.join();
+        assertThat(registry.get(AdaptiveConcurrencyGatewayFilterFactory.IN_FLIGHT_METRIC).tag("routeId", "customers").gauge().value())
+                .isZero();
+        assertThat(registry.get(AdaptiveConcurrencyGatewayFilterFactory.LIMIT_METRIC).tag("routeId", "customers").gauge().value())
+                .isEqualTo(2);
+    }
+
+    /**
+     * Runs {@code concurrency} requests at once that each take {@code rttMillis}, over one
+     * window.
+     */
+    private void window(int concurrency, long rttMillis) {
+        for (var i = 0; i < concurrency; i++) {
+            assertThat(this.limit.tryAcquire()).isTrue();
+        }
+        this.now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        for (var i = 0; i < concurrency; i++) {
+            this.limit.release(TimeUnit.MILLISECONDS.toNanos(rttMillis));
+        }
+    }
+
+    private MockServerWebExchange exchange() {
+        var exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/customers"));
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.async().id("customers").uri("lb://customers")
+                .asyncPredicate(e -> Mono.just(true)).build());
+        return exchange;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.basics;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class CompositeKeyResolverTests {
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    @Test
+    void combinesTheParts() {
+        var keyResolver = CompositeKeyResolver.builder().principal().routeId().header("X-Tenant").clientIp().build();
+        var exchange = exchange(MockServerHttpRequest.get("/expensive")
+                .header("X-Tenant", "acme")
+                .remoteAddress(new InetSocketAddress("10.0.0.1", 1234)), "jlong");
+        assertThat(keyResolver.resolve(exchange).block()).isEqualTo("jlong:expensive:acme:10.0.0.1");
+    }
+
+    @Test
+    void isEmptyIfAPartIsMissing() {
+        var keyResolver = CompositeKeyResolver.builder().principal().header("X-Tenant").build();
+        assertThat(keyResolver.resolve(exchange(MockServerHttpRequest.get("/expensive"), "jlong")).block()).isNull();
+        assertThat(keyResolver.resolve(exchange(MockServerHttpRequest.get("/expensive").header("X-Tenant", "acme"), null)).block()).isNull();
+    }
+
+    @Test
+    void remembersThePrincipalPerCredentials() {
+        var keyResolver = CompositeKeyResolver.builder().principal().build();
+        for (var i = 0; i < 3; i++) {
+            assertThat(keyResolver.resolve(exchange(basic("jlong:pw"), "jlong")).block()).isEqualTo("jlong");
+            assertThat(keyResolver.resolve(exchange(basic("starbuxman:pw"), "starbuxman")).block()).isEqualTo("starbuxman");
+            assertThat(keyResolver.resolve(exchange(MockServerHttpRequest.get("/expensive").cookie(new HttpCookie("SESSION", "1")), "jlong")).block()).isEqualTo("jlong");
+        }
+        assertThat(this.lookups).hasValue(3);
+        assertThat(keyResolver.resolve(exchange(MockServerHttpRequest.get("/expensive"), "anonymous")).block()).isEqualTo("anonymous");
+        assertThat(keyResolver.resolve(exchange(MockServerHttpRequest.get("/expensive"), "anonymous")).block()).isEqualTo("anonymous");
+        assertThat(this.lookups).hasValue(5);
+    }
+
+    @Test
+    void forgetsPrincipalsAfterTheirTimeToLiveAndBeyondTheSize() {
+        var now = new AtomicLong();
+        var names = new CompositeKeyResolver.PrincipalNames(10, TimeUnit.MINUTES.toNanos(5), now::get);
+        names.put("a", "jlong");
+        now.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        assertThat(names.get("a")).isNull();
+        for (var i = 0; i < 100; i++) {
+            names.put("credentials-" + i, "user-" + i);
+        }
+        assertThat(names.size()).isEqualTo(10);
+        assertThat(names.get("credentials-99")).isEqualTo("user-99");
+    }
+
+    @Test
+    void forgetsTheLeastRecentlyUsedPrincipalFirst() {
+        var names = new CompositeKeyResolver.PrincipalNames(3, TimeUnit.MINUTES.toNanos(5), System::nanoTime);
+        names.put("a", "jlong");
+        names.put("b", "starbuxman");
+        names.put("c", "mgray");
+        assertThat(names.get("a")).isEqualTo("jlong");
+        names.put("d", "dsyer");
+        assertThat(names.get("b")).isNull();
+        assertThat(names.get("a")).isEqualTo("jlong");
+        assertThat(names.get("c")).isEqualTo("mgray");
+        names.put("e", "spencergibb");
+        assertThat(names.get("d")).isNull();
+        assertThat(names.get("a")).isEqualTo("jlong");
+        assertThat(names.get("e")).isEqualTo("spencergibb");
+    }
+
+    private MockServerHttpRequest.BaseBuilder<?> basic(String credentials) {
+        return MockServerHttpRequest.get("/expensive")
+                .header(HttpHeaders.AUTHORIZATION, "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes()));
+    }
+
+    private ServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request, String name) {
+        var exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.async().id("expensive").uri("lb://customers")
+                .asyncPredicate(e -> Mono.just(true)).build());
+        Mono<Principal> principal = Mono.fromSupplier(() -> {
+            this.lookups.incrementAndGet();
+            return name == null ? null : new UsernamePasswordAuthenticationToken(name, "pw");
+        });
+        return exchange.mutate().principal(principal).build();
+    }
+}
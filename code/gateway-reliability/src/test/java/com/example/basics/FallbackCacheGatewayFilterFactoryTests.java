@@ -0,0 +1,136 @@
+package com.example.basics;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class FallbackCacheGatewayFilterFactoryTests {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    private final AtomicReference<Supplier<ClientResponse>> upstream = new AtomicReference<>(() -> ok("the guides"));
+
+    private final FallbackCacheGatewayFilterFactory factory = new FallbackCacheGatewayFilterFactory(
+            WebClient.builder().exchangeFunction(request -> {
+                this.upstreamCalls.incrementAndGet();
+                return Mono.fromSupplier(this.upstream.get());
+            }).build(),
+            Duration.ofSeconds(30), 2, () -> this.now.incrementAndGet());
+
+    private final AtomicInteger proxied = new AtomicInteger();
+
+    private final GatewayFilterChain proxy = exchange -> Mono.fromRunnable(this.proxied::incrementAndGet);
+
+    @Test
+    void servesTheFallbackFromMemoryAfterTheFirstRequest() {
+        var filter = this.factory.apply(config -> {
+        });
+        for (var i = 0; i < 5; i++) {
+            var exchange = exchange("/");
+            filter.filter(exchange, this.proxy).block();
+            assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("the guides");
+            assertThat(exchange.getResponse().getHeaders().getContentType()).hasToString("text/html");
+            assertThat(exchange.getResponse().getHeaders()).doesNotContainKey(HttpHeaders.SET_COOKIE);
+        }
+        assertThat(this.upstreamCalls.get()).isEqualTo(1);
+        assertThat(this.proxied.get()).isZero();
+    }
+
+    @Test
+    void refreshesInTheBackgroundAndKeepsTheLastGoodResponse() {
+        var filter = this.factory.apply(config -> {
+        });
+        filter.filter(exchange("/"), this.proxy).block();
+
+        this.upstream.set(() -> ok("the new guides"));
+        this.factory.refresh().block();
+        assertThat(body(filter, "/")).isEqualTo("the new guides");
+
+        this.upstream.set(() -> ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+        this.factory.refresh().block();
+        assertThat(body(filter, "/")).isEqualTo("the new guides");
+        assertThat(this.upstreamCalls.get()).isEqualTo(3);
+        assertThat(this.proxied.get()).isZero();
+    }
+
+    @Test
+    void keepsOnlySuccessfulResponsesUpToTheLimit() {
+        var filter = this.factory.apply(config -> {
+        });
+        this.upstream.set(() -> ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+        filter.filter(exchange("/"), this.proxy).block();
+        assertThat(this.proxied.get()).isEqualTo(1);
+        assertThat(this.factory.size()).isZero();
+
+        this.upstream.set(() -> ok("the guides"));
+        body(filter, "/a");
+        body(filter, "/b");
+        body(filter, "/a");
+        body(filter, "/c");
+        assertThat(this.factory.size()).isEqualTo(2);
+        assertThat(this.upstreamCalls.get()).isEqualTo(4);
+        body(filter, "/a");
+        assertThat(this.upstreamCalls.get()).isEqualTo(4);
+    }
+
+    @Test
+    void proxiesAnythingButGetAndHead() {
+        var filter = this.factory.apply(config -> {
+        });
+        body(filter, "/");
+
+        var head = exchange(MockServerHttpRequest.head("/").build());
+        filter.filter(head, this.proxy).block();
+        assertThat(head.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        var post = exchange(MockServerHttpRequest.post("/").body("jlong"));
+        filter.filter(post, this.proxy).block();
+        assertThat(this.proxied.get()).isEqualTo(1);
+        assertThat(this.upstreamCalls.get()).isEqualTo(1);
+    }
+
+    private String body(GatewayFilter filter, String path) {
+        var exchange = exchange(path);
+        filter.filter(exchange, this.proxy).block();
+        return exchange.getResponse().getBodyAsString().block();
+    }
+
+    private static ClientResponse ok(String body) {
+        return ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, "text/html")
+                .header(HttpHeaders.SET_COOKIE, "SESSION=jlong")
+                .body(body)
+                .build();
+    }
+
+    private MockServerWebExchange exchange(String path) {
+        return exchange(MockServerHttpRequest.get(path).build());
+    }
+
+    private MockServerWebExchange exchange(MockServerHttpRequest request) {
+        var exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.async().id("default").uri("https://spring.io/guides")
+                .asyncPredicate(e -> Mono.just(true)).build());
+        return exchange;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.basics;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LeasingRateLimiterTests {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final InMemoryQuotaStore inMemory = new InMemoryQuotaStore(this.now::get);
+
+    private volatile Mono<Void> gate = Mono.empty();
+
+    private final QuotaStore store = leases -> {
+        this.calls.incrementAndGet();
+        return this.gate.then(this.inMemory.lease(leases));
+    };
+
+    @Test
+    void admitsAgainstTheLeaseWithoutCallingTheStore() {
+        var rateLimiter = rateLimiter(5);
+        IntStream.range(0, 5).forEach(i -> assertThat(isAllowed(rateLimiter, "jlong")).isTrue());
+        assertThat(this.calls).hasValue(1);
+    }
+
+    @Test
+    void instancesShareTheGlobalLimit() {
+        var one = rateLimiter(3);
+        var two = rateLimiter(3);
+        var admitted = IntStream.range(0, 20)
+                .filter(i -> isAllowed(i % 2 == 0 ? one : two, "jlong"))
+                .count();
+        assertThat(admitted).isEqualTo(10);
+    }
+
+    @Test
+    void syncTopsUpBusyLeasesAndReturnsIdleOnes() {
+        var one = rateLimiter(4);
+        var two = rateLimiter(4);
+        assertThat(isAllowed(one, "jlong")).isTrue();
+        one.sync().block();
+        one.sync().block();
+        one.sync().block();
+        IntStream.range(0, 9).forEach(i -> assertThat(isAllowed(two, "jlong")).isTrue());
+        assertThat(isAllowed(two, "jlong")).isFalse();
+    }
+
+    @Test
+    void deniedKeysDoNotAskAgainBeforeTheNextSync() {
+        var rateLimiter = rateLimiter(10);
+        IntStream.range(0, 10).forEach(i -> assertThat(isAllowed(rateLimiter, "jlong")).isTrue());
+        IntStream.range(0, 10).forEach(i -> assertThat(isAllowed(rateLimiter, "jlong")).isFalse());
+        assertThat(this.calls).hasValue(2);
+        this.now.addAndGet(TimeUnit.MILLISECONDS.toNanos(400));
+        rateLimiter.sync().block();
+        assertThat(isAllowed(rateLimiter, "jlong")).isTrue();
+        assertThat(isAllowed(rateLimiter, "jlong")).isTrue();
+        assertThat(isAllowed(rateLimiter, "jlong")).isFalse();
+    }
+
+    @Test
+    void givesBackWhatTheStoreGrantsALeaseThatWasRetiredInTheMeantime() {
+        var one = rateLimiter(4);
+        var refill = Sinks.<Void>empty();
+        this.gate = refill.asMono();
+        var response = one.isAllowed("expensive", "jlong").toFuture();
+        this.gate = Mono.empty();
+        one.sync().block();
+        one.sync().block();
+        one.sync().block();
+        refill.tryEmitEmpty();
+        assertThat(response.join().isAllowed()).isFalse();
+        one.sync().block();
+
+        var two = rateLimiter(10);
+        IntStream.range(0, 10).forEach(i -> assertThat(isAllowed(two, "jlong")).isTrue());
+    }
+
+    @Test
+    void letsRequestsThroughWhenTheStoreIsDown() {
+        var rateLimiter = new LeasingRateLimiter(leases -> Mono.error(new IllegalStateException("down")), 5, 10);
+        var response = rateLimiter.isAllowed("expensive", "jlong").block();
+        assertThat(response.isAllowed()).isTrue();
+        assertThat(response.getHeaders()).containsEntry(RedisRateLimiter.REMAINING_HEADER, "-1");
+    }
+
+    private LeasingRateLimiter rateLimiter(int leaseSize) {
+        var rateLimiter = new LeasingRateLimiter(this.store, 5, 10);
+        rateLimiter.setLeaseSize(leaseSize);
+        return rateLimiter;
+    }
+
+    private static boolean isAllowed(LeasingRateLimiter rateLimiter, String id) {
+        return rateLimiter.isAllowed("expensive", id).block().isAllowed();
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.basics;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalRateLimiterTests {
+
+    private final AtomicLong now = new AtomicLong(-TimeUnit.DAYS.toNanos(1));
+
+    private final LocalRateLimiter rateLimiter = new LocalRateLimiter(new LocalRateLimiter.Config()
+            .setReplenishRate(5).setBurstCapacity(10), this.now::get);
+
+    @Test
+    void admitsABurstThenReplenishes() {
+        IntStream.range(0, 10).forEach(i -> assertThat(isAllowed("jlong")).isTrue());
+        assertThat(isAllowed("jlong")).isFalse();
+        assertThat(isAllowed("starbuxman")).isTrue();
+
+        this.now.addAndGet(TimeUnit.MILLISECONDS.toNanos(199));
+        assertThat(isAllowed("jlong")).isFalse();
+        this.now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertThat(isAllowed("jlong")).isTrue();
+        assertThat(isAllowed("jlong")).isFalse();
+
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        IntStream.range(0, 10).forEach(i -> assertThat(isAllowed("jlong")).isTrue());
+        assertThat(isAllowed("jlong")).isFalse();
+    }
+
+    @Test
+    void reportsTheSameHeadersAsTheRedisRateLimiter() {
+        var allowed = this.rateLimiter.isAllowed("expensive", "jlong").block();
+        assertThat(allowed.getHeaders())
+                .containsEntry(RedisRateLimiter.REMAINING_HEADER, "9")
+                .containsEntry(RedisRateLimiter.REPLENISH_RATE_HEADER, "5")
+                .containsEntry(RedisRateLimiter.BURST_CAPACITY_HEADER, "10")
+                .containsEntry(RedisRateLimiter.REQUESTED_TOKENS_HEADER, "1");
+        IntStream.range(0, 9).forEach(i -> isAllowed("jlong"));
+        RateLimiter.Response denied = this.rateLimiter.isAllowed("expensive", "jlong").block();
+        assertThat(denied.isAllowed()).isFalse();
+        assertThat(denied.getHeaders()).containsEntry(RedisRateLimiter.REMAINING_HEADER, "0");
+    }
+
+    @Test
+    void evictsKeysOnceTheirBucketIsFullAgain() {
+        IntStream.range(0, 1000).forEach(i -> isAllowed("user-" + i));
+        isAllowed("jlong");
+        isAllowed("jlong");
+        this.now.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        this.rateLimiter.evictIdleKeys();
+        assertThat(this.rateLimiter.size()).isEqualTo(1);
+        this.now.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        this.rateLimiter.evictIdleKeys();
+        assertThat(this.rateLimiter.size()).isZero();
+        IntStream.range(0, 10).forEach(i -> assertThat(isAllowed("jlong")).isTrue());
+        assertThat(isAllowed("jlong")).isFalse();
+    }
+
+    private boolean isAllowed(String id) {
+        return this.rateLimiter.isAllowed("expensive", id).block().isAllowed();
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.basics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class QuotaGatewayFilterFactoryTests {
+
+    private final AtomicLong now = new AtomicLong(-TimeUnit.DAYS.toNanos(1));
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final QuotaGatewayFilterFactory factory = new QuotaGatewayFilterFactory(
+            exchange -> Mono.justOrEmpty(exchange.getRequest().getHeaders().getFirst("X-User")),
+            new StaticListableBeanFactory(Map.of("registry", this.registry)).getBeanProvider(MeterRegistry.class),
+            this.now::get);
+
+    @Test
+    void rejectsANoisyKeyBeforeItSpendsTheRoutesQuota() {
+        var filter = this.factory.apply(config -> config
+                .setKeyReplenishRate(1).setKeyBurstCapacity(1)
+                .setRouteReplenishRate(2).setRouteBurstCapacity(2));
+        assertThat(filter(filter, "jlong")).isNull();
+        assertThat(filter(filter, "jlong")).isEqualTo("key");
+        assertThat(filter(filter, "jlong")).isEqualTo("key");
+        assertThat(filter(filter, "starbuxman")).isNull();
+        assertThat(filter(filter, "mgray")).isEqualTo("route");
+        assertThat(rejections("key")).isEqualTo(2);
+        assertThat(rejections("route")).isEqualTo(1);
+
+        // the key token taken before the route said no was given back
+        this.now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertThat(filter(filter, "mgray")).isNull();
+    }
+
+    @Test
+    void capsTheRequestsInFlightAndGivesTheirTokensBack() {
+        this.factory.setMaxConcurrency(2);
+        var filter = this.factory.apply(config -> config.setKeyReplenishRate(1).setKeyBurstCapacity(1));
+        var upstream = Sinks.<Void>empty();
+        GatewayFilterChain slow = exchange -> upstream.asMono();
+        var first = exchange("jlong");
+        var second = exchange("starbuxman");
+        var pending = Mono.when(filter.filter(first, slow), filter.filter(second, slow)).toFuture();
+        assertThat(this.factory.getInFlight()).isEqualTo(2);
+
+        var third = exchange("mgray");
+        filter.filter(third, slow).block();
+        assertThat(third.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(third.getResponse().getHeaders().getFirst(QuotaGatewayFilterFactory.REJECTED_BY_HEADER)).isEqualTo("global");
+        assertThat(rejections("global")).isEqualTo(1);
+
+        upstream.tryEmitEmpty();
+        pending.join();
+        assertThat(this.factory.getInFlight()).isZero();
+        assertThat(filter(filter, "mgray")).isNull();
+    }
+
+    @Test
+    void everyRouteSharesTheOneCeiling() {
+        this.factory.setMaxConcurrency(2);
+        var customers = this.factory.apply(config -> config.setKeyReplenishRate(10).setKeyBurstCapacity(10));
+        var orders = this.factory.apply(config -> config.setRouteReplenishRate(10).setRouteBurstCapacity(10));
+        var upstream = Sinks.<Void>empty();
+        GatewayFilterChain slow = exchange -> upstream.asMono();
+        var pending = Mono.when(customers.filter(exchange("jlong"), slow), orders.filter(exchange("starbuxman"), slow)).toFuture();
+
+        assertThat(filter(customers, "mgray")).isEqualTo("global");
+        assertThat(filter(orders, "mgray")).isEqualTo("global");
+
+        upstream.tryEmitEmpty();
+        pending.join();
+        assertThat(filter(customers, "mgray")).isNull();
+        assertThat(filter(orders, "mgray")).isNull();
+    }
+
+    @Test
+    void onlyChecksTheLevelsThatAreConfigured() {
+        var filter = this.factory.apply(config -> config.setRouteReplenishRate(1).setRouteBurstCapacity(10));
+        IntStream.range(0, 10).forEach(i -> assertThat(filter(filter, "jlong")).isNull());
+        assertThat(filter(filter, "jlong")).isEqualTo("route");
+        assertThat(this.factory.getInFlight()).isZero();
+
+        var denied = exchange(null);
+        filter.filter(denied, exchange -> Mono.empty()).block();
+        assertThat(denied.getResponse().getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+    }
+
+    /**
+     * @return the level that rejected the request, or {@code null} if it went through
+     */
+    private String filter(GatewayFilter filter, String user) {
+        var exchange = exchange(user);
+        filter.filter(exchange, e -> Mono.empty()).block();
+        return exchange.getResponse().getHeaders().getFirst(QuotaGatewayFilterFactory.REJECTED_BY_HEADER);
+    }
+
+    private MockServerWebExchange exchange(String user) {
+        var request = MockServerHttpRequest.get("/customers");
+        if (user != null) {
+            request.header("X-User", user);
+        }
+        var exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.async().id("customers").uri("lb://customers")
+                .asyncPredicate(e -> Mono.just(true)).build());
+        return exchange;
+    }
+
+    private double rejections(String level) {
+        var counter = this.registry.find(QuotaGatewayFilterFactory.REJECTIONS_METRIC)
+                .tag("routeId", "customers").tag("level", level).counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
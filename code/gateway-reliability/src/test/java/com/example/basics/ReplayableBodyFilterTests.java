@@ -0,0 +1,87 @@
+package com.example.basics;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.RetryGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CACHED_REQUEST_BODY_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class ReplayableBodyFilterTests {
+
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+    private final ReplayableBodyFilter filter = new ReplayableBodyFilter();
+
+    @Test
+    void replaysABodyThatFitsWithoutCopyingIt() {
+        var chunks = List.of(buffer("hello, "), buffer("world"));
+        var exchange = exchange(chunks, 12, 16);
+        var bodies = new ArrayList<String>();
+        GatewayFilterChain upstream = e -> DataBufferUtils.join(e.getRequest().getBody())
+                .doOnNext(body -> bodies.add(body.toString(StandardCharsets.UTF_8)))
+                .doOnNext(DataBufferUtils::release)
+                .then();
+        this.filter.filter(exchange, e -> upstream.filter(e).then(upstream.filter(e))).block();
+        assertThat(bodies).containsExactly("hello, world", "hello, world");
+        assertThat(ReplayableBodyFilter.isReplayable(exchange)).isTrue();
+
+        // what the gateway's RemoveCachedBodyFilter does once the exchange completes
+        DataBufferUtils.release(exchange.getAttribute(CACHED_REQUEST_BODY_ATTR));
+        chunks.forEach(chunk -> assertThat(chunk.getNativeBuffer().refCnt()).isZero());
+    }
+
+    @Test
+    void streamsABodyOverTheCapAndDoesNotRetryIt() {
+        var chunks = List.of(buffer("hello, "), buffer("world"));
+        var exchange = exchange(chunks, 12, 8);
+        var calls = new ArrayList<String>();
+        var retry = new BudgetedRetryGatewayFilterFactory(null)
+                .apply(new RetryGatewayFilterFactory.RetryConfig().setRetries(3).allMethods());
+        GatewayFilterChain upstream = e -> e.getRequest().getBody()
+                .map(chunk -> {
+                    calls.add(chunk.toString(StandardCharsets.UTF_8));
+                    DataBufferUtils.release(chunk);
+                    return chunk;
+                })
+                .then(Mono.fromRunnable(() -> e.getResponse().setStatusCode(HttpStatus.BAD_GATEWAY)));
+        this.filter.filter(exchange, e -> retry.filter(e, upstream)).block();
+        assertThat(calls).containsExactly("hello, ", "world");
+        assertThat(exchange.<Object>getAttribute(CACHED_REQUEST_BODY_ATTR)).isNull();
+        assertThat(ReplayableBodyFilter.isReplayable(exchange)).isFalse();
+    }
+
+    private NettyDataBuffer buffer(String value) {
+        var buffer = this.bufferFactory.allocateBuffer();
+        buffer.write(value, StandardCharsets.UTF_8);
+        return buffer;
+    }
+
+    private ServerWebExchange exchange(List<NettyDataBuffer> body, long length, int maxSize) {
+        var exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/error/500")
+                .contentLength(length)
+                .body(Flux.fromIterable(body)));
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.async().id("error").uri("lb://customers")
+                .metadata(Map.of(ReplayableBodyFilter.MAX_SIZE_METADATA, maxSize))
+                .asyncPredicate(e -> Mono.just(true)).build());
+        return exchange.mutate().response(new MockServerHttpResponse(this.bufferFactory)).build();
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.basics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.RetryGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class RetryBudgetTests {
+
+    private final AtomicLong now = new AtomicLong(-TimeUnit.DAYS.toNanos(1));
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final ObjectProvider<MeterRegistry> meterRegistry = new StaticListableBeanFactory(Map.of("registry", this.registry))
+            .getBeanProvider(MeterRegistry.class);
+
+    private final RetryBudget budget = new RetryBudget(0.2, 1, Duration.ofSeconds(10), this.meterRegistry, this.now::get);
+
+    @Test
+    void allowsAFractionOfTheSuccessesWithinTheWindow() {
+        IntStream.range(0, 100).forEach(i -> this.budget.recordSuccess("error"));
+        IntStream.range(0, 30).forEach(i -> {
+            assertThat(this.budget.canRetry("error")).isTrue();
+            this.budget.recordRetry("error");
+        });
+        assertThat(this.budget.canRetry("error")).isFalse();
+        assertThat(this.budget.canRetry("customers")).isTrue();
+        assertThat(this.registry.get(RetryBudget.USAGE_METRIC).tag("routeId", "error").gauge().value()).isEqualTo(1.0);
+        assertThat(this.registry.get(RetryBudget.EXHAUSTED_METRIC).tag("routeId", "error").counter().count()).isEqualTo(1);
+
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertThat(this.budget.usage("error")).isZero();
+        IntStream.range(0, 10).forEach(i -> this.budget.recordRetry("error"));
+        assertThat(this.budget.canRetry("error")).isFalse();
+    }
+
+    @Test
+    void failsFastOnceTheRoutesBudgetIsSpent() {
+        var factory = new BudgetedRetryGatewayFilterFactory(this.budget);
+        var filter = factory.apply(new RetryGatewayFilterFactory.RetryConfig().setRetries(5));
+        var calls = new AtomicInteger();
+        GatewayFilterChain failing = exchange -> Mono.fromRunnable(() -> {
+            calls.incrementAndGet();
+            exchange.getResponse().setStatusCode(HttpStatus.BAD_GATEWAY);
+        });
+        GatewayFilterChain succeeding = exchange -> Mono.fromRunnable(() -> exchange.getResponse().setStatusCode(HttpStatus.OK));
+
+        filter.filter(exchange(), failing).block();
+        assertThat(calls.get()).isEqualTo(6);
+        filter.filter(exchange(), failing).block();
+        assertThat(calls.get()).isEqualTo(6 + 6);
+        filter.filter(exchange(), failing).block();
+        assertThat(calls.get()).isEqualTo(6 + 6 + 1);
+
+        IntStream.range(0, 5).forEach(i -> filter.filter(exchange(), succeeding).block());
+        filter.filter(exchange(), failing).block();
+        assertThat(calls.get()).isEqualTo(6 + 6 + 1 + 2);
+    }
+
+    @Test
+    void onlyExceptionsTheRouteRetriesAreChargedToTheBudget() {
+        var budget = new RetryBudget(0.2, 0, Duration.ofSeconds(10), this.meterRegistry, this.now::get);
+        var filter = new BudgetedRetryGatewayFilterFactory(budget).apply(new RetryGatewayFilterFactory.RetryConfig().setRetries(5));
+        assertThat(budget.usage("error")).isZero();
+
+        var calls = new AtomicInteger();
+        StepVerifier.create(filter.filter(exchange(), exchange -> Mono.fromRunnable(calls::incrementAndGet)
+                .then(Mono.error(new IllegalStateException("not retried")))))
+                .expectError(IllegalStateException.class)
+                .verify();
+        assertThat(this.registry.get(RetryBudget.EXHAUSTED_METRIC).tag("routeId", "error").counter().count()).isZero();
+
+        StepVerifier.create(filter.filter(exchange(), exchange -> Mono.fromRunnable(calls::incrementAndGet)
+                .then(Mono.error(new IOException("retried")))))
+                .expectError(IOException.class)
+                .verify();
+        assertThat(this.registry.get(RetryBudget.EXHAUSTED_METRIC).tag("routeId", "error").counter().count()).isEqualTo(1);
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    private MockServerWebExchange exchange() {
+        var exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/error/500"));
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.async().id("error").uri("lb://customers")
+                .asyncPredicate(e -> Mono.just(true)).build());
+        return exchange;
+    }
+}
@@ -0,0 +1,325 @@
+package com.example.registry;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.appinfo.InstanceInfo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * The instances in the registry, and a numbered log of the changes to them. Every
+ * instance registered, changed or gone bumps the version by one, and the last
+ * {@code history} changes are kept, already encoded, for clients that reconnect and
+ * want to pick up where they left off.
+ * <p>
+ * Versions start over whenever the registry does, so they come with an {@code epoch}
+ * that says which run of the registry they belong to.
+ * <p>
+ * Not thread safe: it's only ever used on the {@link RegistryChangeStream}'s thread.
+ */
+class RegistryChangeLog {
+
+	private final String epoch = UUID.randomUUID().toString();
+
+	private final int history;
+
+	private final ObjectMapper objectMapper;
+
+	private final Map<String, RegistryInstance> instances = new HashMap<>();
+
+	private final Deque<Change> changes = new ArrayDeque<>();
+
+	private long version;
+
+	RegistryChangeLog(int history, ObjectMapper objectMapper) {
+		this.history = history;
+		this.objectMapper = objectMapper;
+	}
+
+	String getEpoch() {
+		return this.epoch;
+	}
+
+	long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Records {@code instance}, returning the change, or {@code null} if it's the same
+	 * as it was.
+	 */
+	Change put(RegistryInstance instance) {
+		var key = key(instance.getApp(), instance.getId());
+		if (instance.equals(this.instances.put(key, instance))) {
+			return null;
+		}
+		return append(new Delta(this.version + 1, null, null, instance));
+	}
+
+	/**
+	 * Records that the instance {@code id} of {@code app} is gone, returning the change,
+	 * or {@code null} if it was gone already.
+	 */
+	Change remove(String app, String id) {
+		if (this.instances.remove(key(app, id)) == null) {
+			return null;
+		}
+		return append(new Delta(this.version + 1, app, id, null));
+	}
+
+	/**
+	 * Brings the log up to date with every instance there is, returning the changes.
+	 */
+	List<Change> update(Collection<RegistryInstance> instances) {
+		var changes = new ArrayList<Change>();
+		var gone = new HashMap<>(this.instances);
+		for (var instance : instances) {
+			gone.remove(key(instance.getApp(), instance.getId()));
+			var change = put(instance);
+			if (change != null) {
+				changes.add(change);
+			}
+		}
+		for (var instance : gone.values()) {
+			changes.add(remove(instance.getApp(), instance.getId()));
+		}
+		return changes;
+	}
+
+	/**
+	 * The changes made after version {@code since} of {@code epoch}, or {@code null} if
+	 * they're not all in the log any more, or never were.
+	 */
+	List<Change> since(String epoch, long since) {
+		if (!this.epoch.equals(epoch) || since > this.version) {
+			return null;
+		}
+		var oldest = this.changes.isEmpty() ? this.version + 1 : this.changes.peekFirst().version;
+		if (since < oldest - 1) {
+			return null;
+		}
+		var missed = new ArrayList<Change>((int) (this.version - since));
+		for (var change : this.changes) {
+			if (change.version > since) {
+				missed.add(change);
+			}
+		}
+		return missed;
+	}
+
+	/**
+	 * Every instance there is at the current version, encoded.
+	 */
+	String snapshot() {
+		return encode(new Snapshot(this.epoch, this.version, new ArrayList<>(this.instances.values())));
+	}
+
+	private Change append(Delta delta) {
+		this.version = delta.getVersion();
+		var change = new Change(this.version, encode(delta));
+		this.changes.addLast(change);
+		while (this.changes.size() > this.history) {
+			this.changes.removeFirst();
+		}
+		return change;
+	}
+
+	private String encode(Object value) {
+		try {
+			return this.objectMapper.writeValueAsString(value);
+		}
+		catch (JsonProcessingException e) {
+			throw new IllegalStateException("couldn't encode " + value, e);
+		}
+	}
+
+	private static String key(String app, String id) {
+		return app + '/' + id;
+	}
+
+	/**
+	 * A change, as sent to clients.
+	 */
+	static final class Change {
+
+		private final long version;
+
+		private final String data;
+
+		Change(long version, String data) {
+			this.version = version;
+			this.data = data;
+		}
+
+		long getVersion() {
+			return this.version;
+		}
+
+		String getData() {
+			return this.data;
+		}
+
+	}
+
+	/**
+	 * An instance as clients see it.
+	 */
+	static final class RegistryInstance {
+
+		private final String app;
+
+		private final String id;
+
+		private final String host;
+
+		private final int port;
+
+		private final boolean secure;
+
+		private final String status;
+
+		private final Map<String, String> metadata;
+
+		RegistryInstance(String app, String id, String host, int port, boolean secure, String status,
+				Map<String, String> metadata) {
+			this.app = app;
+			this.id = id;
+			this.host = host;
+			this.port = port;
+			this.secure = secure;
+			this.status = status;
+			this.metadata = new TreeMap<>(metadata);
+		}
+
+		static RegistryInstance of(InstanceInfo info) {
+			var secure = info.isPortEnabled(InstanceInfo.PortType.SECURE);
+			return new RegistryInstance(info.getAppName(), info.getInstanceId(), info.getHostName(),
+					secure ? info.getSecurePort() : info.getPort(), secure, info.getStatus().name(),
+					info.getMetadata());
+		}
+
+		public String getApp() {
+			return this.app;
+		}
+
+		public String getId() {
+			return this.id;
+		}
+
+		public String getHost() {
+			return this.host;
+		}
+
+		public int getPort() {
+			return this.port;
+		}
+
+		public boolean isSecure() {
+			return this.secure;
+		}
+
+		public String getStatus() {
+			return this.status;
+		}
+
+		public Map<String, String> getMetadata() {
+			return this.metadata;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof RegistryInstance)) {
+				return false;
+			}
+			var that = (RegistryInstance) o;
+			return this.port == that.port && this.secure == that.secure && this.app.equals(that.app)
+					&& this.id.equals(that.id) && Objects.equals(this.host, that.host)
+					&& Objects.equals(this.status, that.status) && this.metadata.equals(that.metadata);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.app, this.id);
+		}
+
+	}
+
+	/**
+	 * One instance registered or changed, or, given just its {@code app} and {@code id},
+	 * gone.
+	 */
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	static final class Delta {
+
+		private final long version;
+
+		private final String app;
+
+		private final String id;
+
+		private final RegistryInstance instance;
+
+		Delta(long version, String app, String id, RegistryInstance instance) {
+			this.version = version;
+			this.app = app;
+			this.id = id;
+			this.instance = instance;
+		}
+
+		public long getVersion() {
+			return this.version;
+		}
+
+		public String getApp() {
+			return this.app;
+		}
+
+		public String getId() {
+			return this.id;
+		}
+
+		public RegistryInstance getInstance() {
+			return this.instance;
+		}
+
+	}
+
+	static final class Snapshot {
+
+		private final String epoch;
+
+		private final long version;
+
+		private final List<RegistryInstance> instances;
+
+		Snapshot(String epoch, long version, List<RegistryInstance> instances) {
+			this.epoch = epoch;
+			this.version = version;
+			this.instances = instances;
+		}
+
+		public String getEpoch() {
+			return this.epoch;
+		}
+
+		public long getVersion() {
+			return this.version;
+		}
+
+		public List<RegistryInstance> getInstances() {
+			return this.instances;
+		}
+
+	}
+
+}
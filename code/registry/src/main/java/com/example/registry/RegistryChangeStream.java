@@ -0,0 +1,248 @@
+package com.example.registry;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.eureka.registry.PeerAwareInstanceRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.netflix.eureka.server.event.EurekaInstanceCanceledEvent;
+import org.springframework.cloud.netflix.eureka.server.event.EurekaInstanceRegisteredEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Pushes changes to the registry to whoever's listening, as server-sent events, so that
+ * they don't have to poll for them. A client starts with a {@code snapshot} event of every
+ * instance there is, then gets a {@code change} event, numbered, for every instance
+ * registered, changed or gone. A client that reconnects with the {@code epoch} and
+ * version it got to only gets the changes it missed, if they're still in the
+ * {@link RegistryChangeLog}, and a new snapshot if they're not.
+ * <p>
+ * Changes are picked up as instances register and cancel, and every
+ * {@code reconcileInterval} the whole registry is looked at again, for whatever those
+ * events don't cover, like status overrides. The log is kept on one thread, so that
+ * every client sees the changes in order, and each client's events are queued for it
+ * and sent on a thread of their own, so that one that's slow to read them holds up
+ * nobody else. A client that falls more than {@code backlog} events behind is
+ * disconnected, to pick up where it left off from the log when it reconnects.
+ */
+@RestController
+class RegistryChangeStream implements DisposableBean {
+
+	private static final Log log = LogFactory.getLog(RegistryChangeStream.class);
+
+	private final PeerAwareInstanceRegistry registry;
+
+	private final RegistryChangeLog changeLog;
+
+	private final List<Subscriber> subscribers = new ArrayList<>();
+
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		var thread = new Thread(runnable, "registry-changes");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final ExecutorService senders = Executors.newCachedThreadPool(runnable -> {
+		var thread = new Thread(runnable, "registry-changes-sender");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final int backlog;
+
+	RegistryChangeStream(PeerAwareInstanceRegistry registry, ObjectMapper objectMapper,
+			@Value("${registry.changes.history:1000}") int history,
+			@Value("${registry.changes.backlog:256}") int backlog,
+			@Value("${registry.changes.reconcile-interval:5s}") Duration reconcileInterval,
+			@Value("${registry.changes.keepalive-interval:15s}") Duration keepaliveInterval) {
+		this.registry = registry;
+		this.changeLog = new RegistryChangeLog(history, objectMapper);
+		this.backlog = backlog;
+		this.executor.scheduleWithFixedDelay(this::reconcile, 0, reconcileInterval.toMillis(),
+				TimeUnit.MILLISECONDS);
+		this.executor.scheduleWithFixedDelay(this::keepalive, keepaliveInterval.toMillis(),
+				keepaliveInterval.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	@GetMapping(path = "/registry/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	SseEmitter changes(@RequestParam(required = false) String epoch,
+			@RequestParam(defaultValue = "-1") long since) {
+		// never times out: the keepalives find the clients that have gone away
+		var emitter = new SseEmitter(0L);
+		var subscriber = new Subscriber(emitter, this.senders, this.backlog);
+		emitter.onCompletion(() -> this.executor.execute(() -> this.subscribers.remove(subscriber)));
+		emitter.onError(e -> this.executor.execute(() -> this.subscribers.remove(subscriber)));
+		this.executor.execute(() -> {
+			var missed = this.changeLog.since(epoch, since);
+			if (missed == null) {
+				subscriber.add(SseEmitter.event().name("snapshot").id(Long.toString(this.changeLog.getVersion()))
+						.data(this.changeLog.snapshot()));
+			}
+			else {
+				for (var change : missed) {
+					subscriber.add(event(change));
+				}
+			}
+			subscriber.add(SseEmitter.event().comment("at " + this.changeLog.getVersion()));
+			this.subscribers.add(subscriber);
+		});
+		return emitter;
+	}
+
+	@EventListener
+	public void registered(EurekaInstanceRegisteredEvent event) {
+		var instance = RegistryChangeLog.RegistryInstance.of(event.getInstanceInfo());
+		this.executor.execute(() -> publish(this.changeLog.put(instance)));
+	}
+
+	@EventListener
+	public void canceled(EurekaInstanceCanceledEvent event) {
+		this.executor.execute(() -> publish(this.changeLog.remove(event.getAppName(), event.getServerId())));
+	}
+
+	@Override
+	public void destroy() {
+		this.executor.shutdownNow();
+		this.senders.shutdownNow();
+	}
+
+	private void reconcile() {
+		try {
+			var instances = this.registry.getSortedApplications().stream()
+					.flatMap(application -> application.getInstances().stream())
+					.map(RegistryChangeLog.RegistryInstance::of)
+					.collect(Collectors.toList());
+			this.changeLog.update(instances).forEach(this::publish);
+		}
+		catch (RuntimeException e) {
+			log.warn("couldn't reconcile the registry changes", e);
+		}
+	}
+
+	private void keepalive() {
+		var comment = "at " + this.changeLog.getVersion();
+		this.subscribers.removeIf(subscriber -> !subscriber.offer(SseEmitter.event().comment(comment)));
+	}
+
+	private void publish(RegistryChangeLog.Change change) {
+		if (change != null) {
+			this.subscribers.removeIf(subscriber -> !subscriber.offer(event(change)));
+		}
+	}
+
+	private static SseEmitter.SseEventBuilder event(RegistryChangeLog.Change change) {
+		return SseEmitter.event().name("change").id(Long.toString(change.getVersion()))
+				.data(change.getData());
+	}
+
+	/**
+	 * A client, with the events not yet sent to it. They're sent by one task at a time on
+	 * the {@code senders}, which drains the queue and stops, so that a client that's
+	 * idle ties up no thread. Once it's over {@code backlog} events behind, or a send has
+	 * failed, nothing more is queued, and the client's disconnected once what's being
+	 * sent has gone: completing the emitter in the meantime would wait on that send.
+	 */
+	static final class Subscriber {
+
+		private final SseEmitter emitter;
+
+		private final Executor senders;
+
+		private final int backlog;
+
+		private final Queue<SseEmitter.SseEventBuilder> events = new ConcurrentLinkedQueue<>();
+
+		private final AtomicInteger queued = new AtomicInteger();
+
+		private final AtomicBoolean sending = new AtomicBoolean();
+
+		private volatile boolean closed;
+
+		Subscriber(SseEmitter emitter, Executor senders, int backlog) {
+			this.emitter = emitter;
+			this.senders = senders;
+			this.backlog = backlog;
+		}
+
+		/**
+		 * Queues {@code event} whatever the backlog, for what a client's owed as it
+		 * connects.
+		 */
+		void add(SseEmitter.SseEventBuilder event) {
+			this.queued.incrementAndGet();
+			this.events.add(event);
+			send();
+		}
+
+		/**
+		 * Queues {@code event}, unless the client's gone or too far behind.
+		 * @return whether the client's still there
+		 */
+		boolean offer(SseEmitter.SseEventBuilder event) {
+			if (this.closed) {
+				return false;
+			}
+			if (this.queued.incrementAndGet() > this.backlog) {
+				this.closed = true;
+				send();
+				return false;
+			}
+			this.events.add(event);
+			send();
+			return true;
+		}
+
+		private void send() {
+			if (this.sending.compareAndSet(false, true)) {
+				this.senders.execute(this::drain);
+			}
+		}
+
+		private void drain() {
+			do {
+				SseEmitter.SseEventBuilder event;
+				while (!this.closed && (event = this.events.poll()) != null) {
+					try {
+						this.emitter.send(event);
+						this.queued.decrementAndGet();
+					}
+					catch (IOException | IllegalStateException e) {
+						this.closed = true;
+						this.emitter.completeWithError(e);
+						return;
+					}
+				}
+				if (this.closed) {
+					this.events.clear();
+					this.emitter.complete();
+					return;
+				}
+				this.sending.set(false);
+			}
+			while (!this.events.isEmpty() && this.sending.compareAndSet(false, true));
+		}
+
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.example.registry;
+
+import com.example.registry.RegistryChangeLog.RegistryInstance;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RegistryChangeLogTests {
+
+	private final RegistryChangeLog changeLog = new RegistryChangeLog(3, new ObjectMapper());
+
+	@Test
+	void numbersEveryChange() {
+		assertThat(this.changeLog.put(instance("1", "UP")).getVersion()).isEqualTo(1);
+		assertThat(this.changeLog.put(instance("1", "UP"))).isNull();
+		assertThat(this.changeLog.put(instance("1", "DOWN")).getVersion()).isEqualTo(2);
+		assertThat(this.changeLog.remove("CUSTOMERS", "1").getData())
+				.isEqualTo("{\"version\":3,\"app\":\"CUSTOMERS\",\"id\":\"1\"}");
+		assertThat(this.changeLog.remove("CUSTOMERS", "1")).isNull();
+	}
+
+	@Test
+	void reconcilesWithTheRegistry() {
+		this.changeLog.put(instance("1", "UP"));
+		this.changeLog.put(instance("2", "UP"));
+
+		var changes = this.changeLog.update(List.of(instance("2", "UP"), instance("3", "UP")));
+
+		assertThat(changes).extracting(RegistryChangeLog.Change::getData).containsExactly(
+				"{\"version\":3,\"instance\":{\"app\":\"CUSTOMERS\",\"id\":\"3\",\"host\":\"localhost\",\"port\":8080,"
+						+ "\"secure\":false,\"status\":\"UP\",\"metadata\":{\"zone\":\"a\"}}}",
+				"{\"version\":4,\"app\":\"CUSTOMERS\",\"id\":\"1\"}");
+	}
+
+	@Test
+	void replaysTheChangesAClientMissed() {
+		for (var i = 1; i <= 5; i++) {
+			this.changeLog.put(instance(Integer.toString(i), "UP"));
+		}
+		var epoch = this.changeLog.getEpoch();
+
+		assertThat(this.changeLog.since(epoch, 3)).extracting(RegistryChangeLog.Change::getVersion).containsExactly(4L, 5L);
+		assertThat(this.changeLog.since(epoch, 2)).extracting(RegistryChangeLog.Change::getVersion).containsExactly(3L, 4L, 5L);
+		assertThat(this.changeLog.since(epoch, 5)).isEmpty();
+		assertThat(this.changeLog.since(epoch, 1)).as("no longer in the log").isNull();
+		assertThat(this.changeLog.since(epoch, 6)).as("from the future").isNull();
+		assertThat(this.changeLog.since("another run", 4)).isNull();
+		assertThat(this.changeLog.since(null, -1)).isNull();
+	}
+
+	private static RegistryInstance instance(String id, String status) {
+		return new RegistryInstance("CUSTOMERS", id, "localhost", 8080, false, status, Map.of("zone", "a"));
+	}
+
+}
@@ -0,0 +1,102 @@
+package com.example.registry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RegistryChangeStreamTests {
+
+	private final ExecutorService senders = Executors.newCachedThreadPool();
+
+	@AfterEach
+	void shutdown() {
+		this.senders.shutdownNow();
+	}
+
+	@Test
+	void sendsEveryClientItsEventsInOrder() throws Exception {
+		var emitter = new RecordingEmitter(0);
+		var subscriber = new RegistryChangeStream.Subscriber(emitter, this.senders, 10);
+
+		subscriber.add(SseEmitter.event().name("snapshot"));
+		for (var i = 0; i < 5; i++) {
+			assertThat(subscriber.offer(SseEmitter.event().id(Integer.toString(i)))).isTrue();
+		}
+
+		emitter.awaitSent(6);
+		assertThat(emitter.sent).hasSize(6);
+		assertThat(emitter.completed.getCount()).isOne();
+	}
+
+	@Test
+	void keepsOnSendingToTheOthersWhileAClientIsSlow() throws Exception {
+		var slow = new RecordingEmitter(1);
+		var fast = new RecordingEmitter(0);
+		var slowSubscriber = new RegistryChangeStream.Subscriber(slow, this.senders, 3);
+		var fastSubscriber = new RegistryChangeStream.Subscriber(fast, this.senders, 3);
+
+		for (var i = 0; i < 10; i++) {
+			var event = SseEmitter.event().id(Integer.toString(i));
+			fastSubscriber.offer(event);
+			slowSubscriber.offer(event);
+			fast.awaitSent(i + 1);
+		}
+
+		assertThat(fast.sent).hasSize(10);
+		assertThat(slowSubscriber.offer(SseEmitter.event().id("10"))).isFalse();
+		slow.blocked.countDown();
+		assertThat(slow.completed.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(slow.sent).hasSizeLessThanOrEqualTo(3);
+	}
+
+	/**
+	 * Keeps what it's sent, and can be held up on its first send until it's let go.
+	 */
+	private static final class RecordingEmitter extends SseEmitter {
+
+		private final List<SseEventBuilder> sent = new CopyOnWriteArrayList<>();
+
+		private final CountDownLatch blocked;
+
+		private final CountDownLatch completed = new CountDownLatch(1);
+
+		RecordingEmitter(int blocked) {
+			super(0L);
+			this.blocked = new CountDownLatch(blocked);
+		}
+
+		@Override
+		public void send(SseEventBuilder builder) {
+			try {
+				this.blocked.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.sent.add(builder);
+		}
+
+		@Override
+		public synchronized void complete() {
+			this.completed.countDown();
+		}
+
+		void awaitSent(int count) throws InterruptedException {
+			var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (this.sent.size() < count && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+		}
+
+	}
+
+}
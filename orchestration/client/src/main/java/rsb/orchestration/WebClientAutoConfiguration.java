@@ -1,11 +1,13 @@
 package rsb.orchestration;
 
 import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.cloud.client.loadbalancer.reactive.ReactorLoadBalancerExchangeFilterFunction;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.function.client.WebClient;
+import rsb.orchestration.loadbalancer.InstanceExchangeFilterFunction;
 
 @Log4j2
 @Configuration
@@ -14,10 +16,15 @@ class WebClientAutoConfiguration {
 	@Bean
 	@ConditionalOnMissingBean
 	WebClient loadBalancingWebClient(WebClient.Builder builder,
-			ReactorLoadBalancerExchangeFilterFunction lbFunction) { // <1>
+			ReactorLoadBalancerExchangeFilterFunction lbFunction, // <1>
+			ObjectProvider<InstanceExchangeFilterFunction> instanceFunctions) {
 		log.info(
 				"registering a default load-balanced " + WebClient.class.getName() + '.');
-		return builder.filter(lbFunction).build();
+		return builder//
+				.filter(lbFunction)//
+				.filters(filters -> instanceFunctions.orderedStream()
+						.forEach(filters::add))//
+				.build();
 	}
 
 }
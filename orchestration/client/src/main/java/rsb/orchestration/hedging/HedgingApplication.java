@@ -11,15 +11,32 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.web.reactive.function.client.WebClient;
 import rsb.orchestration.GreetingResponse;
 
+import java.time.Duration;
+
 @Log4j2
 @SpringBootApplication
 public class HedgingApplication {
 
+	@Bean
+	ServiceInstances serviceInstances(ReactiveDiscoveryClient rdc,
+			@Value("${rsb.hedging.refresh-interval:30s}") Duration refreshInterval) {
+		return new ServiceInstances(rdc, refreshInterval);
+	}
+
 	// <1>
 	@Bean
 	HedgingExchangeFilterFunction hedgingExchangeFilterFunction(
-			@Value("${rsb.lb.max-nodes:3}") int maxNodes, ReactiveDiscoveryClient rdc) {
-		return new HedgingExchangeFilterFunction(rdc, maxNodes);
+			@Value("${rsb.lb.max-nodes:3}") int maxNodes,
+			ServiceInstances serviceInstances,
+			@Value("${rsb.hedging.delayed:true}") boolean delayed,
+			@Value("${rsb.hedging.percentile:0.95}") double percentile,
+			@Value("${rsb.hedging.budget:0.1}") double budget) {
+		if (!delayed) {
+			return new HedgingExchangeFilterFunction(serviceInstances, maxNodes);
+		}
+		var policy = new HedgingPolicy(percentile, budget, 10, Duration.ofSeconds(1),
+				Duration.ofSeconds(30));
+		return new HedgingExchangeFilterFunction(serviceInstances, maxNodes, policy);
 	}
 
 	// <2>
@@ -2,8 +2,6 @@ package rsb.orchestration.hedging;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.springframework.cloud.client.ServiceInstance;
-import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
 import org.springframework.web.reactive.function.client.ClientRequest;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
@@ -13,36 +11,57 @@ import reactor.core.publisher.Mono;
 
 import java.net.URI;
 import java.time.Duration;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * Sends each request to up to {@code maxNodes} instances of the service and takes
+ * whichever answers first. Given a {@link HedgingPolicy}, only the first instance is
+ * sent the request right away, and each of the others only if there's still no answer
+ * after another delay the policy's worked out; otherwise they're all sent it at once.
+ */
 @Log4j2
 @RequiredArgsConstructor
 class HedgingExchangeFilterFunction implements ExchangeFilterFunction {
 
-	private final ReactiveDiscoveryClient reactiveDiscoveryClient;
+	private final ServiceInstances serviceInstances;
 
 	private final int timeoutInSeconds = 10;
 
 	private final int maxNodes;
 
+	private final HedgingPolicy hedgingPolicy;
+
+	HedgingExchangeFilterFunction(ServiceInstances serviceInstances, int maxNodes) {
+		this(serviceInstances, maxNodes, null);
+	}
+
 	@Override
 	public Mono<ClientResponse> filter(ClientRequest clientRequest,
 			ExchangeFunction exchangeFunction) {
 		var requestUrl = clientRequest.url();
 		var apiName = requestUrl.getHost();
-		return this.reactiveDiscoveryClient //
-				.getInstances(apiName) // <1>
-				.collectList()// <2>
-				.map(HedgingExchangeFilterFunction::shuffle)// <3>
-				.flatMapMany(Flux::fromIterable)// <4>
-				.take(maxNodes)// <5>
-				.map(si -> buildUriFromServiceInstance(si, requestUrl)) // <6>
-				.map(uri -> invoke(uri, clientRequest, exchangeFunction)) // <7>
-				.collectList() // <8>
+		return this.serviceInstances //
+				.get(apiName) // <1>
+				.flatMapMany(snapshot -> uris(snapshot, requestUrl)) // <2>
+				.map(uri -> invoke(uri, clientRequest, exchangeFunction)) // <3>
+				.transform(calls -> hedge(apiName, calls))//
+				.collectList() // <4>
 				.flatMap(list -> Flux.first(list)
-						.timeout(Duration.ofSeconds(timeoutInSeconds)).singleOrEmpty());// <9>
+						.timeout(Duration.ofSeconds(timeoutInSeconds)).singleOrEmpty());// <5>
+	}
+
+	private Flux<Mono<ClientResponse>> hedge(String apiName,
+			Flux<Mono<ClientResponse>> calls) {
+		if (this.hedgingPolicy == null) {
+			return calls;
+		}
+		var delay = this.hedgingPolicy.delay(apiName);
+		return calls//
+				.map(call -> this.hedgingPolicy.record(apiName, call))//
+				.index((i, call) -> i == 0 ? call
+						: Mono.delay(delay.multipliedBy(i))
+								.flatMap(tick -> this.hedgingPolicy.tryHedge(apiName) ? call
+										: Mono.never()));
 	}
 
 	private static Mono<ClientResponse> invoke(URI uri, ClientRequest request,
@@ -59,16 +78,18 @@ class HedgingExchangeFilterFunction implements ExchangeFilterFunction {
 				.doOnNext(cr -> log.info("launching " + newRequest.url()));
 	}
 
-	private static <T> List<T> shuffle(List<T> tList) {
-		var newArrayList = new ArrayList<T>(tList);
-		Collections.shuffle(newArrayList);
-		return newArrayList;
-	}
-
-	private static URI buildUriFromServiceInstance(ServiceInstance server,
-			URI originalRequestUrl) {
-		return URI.create(originalRequestUrl.getScheme() + "://" + server.getHost() + ':'
-				+ server.getPort() + originalRequestUrl.getPath());
+	/**
+	 * The request's URL on up to {@code maxNodes} instances, starting from a random one
+	 * and going round from there.
+	 */
+	private Flux<URI> uris(ServiceInstances.Snapshot snapshot, URI requestUrl) {
+		var size = snapshot.size();
+		if (size == 0) {
+			return Flux.empty();
+		}
+		var first = ThreadLocalRandom.current().nextInt(size);
+		return Flux.range(0, Math.min(this.maxNodes, size))
+				.map(i -> snapshot.uri((first + i) % size, requestUrl));
 	}
 
 }
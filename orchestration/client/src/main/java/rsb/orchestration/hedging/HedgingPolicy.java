@@ -0,0 +1,132 @@
+package rsb.orchestration.hedging;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * When to hedge a call to a service: only once it's taken longer than {@code percentile}
+ * of the service's recent calls, and only while there's budget left. Every call adds
+ * {@code budget} of a hedge to the service's budget, up to {@code maxBudget} hedges, and
+ * every hedge takes one away, so that however slow a service gets, hedging never adds
+ * more than {@code budget} to the calls it's sent.
+ * <p>
+ * Until enough of a service's calls have been timed, hedges go out after
+ * {@code defaultDelay}.
+ */
+final class HedgingPolicy {
+
+	private static final int MIN_SAMPLES = 20;
+
+	private static final long MILLI_HEDGES = 1000;
+
+	private final double percentile;
+
+	private final long budget;
+
+	private final long maxBudget;
+
+	private final long defaultDelay;
+
+	private final long window;
+
+	private final LongSupplier nanoTime;
+
+	private final Map<String, Service> services = new ConcurrentHashMap<>();
+
+	HedgingPolicy(double percentile, double budget, int maxBudget, Duration defaultDelay,
+			Duration window) {
+		this(percentile, budget, maxBudget, defaultDelay, window, System::nanoTime);
+	}
+
+	HedgingPolicy(double percentile, double budget, int maxBudget, Duration defaultDelay,
+			Duration window, LongSupplier nanoTime) {
+		this.percentile = percentile;
+		this.budget = (long) (budget * MILLI_HEDGES);
+		this.maxBudget = maxBudget * MILLI_HEDGES;
+		this.defaultDelay = defaultDelay.toNanos();
+		this.window = window.toNanos();
+		this.nanoTime = nanoTime;
+	}
+
+	/**
+	 * How long to wait for a call to {@code serviceId} before hedging it, adding to the
+	 * service's budget.
+	 */
+	Duration delay(String serviceId) {
+		var service = service(serviceId);
+		service.budget.accumulateAndGet(this.budget, (b, x) -> Math.min(this.maxBudget, b + x));
+		return Duration.ofNanos(service.delay());
+	}
+
+	/**
+	 * Whether there's budget left to hedge a call to {@code serviceId}, taking it if
+	 * there is.
+	 */
+	boolean tryHedge(String serviceId) {
+		var budget = service(serviceId).budget;
+		while (true) {
+			var left = budget.get();
+			if (left < MILLI_HEDGES) {
+				return false;
+			}
+			if (budget.compareAndSet(left, left - MILLI_HEDGES)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Times {@code call} to {@code serviceId}, if it answers. A call that's cancelled,
+	 * having lost to a hedge, is timed up to then: it would have taken at least that
+	 * long, and leaving it out would leave out just the slow calls hedging is for,
+	 * bringing the delay down and down until the budget's all there is to stop it.
+	 */
+	<T> Mono<T> record(String serviceId, Mono<T> call) {
+		return Mono.defer(() -> {
+			var latencies = service(serviceId).latencies;
+			var start = this.nanoTime.getAsLong();
+			return call//
+					.doOnNext(response -> latencies.record(this.nanoTime.getAsLong() - start))//
+					.doOnCancel(() -> latencies.record(this.nanoTime.getAsLong() - start));
+		});
+	}
+
+	private Service service(String serviceId) {
+		var service = this.services.get(serviceId);
+		return service != null ? service
+				: this.services.computeIfAbsent(serviceId, id -> new Service());
+	}
+
+	private final class Service {
+
+		private final LatencyHistogram latencies = new LatencyHistogram(window, nanoTime);
+
+		private final AtomicLong budget = new AtomicLong(maxBudget);
+
+		/**
+		 * The last delay worked out, and when, so that it's worked out at most every
+		 * hundred milliseconds rather than for every call.
+		 */
+		private volatile long delay = -1;
+
+		private volatile long delayAt;
+
+		long delay() {
+			var now = nanoTime.getAsLong();
+			if (this.delay < 0 || now - this.delayAt >= TimeUnit.MILLISECONDS.toNanos(100)) {
+				var delay = this.latencies.percentile(percentile, MIN_SAMPLES);
+				this.delay = delay < 0 ? defaultDelay : delay;
+				this.delayAt = now;
+			}
+			return this.delay;
+		}
+
+	}
+
+}
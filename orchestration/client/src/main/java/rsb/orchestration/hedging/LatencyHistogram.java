@@ -0,0 +1,123 @@
+package rsb.orchestration.hedging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Recent latencies, for working out their percentiles as they come in. Each latency is
+ * counted in one of a few hundred buckets, eight per power of two microseconds, so it
+ * takes a couple of kilobytes however many are recorded and a percentile's never more
+ * than an eighth off.
+ * <p>
+ * Only the latencies recorded over the last one or two {@code window}s count: every
+ * {@code window} the buckets are started over, keeping the previous ones until the next
+ * time around.
+ */
+final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int MAX_EXPONENT = 40;
+
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final long window;
+
+	private final LongSupplier nanoTime;
+
+	private volatile Window current;
+
+	private volatile Window previous;
+
+	LatencyHistogram(long window, LongSupplier nanoTime) {
+		this.window = window;
+		this.nanoTime = nanoTime;
+		this.current = new Window(nanoTime.getAsLong());
+		this.previous = new Window(this.current.start);
+	}
+
+	void record(long latencyNanos) {
+		var now = this.nanoTime.getAsLong();
+		var current = this.current;
+		if (now - current.start >= this.window) {
+			current = rotate(current, now);
+		}
+		current.counts.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+	}
+
+	/**
+	 * The latency, in nanoseconds, that {@code percentile} of the recent ones didn't go
+	 * over, or {@code -1} if fewer than {@code minSamples} were recorded.
+	 */
+	long percentile(double percentile, int minSamples) {
+		var current = this.current;
+		var previous = this.previous;
+		var counts = new long[BUCKETS];
+		var total = 0L;
+		for (var i = 0; i < BUCKETS; i++) {
+			counts[i] = current.counts.get(i) + previous.counts.get(i);
+			total += counts[i];
+		}
+		if (total == 0 || total < minSamples) {
+			return -1;
+		}
+		var rank = (long) Math.ceil(percentile * total);
+		var seen = 0L;
+		for (var i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return TimeUnit.MICROSECONDS.toNanos(upperBound(i));
+			}
+		}
+		return TimeUnit.MICROSECONDS.toNanos(upperBound(BUCKETS - 1));
+	}
+
+	private synchronized Window rotate(Window seen, long now) {
+		if (this.current != seen) {
+			return this.current;
+		}
+		var next = new Window(now);
+		this.previous = now - seen.start >= 2 * this.window ? new Window(now) : seen;
+		this.current = next;
+		return next;
+	}
+
+	static int bucket(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) Math.max(0, micros);
+		}
+		var exponent = Math.min(MAX_EXPONENT, 63 - Long.numberOfLeadingZeros(micros));
+		if (exponent == MAX_EXPONENT && micros >= (2L << MAX_EXPONENT)) {
+			return BUCKETS - 1;
+		}
+		var subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		var exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		var subBucket = bucket % SUB_BUCKETS;
+		var width = 1L << (exponent - SUB_BUCKET_BITS);
+		return ((long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width
+				- 1;
+	}
+
+	private static final class Window {
+
+		private final long start;
+
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+		Window(long start) {
+			this.start = start;
+		}
+
+	}
+
+}
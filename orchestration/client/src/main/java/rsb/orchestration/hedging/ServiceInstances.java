@@ -0,0 +1,190 @@
+package rsb.orchestration.hedging;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.client.discovery.event.HeartbeatMonitor;
+import org.springframework.context.ApplicationListener;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The instances of each service, kept in memory so that they don't have to be looked up
+ * for every call. A service's instances are looked up the first time they're asked for,
+ * once however many calls are waiting on them, and then again in the background every
+ * {@code refreshInterval}, and whenever the discovery client's heartbeat says something
+ * changed. A failed lookup keeps the instances there were.
+ * <p>
+ * The instances are handed out as an immutable {@link Snapshot}, replaced as a whole
+ * when they change.
+ */
+@Log4j2
+class ServiceInstances
+		implements ApplicationListener<HeartbeatEvent>, InitializingBean, DisposableBean {
+
+	private final ReactiveDiscoveryClient reactiveDiscoveryClient;
+
+	private final Duration refreshInterval;
+
+	private final HeartbeatMonitor heartbeatMonitor = new HeartbeatMonitor();
+
+	private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+	private final Map<String, Mono<Snapshot>> loading = new ConcurrentHashMap<>();
+
+	private Disposable refresh;
+
+	ServiceInstances(ReactiveDiscoveryClient reactiveDiscoveryClient,
+			Duration refreshInterval) {
+		this.reactiveDiscoveryClient = reactiveDiscoveryClient;
+		this.refreshInterval = refreshInterval;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		this.refresh = Flux.interval(this.refreshInterval)//
+				.onBackpressureDrop()//
+				.concatMap(tick -> refresh())//
+				.subscribe();
+	}
+
+	@Override
+	public void destroy() {
+		if (this.refresh != null) {
+			this.refresh.dispose();
+		}
+	}
+
+	@Override
+	public void onApplicationEvent(HeartbeatEvent event) {
+		if (this.heartbeatMonitor.update(event.getValue())) {
+			refresh().subscribe();
+		}
+	}
+
+	Mono<Snapshot> get(String serviceId) {
+		var snapshot = this.snapshots.get(serviceId);
+		if (snapshot != null) {
+			return Mono.just(snapshot);
+		}
+		return this.loading.computeIfAbsent(serviceId, this::load);
+	}
+
+	/**
+	 * Looks up the instances of {@code serviceId} for however many calls are waiting on
+	 * them, then stops waiting on this lookup, and only this one, so that it can't take
+	 * a later lookup with it.
+	 */
+	private Mono<Snapshot> load(String serviceId) {
+		var loading = new AtomicReference<Mono<Snapshot>>();
+		var load = fetch(serviceId)//
+				.doOnNext(fetched -> this.snapshots.put(serviceId, fetched))//
+				.doFinally(signal -> this.loading.remove(serviceId, loading.get()))//
+				.cache();
+		loading.set(load);
+		return load;
+	}
+
+	/**
+	 * Looks up the instances of every service again, one service at a time.
+	 */
+	Mono<Void> refresh() {
+		return Flux.fromIterable(this.snapshots.entrySet())//
+				.concatMap(cached -> fetch(cached.getKey())//
+						.filter(fetched -> !fetched.equals(cached.getValue()))//
+						.doOnNext(fetched -> {
+							log.info("the instances of " + cached.getKey()
+									+ " are now " + fetched);
+							this.snapshots.replace(cached.getKey(), cached.getValue(),
+									fetched);
+						})//
+						.onErrorResume(e -> {
+							log.warn("couldn't look up the instances of "
+									+ cached.getKey(), e);
+							return Mono.empty();
+						}))//
+				.then();
+	}
+
+	private Mono<Snapshot> fetch(String serviceId) {
+		return this.reactiveDiscoveryClient//
+				.getInstances(serviceId)//
+				.collectList()//
+				.map(Snapshot::new);
+	}
+
+	/**
+	 * The instances of a service at some point, in a fixed order, along with the
+	 * {@code //host:port} every request to each of them starts with after the scheme.
+	 */
+	static final class Snapshot {
+
+		private final String[] authorities;
+
+		Snapshot(List<ServiceInstance> instances) {
+			var sorted = instances.toArray(new ServiceInstance[0]);
+			Arrays.sort(sorted, Comparator.comparing(ServiceInstance::getHost)
+					.thenComparingInt(ServiceInstance::getPort));
+			this.authorities = new String[sorted.length];
+			for (var i = 0; i < sorted.length; i++) {
+				this.authorities[i] = "//" + sorted[i].getHost() + ':' + sorted[i].getPort();
+			}
+		}
+
+		int size() {
+			return this.authorities.length;
+		}
+
+		/**
+		 * {@code requestUrl}, with its query string and fragment, sent to the
+		 * {@code index}th instance instead.
+		 */
+		URI uri(int index, URI requestUrl) {
+			var path = requestUrl.getRawPath();
+			var query = requestUrl.getRawQuery();
+			var fragment = requestUrl.getRawFragment();
+			var uri = new StringBuilder(64)//
+					.append(requestUrl.getScheme()).append(':')//
+					.append(this.authorities[index])//
+					.append(path == null ? "" : path);
+			if (query != null) {
+				uri.append('?').append(query);
+			}
+			if (fragment != null) {
+				uri.append('#').append(fragment);
+			}
+			return URI.create(uri.toString());
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Snapshot
+					&& Arrays.equals(this.authorities, ((Snapshot) o).authorities);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(this.authorities);
+		}
+
+		@Override
+		public String toString() {
+			return Arrays.toString(this.authorities);
+		}
+
+	}
+
+}
@@ -0,0 +1,50 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Opens {@code connections} connections to a new instance before it's sent any real
+ * requests, by sending it that many {@code HEAD} requests for {@code path} at once. The
+ * connections only help if they stay open in the pool the real requests are sent
+ * through, so the {@code WebClient} has to share it: built by Spring Boot's
+ * {@code WebClient.Builder} for the load-balanced {@code WebClient}, or on the gateway's
+ * own {@code HttpClient} for {@code lb://} routes, which has a pool of its own.
+ */
+class ConnectionWarmer implements Function<ServiceInstance, Mono<Void>> {
+
+	private final WebClient webClient;
+
+	private final int connections;
+
+	private final String path;
+
+	private final Duration timeout;
+
+	ConnectionWarmer(WebClient webClient, int connections, String path,
+			Duration timeout) {
+		this.webClient = webClient;
+		this.connections = connections;
+		this.path = path;
+		this.timeout = timeout;
+	}
+
+	@Override
+	public Mono<Void> apply(ServiceInstance instance) {
+		var uri = UriComponentsBuilder.fromUri(instance.getUri()).path(this.path).build()
+				.toUri();
+		return Flux.range(0, this.connections)//
+				.flatMap(i -> this.webClient.head().uri(uri)
+						.exchangeToMono(ClientResponse::releaseBody), this.connections)//
+				.then()//
+				.timeout(this.timeout);
+	}
+
+}
@@ -0,0 +1,31 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * Sends the requests for the same customer, or whatever else
+ * {@code rsb.lb.consistent-hash.key} says, to the same instance, for the services in
+ * {@code rsb.lb.consistent-hash.services} or all of them. Turned on with
+ * {@code rsb.lb.consistent-hash.enabled=true}; a service that's consistently hashed
+ * isn't also least-loaded.
+ */
+@Configuration
+@ConditionalOnProperty(value = "rsb.lb.consistent-hash.enabled", havingValue = "true")
+@LoadBalancerClients(defaultConfiguration = ConsistentHashLoadBalancerConfiguration.class)
+class ConsistentHashAutoConfiguration {
+
+	@Bean
+	HashKeyResolver hashKeyResolver(
+			@Value("${rsb.lb.consistent-hash.key:customerId}") String key,
+			@Value("${rsb.lb.consistent-hash.header:X-Customer-Id}") String header,
+			@Value("${rsb.lb.consistent-hash.path-patterns:/profiles/{customerId}}") List<String> pathPatterns) {
+		return new HashKeyResolver(key, header, pathPatterns);
+	}
+
+}
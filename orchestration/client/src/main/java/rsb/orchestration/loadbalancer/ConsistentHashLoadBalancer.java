@@ -0,0 +1,96 @@
+package rsb.orchestration.loadbalancer;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sends every request with the same key, say for the same customer, to the same
+ * instance, so that whatever that instance keeps in memory about the customer stays
+ * warm. The instances are kept on a {@link HashRing}, built again only when they
+ * change, not whenever they're handed over in a new list. Requests without a key go to
+ * an instance picked at random.
+ * <p>
+ * The last few rings are kept by their instances' fingerprint, since the instances
+ * offered can go back and forth from one request to the next, say while an ejected
+ * instance is being probed, and each of those sets would otherwise mean sorting all of
+ * the virtual nodes again.
+ */
+@Log4j2
+class ConsistentHashLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+	private static final int MAX_RINGS = 8;
+
+	private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplier;
+
+	private final String serviceId;
+
+	private final HashKeyResolver hashKeyResolver;
+
+	private final int virtualNodes;
+
+	private final Map<Long, HashRing> rings = new ConcurrentHashMap<>();
+
+	private volatile HashRing ring;
+
+	ConsistentHashLoadBalancer(
+			ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplier,
+			String serviceId, HashKeyResolver hashKeyResolver, int virtualNodes) {
+		this.serviceInstanceListSupplier = serviceInstanceListSupplier;
+		this.serviceId = serviceId;
+		this.hashKeyResolver = hashKeyResolver;
+		this.virtualNodes = virtualNodes;
+	}
+
+	@Override
+	public Mono<Response<ServiceInstance>> choose(Request request) {
+		var supplier = this.serviceInstanceListSupplier
+				.getIfAvailable(NoopServiceInstanceListSupplier::new);
+		return supplier.get(request).next()
+				.map(instances -> choose(instances, this.hashKeyResolver.resolve(request)));
+	}
+
+	private Response<ServiceInstance> choose(List<ServiceInstance> instances, String key) {
+		if (instances.isEmpty()) {
+			log.warn("no instances available for " + this.serviceId);
+			return new EmptyResponse();
+		}
+		if (key == null) {
+			return new DefaultResponse(
+					instances.get(ThreadLocalRandom.current().nextInt(instances.size())));
+		}
+		return new DefaultResponse(ring(instances).get(key));
+	}
+
+	HashRing ring(List<ServiceInstance> instances) {
+		var ring = this.ring;
+		if (ring != null && ring.isFor(instances)) {
+			return ring;
+		}
+		var fingerprint = HashRing.fingerprint(instances);
+		ring = this.rings.get(fingerprint);
+		if (ring == null || ring.size() != instances.size()) {
+			ring = new HashRing(instances, this.virtualNodes);
+			if (this.rings.size() >= MAX_RINGS) {
+				this.rings.clear();
+			}
+			this.rings.put(fingerprint, ring);
+		}
+		this.ring = ring;
+		return ring;
+	}
+
+}
@@ -0,0 +1,70 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.core.env.Environment;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+import java.util.Arrays;
+
+/**
+ * The configuration of each service's load balancer, in its own child context. It's not
+ * a {@code @Configuration} so that it's never picked up by the application context
+ * itself.
+ */
+class ConsistentHashLoadBalancerConfiguration {
+
+	@Bean
+	@Conditional(ConsistentlyHashed.class)
+	ReactorLoadBalancer<ServiceInstance> consistentHashLoadBalancer(
+			Environment environment, LoadBalancerClientFactory loadBalancerClientFactory,
+			HashKeyResolver hashKeyResolver) {
+		var serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+		var virtualNodes = environment
+				.getProperty("rsb.lb.consistent-hash.virtual-nodes", Integer.class, 160);
+		return new ConsistentHashLoadBalancer(loadBalancerClientFactory
+				.getLazyProvider(serviceId, ServiceInstanceListSupplier.class), serviceId,
+				hashKeyResolver, virtualNodes);
+	}
+
+	/**
+	 * Whether the service's load balancer hashes consistently: if it's turned on, for
+	 * the services in {@code rsb.lb.consistent-hash.services}, or all of them if there
+	 * aren't any.
+	 */
+	static boolean isConsistentlyHashed(Environment environment) {
+		if (!environment.getProperty("rsb.lb.consistent-hash.enabled", Boolean.class,
+				false)) {
+			return false;
+		}
+		var services = environment.getProperty("rsb.lb.consistent-hash.services",
+				String[].class, new String[0]);
+		return services.length == 0 || Arrays.asList(services)
+				.contains(environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME));
+	}
+
+	static class ConsistentlyHashed implements Condition {
+
+		@Override
+		public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+			return isConsistentlyHashed(context.getEnvironment());
+		}
+
+	}
+
+	static class NotConsistentlyHashed implements Condition {
+
+		@Override
+		public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+			return !isConsistentlyHashed(context.getEnvironment());
+		}
+
+	}
+
+}
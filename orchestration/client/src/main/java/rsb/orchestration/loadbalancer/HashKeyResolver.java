@@ -0,0 +1,77 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Works out what a request's consistently hashed on, say the customer it's for. That's
+ * the first of:
+ * <ul>
+ * <li>the {@value #HASH_KEY_ATTRIBUTE} attribute of the request, set with
+ * {@code WebClient}'s {@code attribute(...)}</li>
+ * <li>the {@code header} header</li>
+ * <li>the {@code key} variable of the first of the {@code pathPatterns} the request's
+ * path matches, like {@code customerId} in {@code /profiles/{customerId}}</li>
+ * <li>the {@code key} query parameter</li>
+ * </ul>
+ */
+class HashKeyResolver {
+
+	static final String HASH_KEY_ATTRIBUTE = HashKeyResolver.class.getName() + ".KEY";
+
+	private final String key;
+
+	private final String header;
+
+	private final List<PathPattern> pathPatterns;
+
+	HashKeyResolver(String key, String header, List<String> pathPatterns) {
+		this.key = key;
+		this.header = header;
+		this.pathPatterns = pathPatterns.stream().map(PathPatternParser.defaultInstance::parse)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * The request's key, or {@code null} if it hasn't got one.
+	 */
+	String resolve(Request<?> request) {
+		if (!(request.getContext() instanceof RequestDataContext)) {
+			return null;
+		}
+		var data = ((RequestDataContext) request.getContext()).getClientRequest();
+		if (data == null) {
+			return null;
+		}
+		var attribute = data.getAttributes() == null ? null
+				: data.getAttributes().get(HASH_KEY_ATTRIBUTE);
+		if (attribute != null) {
+			return attribute.toString();
+		}
+		var header = data.getHeaders() == null ? null
+				: data.getHeaders().getFirst(this.header);
+		if (header != null) {
+			return header;
+		}
+		if (data.getUrl() == null) {
+			return null;
+		}
+		var path = PathContainer.parsePath(data.getUrl().getRawPath());
+		for (var pattern : this.pathPatterns) {
+			var match = pattern.matchAndExtract(path);
+			if (match != null && match.getUriVariables().containsKey(this.key)) {
+				return match.getUriVariables().get(this.key);
+			}
+		}
+		return UriComponentsBuilder.fromUri(data.getUrl()).build().getQueryParams()
+				.getFirst(this.key);
+	}
+
+}
@@ -0,0 +1,120 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A consistent-hash ring of instances, each of them at {@code virtualNodes} points
+ * hashed from its host and port. A key goes to the instance at the first point at or
+ * after its own hash, found with a binary search. Since an instance's points don't
+ * depend on any of the others, one joining or leaving only moves the keys between its
+ * own points and the ones before them, about one in however many instances there are,
+ * and the virtual nodes spread those keys across all the others.
+ */
+final class HashRing {
+
+	private final List<ServiceInstance> instances;
+
+	private final long fingerprint;
+
+	private final long[] points;
+
+	private final ServiceInstance[] owners;
+
+	HashRing(List<ServiceInstance> instances, int virtualNodes) {
+		this.instances = instances;
+		this.fingerprint = fingerprint(instances);
+		var nodes = new Node[instances.size() * virtualNodes];
+		var n = 0;
+		for (var instance : instances) {
+			var key = InstanceCallRecorder.key(instance);
+			for (var i = 0; i < virtualNodes; i++) {
+				nodes[n++] = new Node(hash(key + '#' + i), instance);
+			}
+		}
+		Arrays.sort(nodes, (a, b) -> Long.compareUnsigned(a.point, b.point));
+		this.points = new long[nodes.length];
+		this.owners = new ServiceInstance[nodes.length];
+		for (var i = 0; i < nodes.length; i++) {
+			this.points[i] = nodes[i].point;
+			this.owners[i] = nodes[i].owner;
+		}
+	}
+
+	/**
+	 * Whether this ring was built from the very same list.
+	 */
+	boolean isFor(List<ServiceInstance> instances) {
+		return instances == this.instances;
+	}
+
+	int size() {
+		return this.instances.size();
+	}
+
+	ServiceInstance get(String key) {
+		if (this.points.length == 0) {
+			return null;
+		}
+		var hash = hash(key);
+		var low = 0;
+		var high = this.points.length;
+		while (low < high) {
+			var mid = (low + high) >>> 1;
+			if (Long.compareUnsigned(this.points[mid], hash) < 0) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return this.owners[low == this.points.length ? 0 : low];
+	}
+
+	/**
+	 * 64-bit FNV-1a, finished with MurmurHash3's mixer so that similar keys, like
+	 * {@code host:8080#1} and {@code host:8080#2}, end up far apart.
+	 */
+	static long hash(String key) {
+		var hash = 0xcbf29ce484222325L;
+		for (var i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * The sum of the hashes of the instances' host and port, which doesn't depend on
+	 * their order, so that which instances a list holds is told apart without comparing
+	 * them one by one.
+	 */
+	static long fingerprint(List<ServiceInstance> instances) {
+		var fingerprint = 0L;
+		for (var instance : instances) {
+			fingerprint += hash(InstanceCallRecorder.key(instance));
+		}
+		return fingerprint;
+	}
+
+	private static final class Node {
+
+		private final long point;
+
+		private final ServiceInstance owner;
+
+		Node(long point, ServiceInstance owner) {
+			this.point = point;
+			this.owner = owner;
+		}
+
+	}
+
+}
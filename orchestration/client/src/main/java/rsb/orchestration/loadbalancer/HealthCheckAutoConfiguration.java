@@ -0,0 +1,36 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+
+/**
+ * Probes every instance every {@code rsb.lb.health-check.interval}, with a {@code GET}
+ * for {@code rsb.lb.health-check.path} or, if {@code rsb.lb.health-check.type=tcp}, just
+ * a connection, and leaves the unhealthy ones out of the load balancer's choice. Turned
+ * on with {@code rsb.lb.health-check.enabled=true}.
+ */
+@Configuration
+@ConditionalOnProperty(value = "rsb.lb.health-check.enabled", havingValue = "true")
+class HealthCheckAutoConfiguration {
+
+	@Bean
+	HealthProber healthProber(WebClient.Builder builder,
+			@Value("${rsb.lb.health-check.type:http}") String type,
+			@Value("${rsb.lb.health-check.path:/actuator/health}") String path,
+			@Value("${rsb.lb.health-check.interval:5s}") Duration interval,
+			@Value("${rsb.lb.health-check.timeout:2s}") Duration timeout,
+			@Value("${rsb.lb.health-check.max-concurrency:64}") int maxConcurrency,
+			@Value("${rsb.lb.health-check.healthy-threshold:2}") int healthyThreshold,
+			@Value("${rsb.lb.health-check.unhealthy-threshold:2}") int unhealthyThreshold) {
+		var probe = "tcp".equalsIgnoreCase(type) ? HealthProbes.tcp(timeout)
+				: HealthProbes.http(builder.build(), path, timeout);
+		return new HealthProber(probe, interval, maxConcurrency, healthyThreshold,
+				unhealthyThreshold);
+	}
+
+}
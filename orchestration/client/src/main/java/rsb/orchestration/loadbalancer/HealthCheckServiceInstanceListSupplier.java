@@ -0,0 +1,36 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Leaves out the instances the {@link HealthProber} has found to be unhealthy.
+ */
+class HealthCheckServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+
+	private final HealthProber prober;
+
+	HealthCheckServiceInstanceListSupplier(ServiceInstanceListSupplier delegate,
+			HealthProber prober) {
+		super(delegate);
+		this.prober = prober;
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get() {
+		return this.delegate.get()
+				.map(instances -> this.prober.filter(getServiceId(), instances));
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get(Request request) {
+		return this.delegate.get(request)
+				.map(instances -> this.prober.filter(getServiceId(), instances));
+	}
+
+}
@@ -0,0 +1,223 @@
+package rsb.orchestration.loadbalancer;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.client.ServiceInstance;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Probes every instance the load balancer's been offered, every {@code interval}, and
+ * leaves the ones that aren't answering out of its choice, rather than waiting for their
+ * leases in the registry to run out. It takes {@code unhealthyThreshold} failed probes in
+ * a row to leave an instance out, and {@code healthyThreshold} good ones in a row to let
+ * it back in, so that one lost probe doesn't send an instance's traffic elsewhere.
+ * <p>
+ * However many instances there are, they're all scheduled on one {@link HashedWheelTimer}
+ * rather than a timer each, spread out over the interval, and no more than
+ * {@code maxConcurrency} probes are in flight at once; the rest wait their turn. An
+ * instance that's left the service isn't probed any more. If every instance of a service
+ * is failing its probes, they're all offered anyway, as with the {@link OutlierDetector}.
+ */
+@Log4j2
+class HealthProber implements DisposableBean {
+
+	private final Function<ServiceInstance, Mono<Boolean>> probe;
+
+	private final long interval;
+
+	private final int healthyThreshold;
+
+	private final int unhealthyThreshold;
+
+	private final Timer timer;
+
+	private final Sinks.Many<Target> due = Sinks.many().unicast().onBackpressureBuffer();
+
+	private final Disposable probing;
+
+	private final Map<String, Service> services = new ConcurrentHashMap<>();
+
+	/**
+	 * Goes up every time an instance's health changes, so that each service knows when
+	 * to work out its healthy instances again.
+	 */
+	private final AtomicLong changes = new AtomicLong();
+
+	HealthProber(Function<ServiceInstance, Mono<Boolean>> probe, Duration interval,
+			int maxConcurrency, int healthyThreshold, int unhealthyThreshold) {
+		this(probe, interval, maxConcurrency, healthyThreshold, unhealthyThreshold,
+				new HashedWheelTimer(runnable -> {
+					var thread = new Thread(runnable, "health-prober");
+					thread.setDaemon(true);
+					return thread;
+				}, 100, TimeUnit.MILLISECONDS));
+	}
+
+	HealthProber(Function<ServiceInstance, Mono<Boolean>> probe, Duration interval,
+			int maxConcurrency, int healthyThreshold, int unhealthyThreshold,
+			Timer timer) {
+		this.probe = probe;
+		this.interval = interval.toNanos();
+		this.healthyThreshold = healthyThreshold;
+		this.unhealthyThreshold = unhealthyThreshold;
+		this.timer = timer;
+		this.probing = this.due.asFlux()//
+				.flatMap(this::probe, maxConcurrency)//
+				.subscribe();
+	}
+
+	/**
+	 * The instances of {@code serviceId} the load balancer may choose from, starting to
+	 * probe the ones it's not probing yet and stopping for the ones that have gone.
+	 */
+	List<ServiceInstance> filter(String serviceId, List<ServiceInstance> instances) {
+		var service = this.services.get(serviceId);
+		if (service == null) {
+			service = this.services.computeIfAbsent(serviceId, id -> new Service());
+		}
+		return service.healthy(instances);
+	}
+
+	@Override
+	public void destroy() {
+		this.probing.dispose();
+		this.timer.stop();
+	}
+
+	private void schedule(Target target, long delay) {
+		if (!target.gone) {
+			target.timeout = this.timer.newTimeout(timeout -> this.due.tryEmitNext(target),
+					delay, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private Mono<Void> probe(Target target) {
+		if (target.gone) {
+			return Mono.empty();
+		}
+		return Mono.defer(() -> this.probe.apply(target.instance))//
+				.onErrorReturn(false)//
+				.defaultIfEmpty(false)//
+				.doOnNext(target::record)//
+				.doFinally(signal -> schedule(target, this.interval))//
+				.then();
+	}
+
+	private final class Service {
+
+		private volatile List<ServiceInstance> last;
+
+		private volatile Map<String, Target> targets = Map.of();
+
+		private volatile List<ServiceInstance> healthy;
+
+		private volatile long healthyAt = -1;
+
+		List<ServiceInstance> healthy(List<ServiceInstance> instances) {
+			if (this.last != instances) {
+				track(instances);
+			}
+			var changes = HealthProber.this.changes.get();
+			var healthy = this.healthy;
+			if (healthy == null || this.healthyAt != changes) {
+				healthy = new ArrayList<>(instances.size());
+				var targets = this.targets;
+				for (var instance : instances) {
+					var target = targets.get(InstanceCallRecorder.key(instance));
+					if (target == null || target.healthy) {
+						healthy.add(instance);
+					}
+				}
+				if (healthy.isEmpty() || healthy.size() == instances.size()) {
+					healthy = instances;
+				}
+				this.healthy = healthy;
+				this.healthyAt = changes;
+			}
+			return healthy;
+		}
+
+		private synchronized void track(List<ServiceInstance> instances) {
+			if (this.last == instances) {
+				return;
+			}
+			var targets = new ConcurrentHashMap<String, Target>();
+			for (var instance : instances) {
+				var key = InstanceCallRecorder.key(instance);
+				var target = this.targets.get(key);
+				if (target == null) {
+					target = new Target(key, instance);
+					schedule(target, ThreadLocalRandom.current().nextLong(interval));
+				}
+				targets.put(key, target);
+			}
+			for (var target : this.targets.values()) {
+				if (!targets.containsKey(target.key)) {
+					target.gone = true;
+					var timeout = target.timeout;
+					if (timeout != null) {
+						timeout.cancel();
+					}
+				}
+			}
+			this.targets = targets;
+			this.healthy = null;
+			this.last = instances;
+		}
+
+	}
+
+	private final class Target {
+
+		private final String key;
+
+		private final ServiceInstance instance;
+
+		private volatile boolean healthy = true;
+
+		private volatile boolean gone;
+
+		private volatile Timeout timeout;
+
+		/**
+		 * How many probes in a row have disagreed with {@link #healthy}. There's only
+		 * ever one probe of an instance at a time.
+		 */
+		private int streak;
+
+		Target(String key, ServiceInstance instance) {
+			this.key = key;
+			this.instance = instance;
+		}
+
+		void record(boolean healthy) {
+			if (healthy == this.healthy) {
+				this.streak = 0;
+				return;
+			}
+			if (++this.streak >= (healthy ? healthyThreshold : unhealthyThreshold)) {
+				log.info(this.key + (healthy ? " is healthy again" : " is unhealthy"));
+				this.streak = 0;
+				this.healthy = healthy;
+				changes.incrementAndGet();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,53 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.netty.tcp.TcpClient;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * The ways the {@link HealthProber} can check on an instance. Either way, an instance
+ * that doesn't answer within {@code timeout} is unhealthy.
+ */
+abstract class HealthProbes {
+
+	private HealthProbes() {
+	}
+
+	/**
+	 * Healthy if a {@code GET} for {@code path} gets a 2xx.
+	 */
+	static Function<ServiceInstance, Mono<Boolean>> http(WebClient webClient,
+			String path, Duration timeout) {
+		return instance -> {
+			var uri = UriComponentsBuilder.fromUri(instance.getUri()).path(path).build()
+					.toUri();
+			return webClient.get().uri(uri)//
+					.exchangeToMono(response -> response.releaseBody()
+							.thenReturn(response.statusCode().is2xxSuccessful()))//
+					.timeout(timeout);
+		};
+	}
+
+	/**
+	 * Healthy if it takes a TCP connection, which is closed again straight away. The
+	 * connection's a new one every time rather than from a pool, where a connection
+	 * that's already open would say nothing about whether it takes new ones.
+	 */
+	static Function<ServiceInstance, Mono<Boolean>> tcp(Duration timeout) {
+		return instance -> TcpClient.newConnection()//
+				.host(instance.getHost())//
+				.port(instance.getPort())//
+				.connect()//
+				.map(connection -> {
+					connection.dispose();
+					return true;
+				})//
+				.timeout(timeout);
+	}
+
+}
@@ -0,0 +1,39 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.function.Predicate;
+
+/**
+ * Keeps track of calls made to particular instances, once the load balancer's chosen
+ * one.
+ */
+interface InstanceCallRecorder {
+
+	/**
+	 * Records how {@code call}, made to the instance at {@code uri}, turns out.
+	 * @param failed whether the call's result means the instance failed it
+	 */
+	<T> Mono<T> record(URI uri, Mono<T> call, Predicate<? super T> failed);
+
+	/**
+	 * The key an instance's kept under, its host and port.
+	 */
+	static String key(ServiceInstance instance) {
+		return instance.getHost() + ':' + instance.getPort();
+	}
+
+	/**
+	 * The key of the instance a request was sent to.
+	 */
+	static String key(URI uri) {
+		var port = uri.getPort();
+		if (port < 0) {
+			port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+		}
+		return uri.getHost() + ':' + port;
+	}
+
+}
@@ -0,0 +1,13 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+/**
+ * An {@link ExchangeFilterFunction} that goes on the load-balanced {@code WebClient}
+ * after the
+ * {@link org.springframework.cloud.client.loadbalancer.reactive.ReactorLoadBalancerExchangeFilterFunction},
+ * so it sees requests once they've been sent to a particular instance.
+ */
+public interface InstanceExchangeFilterFunction extends ExchangeFilterFunction {
+
+}
@@ -0,0 +1,211 @@
+package rsb.orchestration.loadbalancer;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * How loaded each instance is: the requests it has outstanding, and a peak-sensitive
+ * moving average of how long it's taken to answer, as in Finagle's {@code PeakEwma}. A
+ * response slower than the average replaces it outright, so a slowdown is noticed right
+ * away, while faster ones bring it down gradually, the older ones counting for less and
+ * less over {@code decayTime}. Nothing's locked: the requests outstanding are a counter
+ * and the average is swapped with a compare-and-set.
+ * <p>
+ * Each instance's load is published as the {@value #OUTSTANDING_METRIC} and
+ * {@value #LATENCY_METRIC} gauges, tagged with the service id and the instance. Once
+ * an instance is no longer registered, its load and its gauges are dropped.
+ */
+class InstanceLoads implements InstanceCallRecorder {
+
+	static final String OUTSTANDING_METRIC = "rsb.lb.instance.outstanding";
+
+	static final String LATENCY_METRIC = "rsb.lb.instance.latency";
+
+	private final double decayTime;
+
+	private final ObjectProvider<MeterRegistry> meterRegistry;
+
+	private final LongSupplier nanoTime;
+
+	private final Map<String, Load> loads = new ConcurrentHashMap<>();
+
+	InstanceLoads(long decayTime, ObjectProvider<MeterRegistry> meterRegistry) {
+		this(decayTime, meterRegistry, System::nanoTime);
+	}
+
+	InstanceLoads(long decayTime, ObjectProvider<MeterRegistry> meterRegistry,
+			LongSupplier nanoTime) {
+		this.decayTime = decayTime;
+		this.meterRegistry = meterRegistry;
+		this.nanoTime = nanoTime;
+	}
+
+	/**
+	 * The load on an instance of {@code serviceId}, kept from the first time the load
+	 * balancer considers it until it's no longer registered.
+	 */
+	Load get(String serviceId, ServiceInstance instance) {
+		var key = InstanceCallRecorder.key(instance);
+		var load = this.loads.get(key);
+		return load != null ? load
+				: this.loads.computeIfAbsent(key, k -> register(serviceId, k));
+	}
+
+	/**
+	 * Drops the loads of the instances of {@code serviceId} that aren't among
+	 * {@code instances} any more, along with their gauges.
+	 */
+	void retain(String serviceId, List<ServiceInstance> instances) {
+		var keys = new HashSet<String>();
+		for (var instance : instances) {
+			keys.add(InstanceCallRecorder.key(instance));
+		}
+		for (var load : this.loads.values()) {
+			if (load.serviceId.equals(serviceId) && !keys.contains(load.key)
+					&& this.loads.remove(load.key, load)) {
+				var registry = this.meterRegistry.getIfAvailable();
+				if (registry != null) {
+					load.meters.forEach(registry::remove);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts {@code call} as outstanding until it's over, and adds how long it took to
+	 * the average unless it failed. Calls to instances the load balancer didn't choose
+	 * aren't counted.
+	 */
+	@Override
+	public <T> Mono<T> record(URI uri, Mono<T> call, Predicate<? super T> failed) {
+		return Mono.defer(() -> {
+			var load = this.loads.get(InstanceCallRecorder.key(uri));
+			if (load == null) {
+				return call;
+			}
+			load.outstanding.incrementAndGet();
+			var start = this.nanoTime.getAsLong();
+			return call //
+					.doOnNext(result -> {
+						if (!failed.test(result)) {
+							load.observe(this.nanoTime.getAsLong() - start);
+						}
+					}) //
+					.doFinally(signal -> load.outstanding.decrementAndGet());
+		});
+	}
+
+	private Load register(String serviceId, String key) {
+		var load = new Load(serviceId, key);
+		var registry = this.meterRegistry.getIfAvailable();
+		if (registry != null) {
+			load.meters.add(Gauge.builder(OUTSTANDING_METRIC, load, Load::getOutstanding)
+					.tag("serviceId", serviceId).tag("instance", key).register(registry));
+			load.meters.add(Gauge.builder(LATENCY_METRIC, load, Load::getLatency)
+					.tag("serviceId", serviceId).tag("instance", key)
+					.baseUnit("milliseconds").register(registry));
+		}
+		return load;
+	}
+
+	class Load {
+
+		private final String serviceId;
+
+		private final String key;
+
+		private final List<Meter> meters = new ArrayList<>(2);
+
+		private final AtomicInteger outstanding = new AtomicInteger();
+
+		private final AtomicReference<Average> average = new AtomicReference<>(
+				new Average(0, nanoTime.getAsLong()));
+
+		Load(String serviceId, String key) {
+			this.serviceId = serviceId;
+			this.key = key;
+		}
+
+		/**
+		 * What sending this instance one more request is expected to cost: how long it
+		 * takes to answer, times the requests that'll be ahead of it. An instance that
+		 * hasn't answered yet costs nothing when it's idle, so that it's tried right
+		 * away, and more than any other while it's waiting on its first answers.
+		 */
+		double getCost() {
+			var outstanding = this.outstanding.get();
+			var latency = latency(nanoTime.getAsLong());
+			if (latency == 0 && outstanding > 0) {
+				return Double.MAX_VALUE / 2 + outstanding;
+			}
+			return latency * (outstanding + 1);
+		}
+
+		int getOutstanding() {
+			return this.outstanding.get();
+		}
+
+		double getLatency() {
+			return latency(nanoTime.getAsLong()) / TimeUnit.MILLISECONDS.toNanos(1);
+		}
+
+		void observe(long rtt) {
+			var now = nanoTime.getAsLong();
+			while (true) {
+				var average = this.average.get();
+				var value = rtt > average.value ? rtt
+						: average.decayed(now) + rtt * (1 - average.weight(now));
+				if (this.average.compareAndSet(average, new Average(value, now))) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * The average, decayed towards {@code 0} since the last response, so that an
+		 * instance that was slow a while ago gets another chance.
+		 */
+		private double latency(long now) {
+			return this.average.get().decayed(now);
+		}
+
+	}
+
+	private class Average {
+
+		private final double value;
+
+		private final long time;
+
+		Average(double value, long time) {
+			this.value = value;
+			this.time = time;
+		}
+
+		double weight(long now) {
+			return Math.exp(-Math.max(0, now - this.time) / decayTime);
+		}
+
+		double decayed(long now) {
+			return this.value * weight(now);
+		}
+
+	}
+
+}
@@ -0,0 +1,51 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Drops the {@link InstanceLoads} of the instances that are no longer registered. It
+ * goes straight on top of the discovery client, so that an instance that's only left out
+ * for a while, say because it's been ejected or isn't healthy, keeps its load and its
+ * gauges.
+ */
+class InstanceLoadsServiceInstanceListSupplier
+		extends DelegatingServiceInstanceListSupplier {
+
+	private final InstanceLoads loads;
+
+	/**
+	 * The instances last registered, so that the loads are only looked through when
+	 * they change.
+	 */
+	private volatile List<ServiceInstance> instances;
+
+	InstanceLoadsServiceInstanceListSupplier(ServiceInstanceListSupplier delegate,
+			InstanceLoads loads) {
+		super(delegate);
+		this.loads = loads;
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get() {
+		return this.delegate.get().doOnNext(this::retain);
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get(Request request) {
+		return this.delegate.get(request).doOnNext(this::retain);
+	}
+
+	private void retain(List<ServiceInstance> instances) {
+		if (this.instances != instances) {
+			this.instances = instances;
+			this.loads.retain(getServiceId(), instances);
+		}
+	}
+
+}
@@ -0,0 +1,53 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.Set;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+
+/**
+ * Records how the requests on {@code lb://} routes turn out for the instance they were
+ * sent to, right after the {@link ReactiveLoadBalancerClientFilter} has chosen it.
+ */
+class InstanceRecordingGlobalFilter implements GlobalFilter, Ordered {
+
+	private final InstanceCallRecorder recorder;
+
+	InstanceRecordingGlobalFilter(InstanceCallRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	@Override
+	public int getOrder() {
+		return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER + 1;
+	}
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+		Set<URI> originalUrls = exchange
+				.getAttributeOrDefault(GATEWAY_ORIGINAL_REQUEST_URL_ATTR, Set.of());
+		if (originalUrls.stream().noneMatch(url -> "lb".equals(url.getScheme()))) {
+			return chain.filter(exchange);
+		}
+		URI url = exchange.getRequiredAttribute(GATEWAY_REQUEST_URL_ATTR);
+		return this.recorder
+				.record(url, chain.filter(exchange).thenReturn(exchange),
+						InstanceRecordingGlobalFilter::failed)//
+				.then();
+	}
+
+	private static boolean failed(ServerWebExchange exchange) {
+		HttpStatus status = exchange.getResponse().getStatusCode();
+		return status != null && status.is5xxServerError();
+	}
+
+}
@@ -0,0 +1,51 @@
+package rsb.orchestration.loadbalancer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Sends every service's requests to the less loaded of two instances picked at random,
+ * instead of going round-robin, whether they're made with the load-balanced
+ * {@code WebClient} or on {@code lb://} gateway routes. Turned on with
+ * {@code rsb.lb.least-loaded.enabled=true}.
+ */
+@Configuration
+@ConditionalOnProperty(value = "rsb.lb.least-loaded.enabled", havingValue = "true")
+@LoadBalancerClients(defaultConfiguration = LeastLoadedLoadBalancerConfiguration.class)
+class LeastLoadedAutoConfiguration {
+
+	@Bean
+	InstanceLoads instanceLoads(
+			@Value("${rsb.lb.least-loaded.decay-time:10s}") Duration decayTime,
+			ObjectProvider<MeterRegistry> meterRegistry) {
+		return new InstanceLoads(decayTime.toNanos(), meterRegistry);
+	}
+
+	@Bean
+	InstanceExchangeFilterFunction instanceLoadsExchangeFilterFunction(
+			InstanceLoads loads) {
+		return (request, next) -> loads.record(request.url(), next.exchange(request),
+				response -> response.statusCode().is5xxServerError());
+	}
+
+	@Configuration
+	@ConditionalOnClass(GlobalFilter.class)
+	static class GatewayLeastLoadedConfiguration {
+
+		@Bean
+		InstanceRecordingGlobalFilter instanceLoadsGlobalFilter(InstanceLoads loads) {
+			return new InstanceRecordingGlobalFilter(loads);
+		}
+
+	}
+
+}
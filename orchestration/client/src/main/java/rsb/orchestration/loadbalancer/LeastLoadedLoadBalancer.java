@@ -0,0 +1,83 @@
+package rsb.orchestration.loadbalancer;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks two instances at random and sends the request to whichever is less loaded,
+ * going by {@link InstanceLoads}. Looking at just two is nearly as good as finding the
+ * least loaded of them all, without every client piling onto the same one between
+ * updates, and round-robin's habit of sending a slow instance its full share no matter
+ * how far behind it is.
+ * <p>
+ * Given a {@link SlowStart}, an instance it's easing in that's the less loaded of the
+ * two is only chosen as much of the time as it weighs, and the other one the rest of
+ * the time.
+ */
+@Log4j2
+class LeastLoadedLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+	private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplier;
+
+	private final String serviceId;
+
+	private final InstanceLoads loads;
+
+	private final SlowStart slowStart;
+
+	LeastLoadedLoadBalancer(
+			ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplier,
+			String serviceId, InstanceLoads loads, SlowStart slowStart) {
+		this.serviceInstanceListSupplier = serviceInstanceListSupplier;
+		this.serviceId = serviceId;
+		this.loads = loads;
+		this.slowStart = slowStart;
+	}
+
+	@Override
+	public Mono<Response<ServiceInstance>> choose(Request request) {
+		var supplier = this.serviceInstanceListSupplier
+				.getIfAvailable(NoopServiceInstanceListSupplier::new);
+		return supplier.get(request).next().map(this::choose);
+	}
+
+	private Response<ServiceInstance> choose(List<ServiceInstance> instances) {
+		if (instances.isEmpty()) {
+			log.warn("no instances available for " + this.serviceId);
+			return new EmptyResponse();
+		}
+		if (instances.size() == 1) {
+			return new DefaultResponse(instances.get(0));
+		}
+		var random = ThreadLocalRandom.current();
+		var first = random.nextInt(instances.size());
+		var second = random.nextInt(instances.size() - 1);
+		if (second >= first) {
+			second++;
+		}
+		var a = instances.get(first);
+		var b = instances.get(second);
+		var costA = this.loads.get(this.serviceId, a).getCost();
+		var costB = this.loads.get(this.serviceId, b).getCost();
+		var less = costB < costA ? b : a;
+		var more = less == a ? b : a;
+		if (this.slowStart != null
+				&& random.nextDouble() >= this.slowStart.weight(this.serviceId, less)) {
+			return new DefaultResponse(more);
+		}
+		return new DefaultResponse(less);
+	}
+
+}
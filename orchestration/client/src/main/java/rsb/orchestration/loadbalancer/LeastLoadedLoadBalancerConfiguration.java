@@ -0,0 +1,30 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.core.env.Environment;
+
+/**
+ * The configuration of each service's load balancer, in its own child context. It's not
+ * a {@code @Configuration} so that it's never picked up by the application context
+ * itself.
+ */
+class LeastLoadedLoadBalancerConfiguration {
+
+	@Bean
+	@Conditional(ConsistentHashLoadBalancerConfiguration.NotConsistentlyHashed.class)
+	ReactorLoadBalancer<ServiceInstance> leastLoadedLoadBalancer(Environment environment,
+			LoadBalancerClientFactory loadBalancerClientFactory, InstanceLoads loads,
+			ObjectProvider<SlowStart> slowStart) {
+		var serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+		return new LeastLoadedLoadBalancer(loadBalancerClientFactory
+				.getLazyProvider(serviceId, ServiceInstanceListSupplier.class), serviceId,
+				loads, slowStart.getIfAvailable());
+	}
+
+}
@@ -0,0 +1,56 @@
+package rsb.orchestration.loadbalancer;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Ejects the instances that keep failing from every service's load balancer, whether
+ * it's used by the load-balanced {@code WebClient} or by {@code lb://} gateway routes.
+ * Turned on with {@code rsb.lb.outlier-detection.enabled=true}.
+ */
+@Log4j2
+@Configuration
+@ConditionalOnProperty(value = "rsb.lb.outlier-detection.enabled", havingValue = "true")
+class OutlierDetectionAutoConfiguration {
+
+	@Bean
+	OutlierDetector outlierDetector(
+			@Value("${rsb.lb.outlier-detection.consecutive-failures:5}") int consecutiveFailures,
+			@Value("${rsb.lb.outlier-detection.slow-call-threshold:2s}") Duration slowCallThreshold,
+			@Value("${rsb.lb.outlier-detection.base-ejection-time:30s}") Duration baseEjectionTime,
+			@Value("${rsb.lb.outlier-detection.max-ejection-time:5m}") Duration maxEjectionTime,
+			@Value("${rsb.lb.outlier-detection.probe-ratio:0.1}") double probeRatio) {
+		log.info("ejecting instances after " + consecutiveFailures
+				+ " consecutive failures or calls slower than " + slowCallThreshold
+				+ '.');
+		return new OutlierDetector(consecutiveFailures, slowCallThreshold.toNanos(),
+				baseEjectionTime.toNanos(), maxEjectionTime.toNanos(), probeRatio);
+	}
+
+	@Bean
+	InstanceExchangeFilterFunction outlierDetectionExchangeFilterFunction(
+			OutlierDetector outlierDetector) {
+		return (request, next) -> outlierDetector.record(request.url(),
+				next.exchange(request), response -> response.statusCode().is5xxServerError());
+	}
+
+	@Configuration
+	@ConditionalOnClass(GlobalFilter.class)
+	static class GatewayOutlierDetectionConfiguration {
+
+		@Bean
+		InstanceRecordingGlobalFilter outlierDetectionGlobalFilter(
+				OutlierDetector outlierDetector) {
+			return new InstanceRecordingGlobalFilter(outlierDetector);
+		}
+
+	}
+
+}
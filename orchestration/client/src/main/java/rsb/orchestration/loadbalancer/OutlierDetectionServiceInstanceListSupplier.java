@@ -0,0 +1,39 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Leaves the instances the {@link OutlierDetector} has ejected out of the ones the load
+ * balancer chooses from. The instances are filtered every time they're asked for, so
+ * whatever's cached underneath, an ejection takes effect right away.
+ */
+class OutlierDetectionServiceInstanceListSupplier
+		extends DelegatingServiceInstanceListSupplier {
+
+	private final OutlierDetector outlierDetector;
+
+	OutlierDetectionServiceInstanceListSupplier(ServiceInstanceListSupplier delegate,
+			OutlierDetector outlierDetector) {
+		super(delegate);
+		this.outlierDetector = outlierDetector;
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get() {
+		return this.delegate.get()
+				.map(instances -> this.outlierDetector.filter(getServiceId(), instances));
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get(Request request) {
+		return this.delegate.get(request)
+				.map(instances -> this.outlierDetector.filter(getServiceId(), instances));
+	}
+
+}
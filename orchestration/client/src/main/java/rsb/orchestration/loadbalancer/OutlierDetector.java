@@ -0,0 +1,225 @@
+package rsb.orchestration.loadbalancer;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.cloud.client.ServiceInstance;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Keeps track of how each instance, by host and port, has been doing, and ejects the
+ * ones that fail {@code consecutiveFailures} times in a row from the load balancer's
+ * choice for a while. A call that takes longer than {@code slowCallThreshold} counts as
+ * a failure too: an instance that's stopped answering in time is no more use than one
+ * that's answering with errors.
+ * <p>
+ * An ejected instance is left out for {@code baseEjectionTime}, doubling every time it's
+ * ejected again, up to {@code maxEjectionTime}. After that it's on probation: it's only
+ * offered to the load balancer {@code probeRatio} of the time, until a call to it
+ * succeeds and it's back in full, or fails and it's ejected again. If every instance of
+ * a service has been ejected, they're all offered anyway, since trying an instance that
+ * might have recovered beats failing every call outright.
+ * <p>
+ * Once an instance is no longer listed for any service, what's known about it is
+ * forgotten, so that instances coming and going don't pile up.
+ */
+@Log4j2
+class OutlierDetector implements InstanceCallRecorder {
+
+	private final int consecutiveFailures;
+
+	private final long slowCallThreshold;
+
+	private final long baseEjectionTime;
+
+	private final long maxEjectionTime;
+
+	private final double probeRatio;
+
+	private final LongSupplier nanoTime;
+
+	private final Map<String, Outlier> instances = new ConcurrentHashMap<>();
+
+	private final Map<String, Listing> services = new ConcurrentHashMap<>();
+
+	OutlierDetector(int consecutiveFailures, long slowCallThreshold,
+			long baseEjectionTime, long maxEjectionTime, double probeRatio) {
+		this(consecutiveFailures, slowCallThreshold, baseEjectionTime, maxEjectionTime,
+				probeRatio, System::nanoTime);
+	}
+
+	OutlierDetector(int consecutiveFailures, long slowCallThreshold,
+			long baseEjectionTime, long maxEjectionTime, double probeRatio,
+			LongSupplier nanoTime) {
+		this.consecutiveFailures = consecutiveFailures;
+		this.slowCallThreshold = slowCallThreshold;
+		this.baseEjectionTime = baseEjectionTime;
+		this.maxEjectionTime = maxEjectionTime;
+		this.probeRatio = probeRatio;
+		this.nanoTime = nanoTime;
+	}
+
+	/**
+	 * The instances of {@code serviceId} the load balancer may choose from.
+	 */
+	List<ServiceInstance> filter(String serviceId, List<ServiceInstance> instances) {
+		var listing = this.services.get(serviceId);
+		if (listing == null || listing.instances != instances) {
+			update(serviceId, listing, instances);
+		}
+		if (this.instances.isEmpty()) {
+			return instances;
+		}
+		var now = this.nanoTime.getAsLong();
+		List<ServiceInstance> available = null;
+		for (var i = 0; i < instances.size(); i++) {
+			var instance = instances.get(i);
+			var outlier = this.instances.get(InstanceCallRecorder.key(instance));
+			if (outlier == null || outlier.isAvailable(now)) {
+				if (available != null) {
+					available.add(instance);
+				}
+			}
+			else if (available == null) {
+				available = new ArrayList<>(instances.subList(0, i));
+			}
+		}
+		return available == null || available.isEmpty() ? instances : available;
+	}
+
+	/**
+	 * Forgets the instances {@code serviceId} no longer lists, unless another service
+	 * still does.
+	 */
+	private void update(String serviceId, Listing last, List<ServiceInstance> instances) {
+		var listing = new Listing(instances);
+		this.services.put(serviceId, listing);
+		if (last == null) {
+			return;
+		}
+		for (var key : last.keys) {
+			if (!listing.keys.contains(key) && !isListed(key)) {
+				this.instances.remove(key);
+			}
+		}
+	}
+
+	private boolean isListed(String key) {
+		for (var listing : this.services.values()) {
+			if (listing.keys.contains(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public <T> Mono<T> record(URI uri, Mono<T> call, Predicate<? super T> failed) {
+		return Mono.defer(() -> {
+			var outlier = this.instances.computeIfAbsent(InstanceCallRecorder.key(uri),
+					Outlier::new);
+			var start = this.nanoTime.getAsLong();
+			return call //
+					.doOnNext(result -> {
+						if (failed.test(result)) {
+							outlier.failure();
+						}
+						else {
+							outlier.success(this.nanoTime.getAsLong() - start);
+						}
+					}) //
+					.doFinally(signal -> {
+						if (signal == SignalType.ON_ERROR) {
+							outlier.failure();
+						}
+					});
+		});
+	}
+
+	private static final class Listing {
+
+		private final List<ServiceInstance> instances;
+
+		private final Set<String> keys = new HashSet<>();
+
+		Listing(List<ServiceInstance> instances) {
+			this.instances = instances;
+			for (var instance : instances) {
+				this.keys.add(InstanceCallRecorder.key(instance));
+			}
+		}
+
+	}
+
+	private class Outlier {
+
+		private final String key;
+
+		private final AtomicInteger failures = new AtomicInteger();
+
+		private final AtomicInteger ejections = new AtomicInteger();
+
+		/**
+		 * When the instance's ejection ends, or {@code 0} if it's not been ejected.
+		 */
+		private final AtomicLong ejectedUntil = new AtomicLong();
+
+		Outlier(String key) {
+			this.key = key;
+		}
+
+		boolean isAvailable(long now) {
+			var ejectedUntil = this.ejectedUntil.get();
+			if (ejectedUntil == 0) {
+				return true;
+			}
+			return now - ejectedUntil >= 0
+					&& ThreadLocalRandom.current().nextDouble() < probeRatio;
+		}
+
+		void success(long latency) {
+			if (latency > slowCallThreshold) {
+				failure();
+				return;
+			}
+			this.failures.set(0);
+			if (this.ejectedUntil.getAndSet(0) != 0) {
+				this.ejections.set(0);
+				log.info("returning " + this.key + " to the load balancer");
+			}
+		}
+
+		void failure() {
+			var failures = this.failures.incrementAndGet();
+			var ejectedUntil = this.ejectedUntil.get();
+			var now = nanoTime.getAsLong();
+			var probing = ejectedUntil != 0 && now - ejectedUntil >= 0;
+			if (probing || (ejectedUntil == 0 && failures >= consecutiveFailures)) {
+				var doublings = Math.min(this.ejections.get(),
+						Long.numberOfLeadingZeros(baseEjectionTime) - 1);
+				var ejection = Math.min(maxEjectionTime, baseEjectionTime << doublings);
+				var until = now + ejection;
+				if (this.ejectedUntil.compareAndSet(ejectedUntil, until == 0 ? 1 : until)) {
+					this.ejections.incrementAndGet();
+					this.failures.set(0);
+					log.info("ejecting " + this.key + " from the load balancer for "
+							+ ejection / 1_000_000 + "ms");
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,16 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Puts every service's instances through {@link ServiceInstanceListSupplierConfiguration}
+ * as soon as any of it's turned on, and leaves the load balancer's own alone otherwise.
+ */
+@Configuration
+@ConditionalOnExpression("${rsb.lb.outlier-detection.enabled:false} or ${rsb.lb.slow-start.enabled:false} or ${rsb.lb.health-check.enabled:false} or ${rsb.lb.zone-preference.enabled:false} or ${rsb.lb.least-loaded.enabled:false}")
+@LoadBalancerClients(defaultConfiguration = ServiceInstanceListSupplierConfiguration.class)
+class ServiceInstanceListSupplierAutoConfiguration {
+
+}
@@ -0,0 +1,79 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+/**
+ * The configuration of each service's load balancer, in its own child context. It's not
+ * a {@code @Configuration} so that it's never picked up by the application context
+ * itself.
+ * <p>
+ * The instances come from the discovery client, cached, then go through whichever of
+ * the {@link HealthProber}, {@link SlowStart} and the {@link OutlierDetector} are turned
+ * on, in that order, so that an instance that's healthy again is eased back in. The
+ * {@link ZonePreference} goes last, so that it counts only the instances in its zone
+ * that are left. The {@link InstanceLoads} of the least-loaded load balancer are pruned
+ * from the registered instances, ahead of all of them, so that an instance that's only
+ * left out for a while keeps its load.
+ * <p>
+ * Round-robin can only be made to send instances that are being eased in less of the
+ * traffic by leaving them out of the list some of the time, which makes for a different
+ * list from one request to the next. That's done after everything else, where nothing
+ * keeps track of the instances any more. The least-loaded load balancer weighs them
+ * itself, and the consistent-hash one doesn't ease them in at all, since sending a key
+ * elsewhere some of the time would defeat the point.
+ */
+class ServiceInstanceListSupplierConfiguration {
+
+	@Bean
+	ServiceInstanceListSupplier serviceInstanceListSupplier(
+			ConfigurableApplicationContext context,
+			ObjectProvider<HealthProber> healthProber,
+			ObjectProvider<SlowStart> slowStart,
+			ObjectProvider<OutlierDetector> outlierDetector,
+			ObjectProvider<ZonePreference> zonePreference,
+			ObjectProvider<InstanceLoads> instanceLoads) {
+		var registered = ServiceInstanceListSupplier.builder()//
+				.withDiscoveryClient()//
+				.withCaching()//
+				.build(context);
+		var loads = instanceLoads.getIfAvailable();
+		if (loads != null) {
+			registered = new InstanceLoadsServiceInstanceListSupplier(registered, loads);
+		}
+		var supplier = registered;
+		var prober = healthProber.getIfAvailable();
+		if (prober != null) {
+			supplier = new HealthCheckServiceInstanceListSupplier(supplier, prober);
+		}
+		var slowStarting = slowStart.getIfAvailable();
+		if (slowStarting != null) {
+			supplier = new SlowStartServiceInstanceListSupplier(supplier, slowStarting,
+					false);
+		}
+		var detector = outlierDetector.getIfAvailable();
+		if (detector != null) {
+			supplier = new OutlierDetectionServiceInstanceListSupplier(supplier, detector);
+		}
+		var preference = zonePreference.getIfAvailable();
+		if (preference != null) {
+			supplier = new ZonePreferenceServiceInstanceListSupplier(supplier, registered,
+					preference);
+		}
+		if (slowStarting != null && isRoundRobin(context.getEnvironment())) {
+			supplier = new SlowStartServiceInstanceListSupplier(supplier, slowStarting,
+					true);
+		}
+		return supplier;
+	}
+
+	private static boolean isRoundRobin(Environment environment) {
+		return !ConsistentHashLoadBalancerConfiguration.isConsistentlyHashed(environment)
+				&& !environment.getProperty("rsb.lb.least-loaded.enabled", Boolean.class,
+						false);
+	}
+
+}
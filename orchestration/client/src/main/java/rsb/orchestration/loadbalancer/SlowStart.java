@@ -0,0 +1,242 @@
+package rsb.orchestration.loadbalancer;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.cloud.client.ServiceInstance;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Eases instances that have just joined a service into its traffic, rather than giving
+ * a JVM with a cold JIT, cold caches and no connections its full share right away. For
+ * {@code window} after it's first seen, an instance {@linkplain #weight weighs} from
+ * {@code minWeight} at first up to all of it at the end: the least-loaded load balancer
+ * passes it over the rest of the time, and for round-robin it's {@linkplain #thin left
+ * out} of the instances offered the rest of the time.
+ * <p>
+ * Given a {@code warmer}, say a {@link ConnectionWarmer}, a new instance isn't offered
+ * at all until it's done, or failed, and the window starts then. The instances there
+ * are the first time a service's looked at are taken to be warm already.
+ */
+@Log4j2
+class SlowStart {
+
+	private static final long WARMING = Long.MIN_VALUE;
+
+	private final long window;
+
+	private final double minWeight;
+
+	private final Function<ServiceInstance, Mono<Void>> warmer;
+
+	private final LongSupplier nanoTime;
+
+	private final Map<String, Service> services = new ConcurrentHashMap<>();
+
+	SlowStart(long window, double minWeight, Function<ServiceInstance, Mono<Void>> warmer) {
+		this(window, minWeight, warmer, System::nanoTime);
+	}
+
+	SlowStart(long window, double minWeight, Function<ServiceInstance, Mono<Void>> warmer,
+			LongSupplier nanoTime) {
+		this.window = window;
+		this.minWeight = minWeight;
+		this.warmer = warmer;
+		this.nanoTime = nanoTime;
+	}
+
+	/**
+	 * The instances of {@code serviceId} the load balancer may choose from: all of them
+	 * but the ones still being warmed up, which are the same ones from one call to the
+	 * next, so that the load balancer's not handed a different list every time.
+	 */
+	List<ServiceInstance> filter(String serviceId, List<ServiceInstance> instances) {
+		return service(serviceId, instances).offered(instances);
+	}
+
+	/**
+	 * How much of its share of the traffic an instance of {@code serviceId} is to be
+	 * sent, between {@code minWeight} and {@code 1}.
+	 */
+	double weight(String serviceId, ServiceInstance instance) {
+		var service = this.services.get(serviceId);
+		if (service == null || service.starting.isEmpty()) {
+			return 1;
+		}
+		var key = InstanceCallRecorder.key(instance);
+		var started = service.starting.get(key);
+		if (started == null) {
+			return 1;
+		}
+		if (started == WARMING) {
+			return this.minWeight;
+		}
+		var elapsed = this.nanoTime.getAsLong() - started;
+		if (elapsed >= this.window) {
+			service.starting.remove(key, started);
+			return 1;
+		}
+		return this.minWeight + (1 - this.minWeight) * elapsed / this.window;
+	}
+
+	/**
+	 * The instances of {@code serviceId} to offer a load balancer that doesn't weigh
+	 * them itself, like round-robin's, leaving each of them out the rest of the time its
+	 * {@link #weight} says. The list's different from one call to the next while any
+	 * instance is starting, so it's only for the end of the chain, where nothing keeps
+	 * track of the instances it's handed.
+	 */
+	List<ServiceInstance> thin(String serviceId, List<ServiceInstance> instances) {
+		instances = filter(serviceId, instances);
+		if (this.services.get(serviceId).starting.isEmpty()) {
+			return instances;
+		}
+		var random = ThreadLocalRandom.current();
+		List<ServiceInstance> offered = null;
+		for (var i = 0; i < instances.size(); i++) {
+			var instance = instances.get(i);
+			if (random.nextDouble() < weight(serviceId, instance)) {
+				if (offered != null) {
+					offered.add(instance);
+				}
+			}
+			else if (offered == null) {
+				offered = new ArrayList<>(instances.subList(0, i));
+			}
+		}
+		return offered == null || offered.isEmpty() ? instances : offered;
+	}
+
+	private Service service(String serviceId, List<ServiceInstance> instances) {
+		var service = this.services.get(serviceId);
+		if (service == null) {
+			service = this.services.computeIfAbsent(serviceId, id -> new Service(instances));
+		}
+		if (service.last != instances) {
+			service.update(instances);
+		}
+		return service;
+	}
+
+	private static final class Offered {
+
+		private final List<ServiceInstance> instances;
+
+		private final long warmings;
+
+		private final List<ServiceInstance> warm;
+
+		Offered(List<ServiceInstance> instances, long warmings,
+				List<ServiceInstance> warm) {
+			this.instances = instances;
+			this.warmings = warmings;
+			this.warm = warm;
+		}
+
+	}
+
+	private final class Service {
+
+		/**
+		 * When each instance still starting started, or {@link #WARMING} if it's being
+		 * warmed up.
+		 */
+		private final Map<String, Long> starting = new ConcurrentHashMap<>();
+
+		/**
+		 * Counts the instances that have started or finished warming up, so that the
+		 * instances offered are worked out again only when one has.
+		 */
+		private final AtomicLong warmings = new AtomicLong();
+
+		private volatile List<ServiceInstance> last;
+
+		private volatile Offered offered;
+
+		private Set<String> keys;
+
+		Service(List<ServiceInstance> instances) {
+			this.last = instances;
+			this.keys = keys(instances);
+		}
+
+		List<ServiceInstance> offered(List<ServiceInstance> instances) {
+			var warmings = this.warmings.get();
+			var offered = this.offered;
+			if (offered == null || offered.instances != instances
+					|| offered.warmings != warmings) {
+				offered = new Offered(instances, warmings, warm(instances));
+				this.offered = offered;
+			}
+			return offered.warm;
+		}
+
+		private List<ServiceInstance> warm(List<ServiceInstance> instances) {
+			if (!this.starting.containsValue(WARMING)) {
+				return instances;
+			}
+			var warm = new ArrayList<ServiceInstance>(instances.size());
+			for (var instance : instances) {
+				var started = this.starting.get(InstanceCallRecorder.key(instance));
+				if (started == null || started != WARMING) {
+					warm.add(instance);
+				}
+			}
+			return warm.isEmpty() ? instances : warm;
+		}
+
+		synchronized void update(List<ServiceInstance> instances) {
+			if (this.last == instances) {
+				return;
+			}
+			var keys = keys(instances);
+			this.starting.keySet().retainAll(keys);
+			for (var instance : instances) {
+				var key = InstanceCallRecorder.key(instance);
+				if (!this.keys.contains(key)) {
+					start(key, instance);
+				}
+			}
+			this.keys = keys;
+			this.last = instances;
+		}
+
+		private void start(String key, ServiceInstance instance) {
+			if (warmer == null) {
+				log.info("slowly starting " + key);
+				this.starting.put(key, nanoTime.getAsLong());
+				return;
+			}
+			log.info("warming up " + key);
+			this.starting.put(key, WARMING);
+			this.warmings.incrementAndGet();
+			warmer.apply(instance)//
+					.onErrorResume(e -> {
+						log.info("couldn't warm up " + key, e);
+						return Mono.empty();
+					})//
+					.doFinally(signal -> {
+						if (this.starting.replace(key, WARMING, nanoTime.getAsLong())) {
+							this.warmings.incrementAndGet();
+						}
+					})//
+					.subscribe();
+		}
+
+		private Set<String> keys(List<ServiceInstance> instances) {
+			return instances.stream().map(InstanceCallRecorder::key)
+					.collect(Collectors.toSet());
+		}
+
+	}
+
+}
@@ -0,0 +1,42 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+
+/**
+ * Eases the instances that join a service into its traffic over
+ * {@code rsb.lb.slow-start.window}, after opening
+ * {@code rsb.lb.slow-start.warmup-connections} connections to them, if that's more than
+ * none. Turned on with {@code rsb.lb.slow-start.enabled=true}.
+ * <p>
+ * The connections are opened with the gateway's {@code HttpClient}, if there is one, so
+ * that they're in the pool its {@code lb://} routes use; otherwise with Spring Boot's
+ * {@code WebClient.Builder}, whose pool the load-balanced {@code WebClient} shares.
+ */
+@Configuration
+@ConditionalOnProperty(value = "rsb.lb.slow-start.enabled", havingValue = "true")
+class SlowStartAutoConfiguration {
+
+	@Bean
+	SlowStart slowStart(WebClient.Builder builder, ObjectProvider<HttpClient> httpClient,
+			@Value("${rsb.lb.slow-start.window:30s}") Duration window,
+			@Value("${rsb.lb.slow-start.min-weight:0.1}") double minWeight,
+			@Value("${rsb.lb.slow-start.warmup-connections:0}") int warmupConnections,
+			@Value("${rsb.lb.slow-start.warmup-path:/actuator/health}") String warmupPath,
+			@Value("${rsb.lb.slow-start.warmup-timeout:5s}") Duration warmupTimeout) {
+		httpClient.ifAvailable(
+				client -> builder.clientConnector(new ReactorClientHttpConnector(client)));
+		var warmer = warmupConnections > 0 ? new ConnectionWarmer(builder.build(),
+				warmupConnections, warmupPath, warmupTimeout) : null;
+		return new SlowStart(window.toNanos(), minWeight, warmer);
+	}
+
+}
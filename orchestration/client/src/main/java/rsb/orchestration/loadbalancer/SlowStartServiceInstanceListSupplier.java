@@ -0,0 +1,44 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Holds back the instances {@link SlowStart} is still warming up and, for a load
+ * balancer that doesn't weigh the instances itself, only offers the ones it's still
+ * easing in some of the time.
+ */
+class SlowStartServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+
+	private final SlowStart slowStart;
+
+	private final boolean thin;
+
+	SlowStartServiceInstanceListSupplier(ServiceInstanceListSupplier delegate,
+			SlowStart slowStart, boolean thin) {
+		super(delegate);
+		this.slowStart = slowStart;
+		this.thin = thin;
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get() {
+		return this.delegate.get().map(this::filter);
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get(Request request) {
+		return this.delegate.get(request).map(this::filter);
+	}
+
+	private List<ServiceInstance> filter(List<ServiceInstance> instances) {
+		return this.thin ? this.slowStart.thin(getServiceId(), instances)
+				: this.slowStart.filter(getServiceId(), instances);
+	}
+
+}
@@ -0,0 +1,241 @@
+package rsb.orchestration.loadbalancer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.noop.NoopCounter;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Keeps each service's requests in this client's own {@code zone}, going by the
+ * {@value #ZONE_METADATA} in each instance's metadata, for as long as there are enough
+ * instances there to take them. It spills over to every zone when there are fewer than
+ * {@code minInstances} instances available in this one, or fewer than
+ * {@code minAvailable} of those registered there, say because the others are failing
+ * their health checks or have been ejected.
+ * <p>
+ * Every call is counted in {@value #REQUESTS_METRIC}, tagged with the service id, the
+ * instance's zone and whether it crossed zones, so the share of traffic that leaves the
+ * zone is the {@code cross-zone=true} count over the lot. {@value #SPILLING_METRIC} is
+ * {@code 1} while a service is spilling over. Once an instance is no longer registered
+ * it's no longer counted, and a zone's counters go once none of the service's instances
+ * are left there.
+ */
+@Log4j2
+class ZonePreference implements InstanceCallRecorder {
+
+	static final String ZONE_METADATA = "zone";
+
+	static final String REQUESTS_METRIC = "rsb.lb.zone.requests";
+
+	static final String SPILLING_METRIC = "rsb.lb.zone.spilling";
+
+	private static final Counter NOOP_COUNTER = new NoopCounter(new Meter.Id(
+			REQUESTS_METRIC, Tags.empty(), null, null, Meter.Type.COUNTER));
+
+	private final String zone;
+
+	private final int minInstances;
+
+	private final double minAvailable;
+
+	private final ObjectProvider<MeterRegistry> meterRegistry;
+
+	private final Map<String, Service> services = new ConcurrentHashMap<>();
+
+	private final Map<String, Calls> calls = new ConcurrentHashMap<>();
+
+	ZonePreference(String zone, int minInstances, double minAvailable,
+			ObjectProvider<MeterRegistry> meterRegistry) {
+		this.zone = zone;
+		this.minInstances = minInstances;
+		this.minAvailable = minAvailable;
+		this.meterRegistry = meterRegistry;
+	}
+
+	/**
+	 * The instances of {@code serviceId} the load balancer may choose from: the ones in
+	 * this zone out of those {@code available}, unless there aren't enough of them, in
+	 * which case all of them. They're worked out again only when either list changes, and
+	 * the same list's handed on until then.
+	 * @param registered every instance of the service, available or not
+	 */
+	List<ServiceInstance> filter(String serviceId, List<ServiceInstance> registered,
+			List<ServiceInstance> available) {
+		var service = this.services.get(serviceId);
+		if (service == null) {
+			service = this.services.computeIfAbsent(serviceId, Service::new);
+		}
+		var filtered = service.filtered;
+		if (filtered == null || filtered.registered != registered) {
+			retain(serviceId, registered);
+		}
+		if (filtered == null || filtered.registered != registered
+				|| filtered.available != available) {
+			filtered = new Filtered(registered, available,
+					filter(service, registered, available));
+			service.filtered = filtered;
+		}
+		return filtered.instances;
+	}
+
+	private List<ServiceInstance> filter(Service service, List<ServiceInstance> registered,
+			List<ServiceInstance> available) {
+		var local = new ArrayList<ServiceInstance>(available.size());
+		for (var instance : available) {
+			var key = InstanceCallRecorder.key(instance);
+			if (!this.calls.containsKey(key)) {
+				this.calls.computeIfAbsent(key,
+						k -> new Calls(service.serviceId, counter(service.serviceId, instance)));
+			}
+			if (isLocal(instance)) {
+				local.add(instance);
+			}
+		}
+		var localRegistered = 0;
+		for (var instance : registered) {
+			if (isLocal(instance)) {
+				localRegistered++;
+			}
+		}
+		var spilling = local.size() < this.minInstances
+				|| local.size() < this.minAvailable * localRegistered;
+		service.spilling(spilling, local.size(), localRegistered);
+		return spilling || local.size() == available.size() ? available : local;
+	}
+
+	/**
+	 * Stops counting the calls to the instances of {@code serviceId} that aren't among
+	 * those {@code registered} any more, and removes the counters no other instance
+	 * shares.
+	 */
+	private void retain(String serviceId, List<ServiceInstance> registered) {
+		var keys = new HashSet<String>();
+		for (var instance : registered) {
+			keys.add(InstanceCallRecorder.key(instance));
+		}
+		var removed = new HashSet<Counter>();
+		for (var entry : this.calls.entrySet()) {
+			var calls = entry.getValue();
+			if (calls.serviceId.equals(serviceId) && !keys.contains(entry.getKey())
+					&& this.calls.remove(entry.getKey(), calls)) {
+				removed.add(calls.counter);
+			}
+		}
+		var registry = this.meterRegistry.getIfAvailable();
+		if (registry == null || removed.isEmpty()) {
+			return;
+		}
+		for (var calls : this.calls.values()) {
+			removed.remove(calls.counter);
+		}
+		removed.forEach(registry::remove);
+	}
+
+	@Override
+	public <T> Mono<T> record(URI uri, Mono<T> call, Predicate<? super T> failed) {
+		return Mono.defer(() -> {
+			var calls = this.calls.get(InstanceCallRecorder.key(uri));
+			if (calls != null) {
+				calls.counter.increment();
+			}
+			return call;
+		});
+	}
+
+	private boolean isLocal(ServiceInstance instance) {
+		return this.zone.equalsIgnoreCase(zone(instance));
+	}
+
+	private Counter counter(String serviceId, ServiceInstance instance) {
+		var zone = zone(instance);
+		var counter = Counter.builder(REQUESTS_METRIC).tag("serviceId", serviceId)
+				.tag("zone", zone != null ? zone : "unknown")
+				.tag("cross-zone", Boolean.toString(!isLocal(instance)));
+		var registry = this.meterRegistry.getIfAvailable();
+		return registry != null ? counter.register(registry) : NOOP_COUNTER;
+	}
+
+	private static String zone(ServiceInstance instance) {
+		var metadata = instance.getMetadata();
+		return metadata != null ? metadata.get(ZONE_METADATA) : null;
+	}
+
+	private static final class Calls {
+
+		private final String serviceId;
+
+		private final Counter counter;
+
+		Calls(String serviceId, Counter counter) {
+			this.serviceId = serviceId;
+			this.counter = counter;
+		}
+
+	}
+
+	private static final class Filtered {
+
+		private final List<ServiceInstance> registered;
+
+		private final List<ServiceInstance> available;
+
+		private final List<ServiceInstance> instances;
+
+		Filtered(List<ServiceInstance> registered, List<ServiceInstance> available,
+				List<ServiceInstance> instances) {
+			this.registered = registered;
+			this.available = available;
+			this.instances = instances;
+		}
+
+	}
+
+	private final class Service {
+
+		private final String serviceId;
+
+		private volatile boolean spilling;
+
+		private volatile Filtered filtered;
+
+		Service(String serviceId) {
+			this.serviceId = serviceId;
+			var registry = meterRegistry.getIfAvailable();
+			if (registry != null) {
+				Gauge.builder(SPILLING_METRIC, this, service -> service.spilling ? 1 : 0)
+						.tag("serviceId", serviceId).register(registry);
+			}
+		}
+
+		void spilling(boolean spilling, int local, int registered) {
+			if (spilling == this.spilling) {
+				return;
+			}
+			this.spilling = spilling;
+			if (spilling) {
+				log.info("spilling " + this.serviceId + " over to other zones, with "
+						+ local + " of its " + registered + " instances in " + zone
+						+ " available");
+			}
+			else {
+				log.info("keeping " + this.serviceId + " in " + zone + " again");
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,61 @@
+package rsb.orchestration.loadbalancer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Keeps every service's requests in this client's zone,
+ * {@code rsb.lb.zone-preference.zone} or else the {@code zone} it registers with
+ * Eureka, spilling over to the other zones when fewer than
+ * {@code rsb.lb.zone-preference.min-instances} instances, or
+ * {@code rsb.lb.zone-preference.min-available} of those registered, are available there.
+ * Turned on with {@code rsb.lb.zone-preference.enabled=true}, and counts the requests
+ * that cross zones whether they're made with the load-balanced {@code WebClient} or on
+ * {@code lb://} gateway routes.
+ */
+@Log4j2
+@Configuration
+@ConditionalOnProperty(value = "rsb.lb.zone-preference.enabled", havingValue = "true")
+class ZonePreferenceAutoConfiguration {
+
+	@Bean
+	ZonePreference zonePreference(
+			@Value("${rsb.lb.zone-preference.zone:${eureka.instance.metadata-map.zone:}}") String zone,
+			@Value("${rsb.lb.zone-preference.min-instances:2}") int minInstances,
+			@Value("${rsb.lb.zone-preference.min-available:0.5}") double minAvailable,
+			ObjectProvider<MeterRegistry> meterRegistry) {
+		if (zone.isBlank()) {
+			throw new IllegalStateException(
+					"set rsb.lb.zone-preference.zone, or eureka.instance.metadata-map.zone, to prefer a zone");
+		}
+		log.info("preferring the instances in " + zone + '.');
+		return new ZonePreference(zone, minInstances, minAvailable, meterRegistry);
+	}
+
+	@Bean
+	InstanceExchangeFilterFunction zonePreferenceExchangeFilterFunction(
+			ZonePreference zonePreference) {
+		return (request, next) -> zonePreference.record(request.url(),
+				next.exchange(request), response -> false);
+	}
+
+	@Configuration
+	@ConditionalOnClass(GlobalFilter.class)
+	static class GatewayZonePreferenceConfiguration {
+
+		@Bean
+		InstanceRecordingGlobalFilter zonePreferenceGlobalFilter(
+				ZonePreference zonePreference) {
+			return new InstanceRecordingGlobalFilter(zonePreference);
+		}
+
+	}
+
+}
@@ -0,0 +1,47 @@
+package rsb.orchestration.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Only offers the instances in this client's zone, while the {@link ZonePreference}
+ * finds there are enough of them. It's given the {@code registered} instances as well
+ * as the ones that are available, to tell how many of the zone's instances are missing.
+ */
+class ZonePreferenceServiceInstanceListSupplier
+		extends DelegatingServiceInstanceListSupplier {
+
+	private final ServiceInstanceListSupplier registered;
+
+	private final ZonePreference zonePreference;
+
+	ZonePreferenceServiceInstanceListSupplier(ServiceInstanceListSupplier delegate,
+			ServiceInstanceListSupplier registered, ZonePreference zonePreference) {
+		super(delegate);
+		this.registered = registered;
+		this.zonePreference = zonePreference;
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get() {
+		return filter(this.delegate.get());
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get(Request request) {
+		return filter(this.delegate.get(request));
+	}
+
+	private Flux<List<ServiceInstance>> filter(Flux<List<ServiceInstance>> available) {
+		return available.concatMap(instances -> this.registered.get().next()
+				.defaultIfEmpty(instances)
+				.map(registered -> this.zonePreference.filter(getServiceId(), registered,
+						instances)));
+	}
+
+}
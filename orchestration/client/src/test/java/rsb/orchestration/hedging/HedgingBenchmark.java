@@ -0,0 +1,104 @@
+package rsb.orchestration.hedging;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the latency of calls to a stand-in for {@code slow-service}, three instances
+ * that usually answer in 10ms but take 50ms one time in ten and a whole second one time
+ * in a hundred, without hedging, hedging to every instance at once, and hedging after
+ * the 95th percentile, along with how many calls the instances were sent in all.
+ * Nothing goes over the network, so it can be run on its own.
+ */
+@Log4j2
+public class HedgingBenchmark {
+
+	private static final int REQUESTS = 5000;
+
+	private static final int CONCURRENCY = 50;
+
+	public static void main(String[] args) {
+		run("no hedging", 1, null);
+		run("hedging at once", 3, null);
+		run("hedging after p95", 3, new HedgingPolicy(0.95, 0.1, 10,
+				Duration.ofMillis(100), Duration.ofSeconds(30)));
+	}
+
+	private static void run(String name, int maxNodes, HedgingPolicy policy) {
+		var random = new Random(42);
+		var sent = new AtomicInteger();
+		ExchangeFunction slowService = request -> Mono
+				.delay(Duration.ofMillis(latency(random)))//
+				.map(tick -> ClientResponse.create(HttpStatus.OK).build())//
+				.doOnSubscribe(subscription -> sent.incrementAndGet());
+		var hedging = new HedgingExchangeFilterFunction(
+				new ServiceInstances(new Instances(), Duration.ofSeconds(30)), maxNodes,
+				policy);
+		var client = WebClient.builder().exchangeFunction(slowService).filter(hedging)
+				.build();
+		var latencies = Flux.range(0, REQUESTS)//
+				.flatMap(i -> Mono.defer(() -> {
+					var start = System.nanoTime();
+					return client.get().uri("http://slow-service/greetings")//
+							.exchangeToMono(ClientResponse::releaseBody)//
+							.then(Mono.fromCallable(() -> System.nanoTime() - start));
+				}), CONCURRENCY)//
+				.collectList()//
+				.block();
+		var sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+		log.info(String.format(
+				"%-18s p50 %4dms  p95 %4dms  p99 %4dms  p99.9 %4dms  calls per request %.2f",
+				name, percentile(sorted, 0.5), percentile(sorted, 0.95),
+				percentile(sorted, 0.99), percentile(sorted, 0.999),
+				(double) sent.get() / REQUESTS));
+	}
+
+	private static synchronized long latency(Random random) {
+		var p = random.nextDouble();
+		return p < 0.01 ? 1000 : p < 0.1 ? 50 : 10;
+	}
+
+	private static long percentile(long[] sorted, double percentile) {
+		var index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, index)]);
+	}
+
+	private static class Instances implements ReactiveDiscoveryClient {
+
+		private final ServiceInstance[] instances = Arrays.stream(new int[] { 1, 2, 3 })
+				.mapToObj(i -> new DefaultServiceInstance("slow-service-" + i,
+						"slow-service", "localhost", 8080 + i, false))
+				.toArray(ServiceInstance[]::new);
+
+		@Override
+		public String description() {
+			return "slow-service stand-in";
+		}
+
+		@Override
+		public Flux<ServiceInstance> getInstances(String serviceId) {
+			return Flux.fromArray(this.instances);
+		}
+
+		@Override
+		public Flux<String> getServices() {
+			return Flux.just("slow-service");
+		}
+
+	}
+
+}
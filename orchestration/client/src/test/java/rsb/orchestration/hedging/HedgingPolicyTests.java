@@ -0,0 +1,84 @@
+package rsb.orchestration.hedging;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HedgingPolicyTests {
+
+	private final AtomicLong now = new AtomicLong();
+
+	private final HedgingPolicy policy = new HedgingPolicy(0.95, 0.1, 10,
+			Duration.ofSeconds(1), Duration.ofSeconds(30), this.now::get);
+
+	@Test
+	void hedgesAfterTheDefaultDelayUntilEnoughCallsHaveBeenTimed() {
+		answer(19, 10);
+
+		assertThat(this.policy.delay("slow-service")).isEqualTo(Duration.ofSeconds(1));
+	}
+
+	@Test
+	void hedgesAfterThePercentile() {
+		answer(96, 10);
+		answer(4, 200);
+
+		assertThat(this.policy.delay("slow-service"))
+				.isBetween(Duration.ofMillis(10), Duration.ofMillis(12));
+	}
+
+	@Test
+	void timesTheCallsThatLostToAHedgeUpToWhenTheyWereCancelled() {
+		answer(90, 10);
+		for (var i = 0; i < 10; i++) {
+			var call = this.policy.record("slow-service", Mono.never()).subscribe();
+			this.now.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+			call.dispose();
+		}
+
+		assertThat(this.policy.delay("slow-service"))
+				.isBetween(Duration.ofMillis(200), Duration.ofMillis(225));
+	}
+
+	@Test
+	void hedgesOnlyWhileThereIsBudgetLeft() {
+		for (var i = 0; i < 10; i++) {
+			assertThat(this.policy.tryHedge("slow-service")).isTrue();
+		}
+		assertThat(this.policy.tryHedge("slow-service")).isFalse();
+
+		for (var i = 0; i < 9; i++) {
+			this.policy.delay("slow-service");
+		}
+		assertThat(this.policy.tryHedge("slow-service")).isFalse();
+		this.policy.delay("slow-service");
+		assertThat(this.policy.tryHedge("slow-service")).isTrue();
+		assertThat(this.policy.tryHedge("slow-service")).isFalse();
+	}
+
+	@Test
+	void keepsNoMoreThanTheMostBudget() {
+		for (var i = 0; i < 1000; i++) {
+			this.policy.delay("slow-service");
+		}
+
+		for (var i = 0; i < 10; i++) {
+			assertThat(this.policy.tryHedge("slow-service")).isTrue();
+		}
+		assertThat(this.policy.tryHedge("slow-service")).isFalse();
+	}
+
+	private void answer(int calls, long millis) {
+		for (var i = 0; i < calls; i++) {
+			this.policy.record("slow-service", Mono.fromCallable(
+					() -> this.now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis))))
+					.block();
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+package rsb.orchestration.hedging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatencyHistogramTests {
+
+	private static final long WINDOW = TimeUnit.SECONDS.toNanos(30);
+
+	private final AtomicLong now = new AtomicLong();
+
+	private final LatencyHistogram histogram = new LatencyHistogram(WINDOW, this.now::get);
+
+	@Test
+	void bucketsEveryLatencyWithinAnEighth() {
+		var most = TimeUnit.SECONDS.toMicros(100);
+		for (var micros = 1L; micros < most; micros = micros * 3 / 2 + 1) {
+			var upperBound = LatencyHistogram.upperBound(LatencyHistogram.bucket(micros));
+			assertThat(upperBound).isGreaterThanOrEqualTo(micros)
+					.isLessThanOrEqualTo(micros + micros / 8);
+		}
+	}
+
+	@Test
+	void needsEnoughSamples() {
+		record(19, 10);
+
+		assertThat(this.histogram.percentile(0.5, 20)).isEqualTo(-1);
+
+		record(1, 10);
+
+		assertThat(this.histogram.percentile(0.5, 20)).isGreaterThanOrEqualTo(millis(10));
+	}
+
+	@Test
+	void worksOutPercentiles() {
+		record(50, 10);
+		record(45, 50);
+		record(5, 1000);
+
+		assertThat(this.histogram.percentile(0.5, 1)).isBetween(millis(10), millis(11));
+		assertThat(this.histogram.percentile(0.95, 1)).isBetween(millis(50), millis(56));
+		assertThat(this.histogram.percentile(0.99, 1)).isBetween(millis(1000), millis(1125));
+	}
+
+	@Test
+	void forgetsTheLatenciesOfAllButTheLastWindow() {
+		record(100, 1000);
+		this.now.addAndGet(WINDOW);
+		record(100, 10);
+
+		assertThat(this.histogram.percentile(0.99, 1)).as("the window before")
+				.isGreaterThanOrEqualTo(millis(1000));
+
+		this.now.addAndGet(WINDOW);
+		record(1, 10);
+
+		assertThat(this.histogram.percentile(0.99, 1)).isBetween(millis(10), millis(11));
+	}
+
+	private void record(int times, long millis) {
+		for (var i = 0; i < times; i++) {
+			this.histogram.record(millis(millis));
+		}
+	}
+
+	private static long millis(long millis) {
+		return TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+}
@@ -0,0 +1,139 @@
+package rsb.orchestration.hedging;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ServiceInstancesTests {
+
+	private final DiscoveryClient discoveryClient = new DiscoveryClient();
+
+	private final ServiceInstances serviceInstances = new ServiceInstances(
+			this.discoveryClient, Duration.ofHours(1));
+
+	@Test
+	void looksUpAServiceOnceForEveryCallWaitingOnIt() {
+		Sinks.Many<ServiceInstance> answer = Sinks.many().unicast().onBackpressureBuffer();
+		this.discoveryClient.instances = answer.asFlux();
+
+		var first = this.serviceInstances.get("slow-service").toFuture();
+		var second = this.serviceInstances.get("slow-service").toFuture();
+		answer.tryEmitNext(instance(2));
+		answer.tryEmitNext(instance(1));
+		answer.tryEmitComplete();
+
+		assertThat(first.join()).hasToString("[//10.0.0.1:8080, //10.0.0.2:8080]");
+		assertThat(second.join()).isSameAs(first.join());
+		assertThat(this.serviceInstances.get("slow-service").block())
+				.isSameAs(first.join());
+		assertThat(this.discoveryClient.lookups).hasValue(1);
+	}
+
+	@Test
+	void looksUpAServiceAgainAfterAFailedLookup() {
+		this.discoveryClient.instances = Flux.error(new IllegalStateException());
+		assertThatThrownBy(() -> this.serviceInstances.get("slow-service").block())
+				.isInstanceOf(IllegalStateException.class);
+
+		this.discoveryClient.instances = Flux.just(instance(1));
+
+		assertThat(this.serviceInstances.get("slow-service").block())
+				.hasToString("[//10.0.0.1:8080]");
+		assertThat(this.discoveryClient.lookups).hasValue(2);
+	}
+
+	@Test
+	void replacesTheInstancesWhenTheyChange() {
+		this.discoveryClient.instances = Flux.just(instance(1));
+		var before = this.serviceInstances.get("slow-service").block();
+
+		this.serviceInstances.refresh().block();
+		assertThat(this.serviceInstances.get("slow-service").block()).isSameAs(before);
+
+		this.discoveryClient.instances = Flux.just(instance(1), instance(2));
+		this.serviceInstances.refresh().block();
+
+		assertThat(this.serviceInstances.get("slow-service").block())
+				.hasToString("[//10.0.0.1:8080, //10.0.0.2:8080]");
+	}
+
+	@Test
+	void keepsTheInstancesThereWereWhenALookupFails() {
+		this.discoveryClient.instances = Flux.just(instance(1));
+		var before = this.serviceInstances.get("slow-service").block();
+
+		this.discoveryClient.instances = Flux.error(new IllegalStateException());
+		this.serviceInstances.refresh().block();
+
+		assertThat(this.serviceInstances.get("slow-service").block()).isSameAs(before);
+	}
+
+	@Test
+	void looksTheInstancesUpAgainWhenTheHeartbeatChanges() {
+		this.discoveryClient.instances = Flux.just(instance(1));
+		this.serviceInstances.get("slow-service").block();
+		this.discoveryClient.instances = Flux.just(instance(2));
+
+		this.serviceInstances.onApplicationEvent(new HeartbeatEvent(this, 1));
+		assertThat(this.serviceInstances.get("slow-service").block())
+				.hasToString("[//10.0.0.2:8080]");
+
+		this.serviceInstances.onApplicationEvent(new HeartbeatEvent(this, 1));
+		assertThat(this.discoveryClient.lookups).hasValue(2);
+	}
+
+	@Test
+	void sendsARequestToAnotherInstance() {
+		var snapshot = new ServiceInstances.Snapshot(List.of(instance(1), instance(2)));
+
+		var requestUrl = URI.create("http://slow-service/greetings?name=a%20b#top");
+
+		assertThat(snapshot.uri(1, requestUrl)).hasToString("http://10.0.0.2:8080/greetings?name=a%20b#top");
+		assertThat(snapshot.uri(0, URI.create("http://slow-service")))
+				.hasToString("http://10.0.0.1:8080");
+	}
+
+	private static ServiceInstance instance(int instance) {
+		return new DefaultServiceInstance("slow-service-" + instance, "slow-service",
+				"10.0.0." + instance, 8080, false);
+	}
+
+	private static class DiscoveryClient implements ReactiveDiscoveryClient {
+
+		private final AtomicInteger lookups = new AtomicInteger();
+
+		private volatile Flux<ServiceInstance> instances = Flux.empty();
+
+		@Override
+		public String description() {
+			return "slow-service stand-in";
+		}
+
+		@Override
+		public Flux<ServiceInstance> getInstances(String serviceId) {
+			return Flux.defer(() -> {
+				this.lookups.incrementAndGet();
+				return this.instances;
+			});
+		}
+
+		@Override
+		public Flux<String> getServices() {
+			return Flux.just("slow-service");
+		}
+
+	}
+
+}
@@ -0,0 +1,54 @@
+package rsb.orchestration.loadbalancer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static rsb.orchestration.loadbalancer.HashRingTests.instance;
+
+class ConsistentHashLoadBalancerTests {
+
+	private final ConsistentHashLoadBalancer balancer = new ConsistentHashLoadBalancer(
+			null, "customers", null, 160);
+
+	@Test
+	void keepsTheRingForTheSameInstancesInAnotherList() {
+		var ring = this.balancer.ring(List.of(instance(1), instance(2), instance(3)));
+
+		assertThat(this.balancer.ring(List.of(instance(3), instance(2), instance(1))))
+				.isSameAs(ring);
+	}
+
+	@Test
+	void keepsTheRingsOfInstancesThatComeAndGo() {
+		var all = List.of(instance(1), instance(2), instance(3));
+		var ring = this.balancer.ring(all);
+		var probed = this.balancer.ring(List.of(instance(1), instance(3)));
+
+		for (var i = 0; i < 10; i++) {
+			assertThat(this.balancer.ring(new ArrayList<>(all))).isSameAs(ring);
+			assertThat(this.balancer.ring(List.of(instance(1), instance(3))))
+					.isSameAs(probed);
+		}
+		for (var i = 0; i < 1000; i++) {
+			var owner = ring.get("customer-" + i);
+			if (!owner.equals(instance(2))) {
+				assertThat(probed.get("customer-" + i)).isEqualTo(owner);
+			}
+		}
+	}
+
+	@Test
+	void buildsANewRingWhenTheInstancesChange() {
+		var ring = this.balancer.ring(List.of(instance(1), instance(2), instance(3)));
+
+		var four = this.balancer
+				.ring(List.of(instance(1), instance(2), instance(3), instance(4)));
+
+		assertThat(four).isNotSameAs(ring);
+		assertThat(four.size()).isEqualTo(4);
+	}
+
+}
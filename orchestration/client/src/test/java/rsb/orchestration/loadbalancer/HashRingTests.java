@@ -0,0 +1,77 @@
+package rsb.orchestration.loadbalancer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HashRingTests {
+
+	private static final int KEYS = 100_000;
+
+	private final List<ServiceInstance> five = List.of(instance(1), instance(2),
+			instance(3), instance(4), instance(5));
+
+	@Test
+	void spreadsTheKeysEvenly() {
+		var ring = new HashRing(this.five, 160);
+
+		var shares = new HashMap<ServiceInstance, Integer>();
+		for (var i = 0; i < KEYS; i++) {
+			shares.merge(ring.get("customer-" + i), 1, Integer::sum);
+		}
+
+		assertThat(shares).hasSize(5);
+		assertThat(shares.values()).allSatisfy(share -> assertThat(share)
+				.isBetween(KEYS * 17 / 100, KEYS * 23 / 100));
+	}
+
+	@Test
+	void movesOnlyTheKeysOfAnInstanceThatJoins() {
+		var before = new HashRing(this.five, 160);
+		var six = new ArrayList<>(this.five);
+		six.add(instance(6));
+		var after = new HashRing(six, 160);
+
+		var moved = 0;
+		for (var i = 0; i < KEYS; i++) {
+			var owner = after.get("customer-" + i);
+			if (!owner.equals(before.get("customer-" + i))) {
+				assertThat(owner).isEqualTo(instance(6));
+				moved++;
+			}
+		}
+
+		assertThat(moved).isBetween(KEYS * 13 / 100, KEYS * 21 / 100);
+	}
+
+	@Test
+	void movesOnlyTheKeysOfAnInstanceThatLeaves() {
+		var before = new HashRing(this.five, 160);
+		var after = new HashRing(
+				List.of(instance(1), instance(2), instance(4), instance(5)), 160);
+
+		for (var i = 0; i < KEYS; i++) {
+			var owner = before.get("customer-" + i);
+			if (!owner.equals(instance(3))) {
+				assertThat(after.get("customer-" + i)).isEqualTo(owner);
+			}
+		}
+	}
+
+	@Test
+	void hasNoOneForAKeyWithoutInstances() {
+		assertThat(new HashRing(List.of(), 160).get("customer-1")).isNull();
+	}
+
+	static ServiceInstance instance(int instance) {
+		return new DefaultServiceInstance("customers-" + instance, "customers",
+				"10.0.0." + instance, 8080, false);
+	}
+
+}
@@ -0,0 +1,246 @@
+package rsb.orchestration.loadbalancer;
+
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HealthProberTests {
+
+	private final ManualTimer timer = new ManualTimer();
+
+	private final Map<String, Boolean> health = new ConcurrentHashMap<>();
+
+	private final Map<String, Integer> probes = new ConcurrentHashMap<>();
+
+	private final HealthProber prober = new HealthProber(this::probe,
+			Duration.ofSeconds(5), 4, 2, 3, this.timer);
+
+	private final List<ServiceInstance> instances = List.of(instance(1), instance(2));
+
+	@AfterEach
+	void destroy() {
+		this.prober.destroy();
+	}
+
+	@Test
+	void takesThreeFailedProbesInARowToLeaveAnInstanceOut() {
+		this.prober.filter("customers", this.instances);
+		this.health.put("10.0.0.1:8080", false);
+
+		probe(2);
+		assertThat(this.prober.filter("customers", this.instances))
+				.isSameAs(this.instances);
+
+		probe(1);
+		assertThat(this.prober.filter("customers", this.instances))
+				.containsExactly(instance(2));
+	}
+
+	@Test
+	void takesTwoGoodProbesInARowToLetAnInstanceBackIn() {
+		this.prober.filter("customers", this.instances);
+		this.health.put("10.0.0.1:8080", false);
+		probe(3);
+
+		this.health.put("10.0.0.1:8080", true);
+		probe(1);
+		assertThat(this.prober.filter("customers", this.instances))
+				.containsExactly(instance(2));
+
+		probe(1);
+		assertThat(this.prober.filter("customers", this.instances))
+				.containsExactly(instance(1), instance(2));
+	}
+
+	@Test
+	void keepsAnInstanceThatOnlyMissesAProbeHereAndThere() {
+		this.prober.filter("customers", this.instances);
+		for (var i = 0; i < 5; i++) {
+			this.health.put("10.0.0.1:8080", false);
+			probe(2);
+			this.health.put("10.0.0.1:8080", true);
+			probe(1);
+		}
+
+		assertThat(this.prober.filter("customers", this.instances))
+				.isSameAs(this.instances);
+	}
+
+	@Test
+	void offersEveryInstanceWhenTheyreAllUnhealthy() {
+		this.prober.filter("customers", this.instances);
+		this.health.put("10.0.0.1:8080", false);
+		this.health.put("10.0.0.2:8080", false);
+
+		probe(3);
+
+		assertThat(this.prober.filter("customers", this.instances))
+				.isSameAs(this.instances);
+	}
+
+	@Test
+	void handsOnTheSameListUntilAnInstancesHealthChanges() {
+		this.prober.filter("customers", this.instances);
+		this.health.put("10.0.0.1:8080", false);
+		probe(3);
+
+		var healthy = this.prober.filter("customers", this.instances);
+
+		assertThat(this.prober.filter("customers", this.instances)).isSameAs(healthy);
+	}
+
+	@Test
+	void stopsProbingAnInstanceThatsGone() {
+		this.prober.filter("customers", this.instances);
+		probe(1);
+
+		this.prober.filter("customers", List.of(instance(2)));
+		probe(2);
+
+		assertThat(this.probes).containsEntry("10.0.0.1:8080", 1)
+				.containsEntry("10.0.0.2:8080", 3);
+	}
+
+	@Test
+	void takesAnInstanceThatTakesATcpConnectionToBeHealthy() throws IOException {
+		var probe = HealthProbes.tcp(Duration.ofSeconds(5));
+		int port;
+		try (var server = new ServerSocket(0)) {
+			port = server.getLocalPort();
+			assertThat(probe.apply(localhost(port)).block()).isTrue();
+		}
+
+		assertThatThrownBy(() -> probe.apply(localhost(port)).block()).isNotNull();
+	}
+
+	private Mono<Boolean> probe(ServiceInstance instance) {
+		var key = InstanceCallRecorder.key(instance);
+		this.probes.merge(key, 1, Integer::sum);
+		return Mono.just(this.health.getOrDefault(key, true));
+	}
+
+	/**
+	 * Runs every probe that's due {@code times} times over.
+	 */
+	private void probe(int times) {
+		for (var i = 0; i < times; i++) {
+			this.timer.runAll();
+		}
+	}
+
+	private static ServiceInstance instance(int instance) {
+		return new DefaultServiceInstance("customers-" + instance, "customers",
+				"10.0.0." + instance, 8080, false);
+	}
+
+	private static ServiceInstance localhost(int port) {
+		return new DefaultServiceInstance("customers-" + port, "customers", "127.0.0.1",
+				port, false);
+	}
+
+	/**
+	 * A {@link Timer} whose timeouts only run when they're told to.
+	 */
+	private static class ManualTimer implements Timer {
+
+		private final List<ManualTimeout> timeouts = new ArrayList<>();
+
+		@Override
+		public synchronized Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+			var timeout = new ManualTimeout(this, task);
+			this.timeouts.add(timeout);
+			return timeout;
+		}
+
+		@Override
+		public Set<Timeout> stop() {
+			return Set.of();
+		}
+
+		void runAll() {
+			List<ManualTimeout> due;
+			synchronized (this) {
+				due = new ArrayList<>(this.timeouts);
+				this.timeouts.clear();
+			}
+			for (var timeout : due) {
+				if (!timeout.cancelled) {
+					timeout.run();
+				}
+			}
+		}
+
+	}
+
+	private static class ManualTimeout implements Timeout {
+
+		private final Timer timer;
+
+		private final TimerTask task;
+
+		private volatile boolean expired;
+
+		private volatile boolean cancelled;
+
+		ManualTimeout(Timer timer, TimerTask task) {
+			this.timer = timer;
+			this.task = task;
+		}
+
+		void run() {
+			this.expired = true;
+			try {
+				this.task.run(this);
+			}
+			catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		public Timer timer() {
+			return this.timer;
+		}
+
+		@Override
+		public TimerTask task() {
+			return this.task;
+		}
+
+		@Override
+		public boolean isExpired() {
+			return this.expired;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return this.cancelled;
+		}
+
+		@Override
+		public boolean cancel() {
+			this.cancelled = true;
+			return !this.expired;
+		}
+
+	}
+
+}
@@ -0,0 +1,122 @@
+package rsb.orchestration.loadbalancer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class InstanceLoadsTests {
+
+	private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final AtomicLong now = new AtomicLong();
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	private final InstanceLoads loads = new InstanceLoads(TimeUnit.SECONDS.toNanos(10),
+			new StaticListableBeanFactory(Map.of("meterRegistry", this.registry))
+					.getBeanProvider(MeterRegistry.class),
+			this.now::get);
+
+	@Test
+	void triesAnInstanceThatHasntAnsweredYetRightAway() {
+		var load = this.loads.get("customers", instance(1));
+
+		assertThat(load.getCost()).isZero();
+
+		var answer = Sinks.<String>one();
+		this.loads.record(uri(1), answer.asMono(), result -> false).subscribe();
+
+		assertThat(load.getOutstanding()).isEqualTo(1);
+		assertThat(load.getCost()).as("while it's waiting on its first answer")
+				.isGreaterThan(Double.MAX_VALUE / 4);
+
+		this.now.addAndGet(20 * MILLISECOND);
+		answer.tryEmitValue("hello");
+
+		assertThat(load.getOutstanding()).isZero();
+		assertThat(load.getLatency()).isEqualTo(20);
+	}
+
+	@Test
+	void takesASlowerResponseOutrightAndAFasterOneGradually() {
+		var load = this.loads.get("customers", instance(1));
+
+		load.observe(100 * MILLISECOND);
+		assertThat(load.getLatency()).isEqualTo(100);
+
+		load.observe(200 * MILLISECOND);
+		assertThat(load.getLatency()).isEqualTo(200);
+
+		this.now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+		assertThat(load.getLatency()).isCloseTo(200 / Math.E, within(0.01));
+
+		load.observe(10 * MILLISECOND);
+		assertThat(load.getLatency()).isCloseTo(200 / Math.E + 10 * (1 - 1 / Math.E),
+				within(0.01));
+	}
+
+	@Test
+	void costsTheLatencyTimesTheRequestsAhead() {
+		var load = this.loads.get("customers", instance(1));
+		load.observe(10 * MILLISECOND);
+		this.loads.record(uri(1), Mono.never(), result -> false).subscribe();
+		this.loads.record(uri(1), Mono.never(), result -> false).subscribe();
+
+		assertThat(load.getCost()).isEqualTo(30 * MILLISECOND);
+	}
+
+	@Test
+	void countsNeitherFailuresNorInstancesTheLoadBalancerDidntChoose() {
+		var load = this.loads.get("customers", instance(1));
+
+		this.loads.record(uri(1), Mono.fromCallable(() -> this.now.addAndGet(MILLISECOND)),
+				result -> true).block();
+		this.loads.record(uri(2), Mono.just("hello"), result -> false).block();
+
+		assertThat(load.getLatency()).isZero();
+		assertThat(this.registry.find(InstanceLoads.LATENCY_METRIC)
+				.tag("instance", "10.0.0.2:8080").gauge()).isNull();
+	}
+
+	@Test
+	void dropsTheInstancesThatHaveGone() {
+		var gone = this.loads.get("customers", instance(1));
+		var kept = this.loads.get("customers", instance(2));
+		var other = this.loads.get("orders", instance(3));
+		gone.observe(10 * MILLISECOND);
+
+		this.loads.retain("customers", List.of(instance(2)));
+
+		assertThat(this.registry.find(InstanceLoads.OUTSTANDING_METRIC).gauges())
+				.extracting(gauge -> gauge.getId().getTag("instance"))
+				.containsExactlyInAnyOrder("10.0.0.2:8080", "10.0.0.3:8080");
+		assertThat(this.registry.find(InstanceLoads.LATENCY_METRIC).gauges()).hasSize(2);
+		assertThat(this.loads.get("customers", instance(1))).isNotSameAs(gone);
+		assertThat(this.loads.get("customers", instance(2))).isSameAs(kept);
+		assertThat(this.loads.get("orders", instance(3))).isSameAs(other);
+	}
+
+	private static URI uri(int instance) {
+		return URI.create("http://10.0.0." + instance + ":8080/customers");
+	}
+
+	static ServiceInstance instance(int instance) {
+		return new DefaultServiceInstance("customers-" + instance, "customers",
+				"10.0.0." + instance, 8080, false);
+	}
+
+}
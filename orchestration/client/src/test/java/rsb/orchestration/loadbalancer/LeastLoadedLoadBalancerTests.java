@@ -0,0 +1,151 @@
+package rsb.orchestration.loadbalancer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.ServiceInstanceListSuppliers;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static rsb.orchestration.loadbalancer.InstanceLoadsTests.instance;
+
+class LeastLoadedLoadBalancerTests {
+
+	private final AtomicLong now = new AtomicLong();
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	private final InstanceLoads loads = new InstanceLoads(TimeUnit.SECONDS.toNanos(10),
+			new StaticListableBeanFactory(Map.of("meterRegistry", this.registry))
+					.getBeanProvider(MeterRegistry.class),
+			this.now::get);
+
+	@Test
+	void choosesTheLessLoadedOfTwo() {
+		var balancer = balancer(instance(1), instance(2));
+		this.loads.get("customers", instance(1)).observe(TimeUnit.MILLISECONDS.toNanos(50));
+		this.loads.get("customers", instance(2)).observe(TimeUnit.MILLISECONDS.toNanos(10));
+
+		for (var i = 0; i < 100; i++) {
+			assertThat(balancer.choose(new DefaultRequest<>()).block().getServer())
+					.isEqualTo(instance(2));
+		}
+	}
+
+	@Test
+	void neverChoosesTheMostLoaded() {
+		var balancer = balancer(instance(1), instance(2), instance(3));
+		this.loads.get("customers", instance(1)).observe(TimeUnit.MILLISECONDS.toNanos(50));
+		this.loads.get("customers", instance(2)).observe(TimeUnit.MILLISECONDS.toNanos(10));
+		this.loads.get("customers", instance(3)).observe(TimeUnit.MILLISECONDS.toNanos(10));
+
+		for (var i = 0; i < 100; i++) {
+			assertThat(balancer.choose(new DefaultRequest<>()).block().getServer())
+					.isNotEqualTo(instance(1));
+		}
+	}
+
+	@Test
+	void passesOverAnInstanceThatsBeingEasedInAsMuchAsItDoesntWeigh() {
+		var slowStart = new SlowStart(TimeUnit.SECONDS.toNanos(30), 0, null, this.now::get);
+		slowStart.filter("customers", List.of(instance(1)));
+		slowStart.filter("customers", List.of(instance(1), instance(2)));
+		var balancer = new LeastLoadedLoadBalancer(
+				provider(ServiceInstanceListSuppliers.from("customers", instance(1),
+						instance(2))),
+				"customers", this.loads, slowStart);
+		this.loads.get("customers", instance(1)).observe(TimeUnit.MILLISECONDS.toNanos(50));
+
+		for (var i = 0; i < 100; i++) {
+			assertThat(balancer.choose(new DefaultRequest<>()).block().getServer())
+					.isEqualTo(instance(1));
+		}
+
+		this.now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+		assertThat(balancer.choose(new DefaultRequest<>()).block().getServer())
+				.isEqualTo(instance(2));
+	}
+
+	@Test
+	void answersEmptyWithoutInstances() {
+		var balancer = balancer();
+
+		assertThat(balancer.choose(new DefaultRequest<>()).block().hasServer()).isFalse();
+	}
+
+	@Test
+	void dropsTheLoadsOfTheInstancesThatAreNoLongerRegistered() {
+		balancer(new InstanceLoadsServiceInstanceListSupplier(
+				ServiceInstanceListSuppliers.from("customers", instance(1), instance(2)),
+				this.loads)).choose(new DefaultRequest<>()).block();
+		this.loads.get("customers", instance(1));
+		this.loads.get("customers", instance(2));
+
+		balancer(new InstanceLoadsServiceInstanceListSupplier(
+				ServiceInstanceListSuppliers.from("customers", instance(2)), this.loads))
+						.choose(new DefaultRequest<>()).block();
+
+		assertThat(this.registry.find(InstanceLoads.OUTSTANDING_METRIC).gauges())
+				.extracting(gauge -> gauge.getId().getTag("instance"))
+				.containsExactly("10.0.0.2:8080");
+	}
+
+	@Test
+	void keepsTheLoadOfAnInstanceThatsBeenEjected() {
+		var detector = new OutlierDetector(1, TimeUnit.SECONDS.toNanos(2),
+				TimeUnit.SECONDS.toNanos(30), TimeUnit.SECONDS.toNanos(90), 0.5,
+				this.now::get);
+		var balancer = balancer(new OutlierDetectionServiceInstanceListSupplier(
+				new InstanceLoadsServiceInstanceListSupplier(
+						ServiceInstanceListSuppliers.from("customers", instance(1),
+								instance(2), instance(3)),
+						this.loads),
+				detector));
+		balancer.choose(new DefaultRequest<>()).block();
+		var load = this.loads.get("customers", instance(1));
+		load.observe(TimeUnit.MILLISECONDS.toNanos(50));
+		detector.record(URI.create("http://10.0.0.1:8080/customers"),
+				Mono.error(new IllegalStateException()), result -> false)
+				.onErrorResume(e -> Mono.empty()).block();
+
+		for (var i = 0; i < 10; i++) {
+			assertThat(balancer.choose(new DefaultRequest<>()).block().getServer())
+					.isNotEqualTo(instance(1));
+		}
+		this.now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+		for (var i = 0; i < 10; i++) {
+			balancer.choose(new DefaultRequest<>()).block();
+		}
+
+		assertThat(this.loads.get("customers", instance(1))).isSameAs(load);
+		assertThat(this.registry.find(InstanceLoads.OUTSTANDING_METRIC)
+				.tag("instance", "10.0.0.1:8080").gauges()).hasSize(1);
+	}
+
+	private LeastLoadedLoadBalancer balancer(ServiceInstance... instances) {
+		return balancer(ServiceInstanceListSuppliers.from("customers", instances));
+	}
+
+	private LeastLoadedLoadBalancer balancer(ServiceInstanceListSupplier supplier) {
+		return new LeastLoadedLoadBalancer(provider(supplier), "customers", this.loads,
+				null);
+	}
+
+	private static ObjectProvider<ServiceInstanceListSupplier> provider(
+			ServiceInstanceListSupplier supplier) {
+		return new StaticListableBeanFactory(Map.of("supplier", supplier))
+				.getBeanProvider(ServiceInstanceListSupplier.class);
+	}
+
+}
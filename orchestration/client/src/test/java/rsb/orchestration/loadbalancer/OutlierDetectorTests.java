@@ -0,0 +1,152 @@
+package rsb.orchestration.loadbalancer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutlierDetectorTests {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private final AtomicLong now = new AtomicLong();
+
+	private final OutlierDetector detector = new OutlierDetector(3, 2 * SECOND,
+			30 * SECOND, 90 * SECOND, 1, this.now::get);
+
+	private final List<ServiceInstance> instances = List.of(instance(1), instance(2));
+
+	@Test
+	void ejectsAnInstanceThatFailsTimeAfterTime() {
+		fail(1);
+		fail(1);
+		assertThat(this.detector.filter("customers", this.instances))
+				.isSameAs(this.instances);
+
+		fail(1);
+
+		assertThat(this.detector.filter("customers", this.instances))
+				.containsExactly(instance(2));
+	}
+
+	@Test
+	void countsOnlyFailuresInARow() {
+		fail(1);
+		fail(1);
+		succeed(1, 0);
+		fail(1);
+		fail(1);
+
+		assertThat(this.detector.filter("customers", this.instances))
+				.isSameAs(this.instances);
+	}
+
+	@Test
+	void countsASlowCallAsAFailure() {
+		succeed(1, 3 * SECOND);
+		succeed(1, 3 * SECOND);
+		succeed(1, 3 * SECOND);
+
+		assertThat(this.detector.filter("customers", this.instances))
+				.containsExactly(instance(2));
+	}
+
+	@Test
+	void ejectsAnInstanceForLongerEachTime() {
+		eject(1);
+
+		this.now.addAndGet(30 * SECOND);
+		assertThat(this.detector.filter("customers", this.instances))
+				.as("on probation").hasSize(2);
+		fail(1);
+
+		this.now.addAndGet(30 * SECOND);
+		assertThat(this.detector.filter("customers", this.instances))
+				.containsExactly(instance(2));
+		this.now.addAndGet(30 * SECOND);
+		assertThat(this.detector.filter("customers", this.instances)).hasSize(2);
+		fail(1);
+
+		this.now.addAndGet(89 * SECOND);
+		assertThat(this.detector.filter("customers", this.instances))
+				.as("no more than the longest ejection").containsExactly(instance(2));
+		this.now.addAndGet(SECOND);
+		assertThat(this.detector.filter("customers", this.instances)).hasSize(2);
+	}
+
+	@Test
+	void takesAnInstanceBackOnceACallToItSucceeds() {
+		eject(1);
+		this.now.addAndGet(30 * SECOND);
+		succeed(1, 0);
+		fail(1);
+		fail(1);
+
+		assertThat(this.detector.filter("customers", this.instances))
+				.isSameAs(this.instances);
+	}
+
+	@Test
+	void offersEveryInstanceWhenTheyveAllBeenEjected() {
+		eject(1);
+		eject(2);
+
+		assertThat(this.detector.filter("customers", this.instances))
+				.isSameAs(this.instances);
+	}
+
+	@Test
+	void forgetsAnInstanceNoLongerListed() {
+		this.detector.filter("customers", this.instances);
+		eject(1);
+		this.detector.filter("customers", List.of(instance(2)));
+
+		assertThat(this.detector.filter("customers", this.instances))
+				.isSameAs(this.instances);
+	}
+
+	@Test
+	void remembersAnInstanceAnotherServiceStillLists() {
+		this.detector.filter("orders", List.of(instance(1)));
+		this.detector.filter("customers", this.instances);
+		eject(1);
+		this.detector.filter("customers", List.of(instance(2)));
+
+		assertThat(this.detector.filter("orders", List.of(instance(1), instance(3))))
+				.containsExactly(instance(3));
+	}
+
+	private void eject(int instance) {
+		for (var i = 0; i < 3; i++) {
+			fail(instance);
+		}
+	}
+
+	private void fail(int instance) {
+		this.detector.record(uri(instance), Mono.error(new IllegalStateException()),
+				result -> false).onErrorResume(e -> Mono.empty()).block();
+	}
+
+	private void succeed(int instance, long latency) {
+		this.detector.record(uri(instance),
+				Mono.fromCallable(() -> this.now.addAndGet(latency)), result -> false)
+				.block();
+	}
+
+	private static URI uri(int instance) {
+		return URI.create("http://10.0.0." + instance + ":8080/customers");
+	}
+
+	private static ServiceInstance instance(int instance) {
+		return new DefaultServiceInstance("customers-" + instance, "customers",
+				"10.0.0." + instance, 8080, false);
+	}
+
+}
@@ -0,0 +1,111 @@
+package rsb.orchestration.loadbalancer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class SlowStartTests {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private final AtomicLong now = new AtomicLong();
+
+	private final List<ServiceInstance> two = List.of(instance(1), instance(2));
+
+	private final List<ServiceInstance> three = List.of(instance(1), instance(2),
+			instance(3));
+
+	@Test
+	void takesTheInstancesThereAtFirstToBeWarm() {
+		var slowStart = new SlowStart(30 * SECOND, 0.1, null, this.now::get);
+
+		assertThat(slowStart.filter("customers", this.two)).isSameAs(this.two);
+		assertThat(slowStart.weight("customers", instance(1))).isEqualTo(1);
+		assertThat(slowStart.thin("customers", this.two)).isSameAs(this.two);
+	}
+
+	@Test
+	void weighsANewInstanceMoreAndMoreOverTheWindow() {
+		var slowStart = new SlowStart(30 * SECOND, 0.1, null, this.now::get);
+		slowStart.filter("customers", this.two);
+
+		assertThat(slowStart.filter("customers", this.three)).isSameAs(this.three);
+		assertThat(slowStart.weight("customers", instance(3))).isEqualTo(0.1);
+		assertThat(slowStart.weight("customers", instance(1))).isEqualTo(1);
+
+		this.now.addAndGet(15 * SECOND);
+		assertThat(slowStart.weight("customers", instance(3))).isCloseTo(0.55,
+				within(0.001));
+		assertThat(slowStart.filter("customers", this.three)).isSameAs(this.three);
+
+		this.now.addAndGet(15 * SECOND);
+		assertThat(slowStart.weight("customers", instance(3))).isEqualTo(1);
+	}
+
+	@Test
+	void leavesANewInstanceOutForRoundRobinAsMuchAsItDoesntWeigh() {
+		var slowStart = new SlowStart(30 * SECOND, 0, null, this.now::get);
+		slowStart.filter("customers", this.two);
+
+		assertThat(slowStart.thin("customers", this.three))
+				.containsExactly(instance(1), instance(2));
+
+		this.now.addAndGet(30 * SECOND);
+		assertThat(slowStart.thin("customers", this.three)).isSameAs(this.three);
+	}
+
+	@Test
+	void holdsBackANewInstanceUntilItsWarmedUp() {
+		var warmed = Sinks.<Void>empty();
+		var slowStart = new SlowStart(30 * SECOND, 0.1, instance -> warmed.asMono(),
+				this.now::get);
+		slowStart.filter("customers", this.two);
+
+		var warming = slowStart.filter("customers", this.three);
+		assertThat(warming).containsExactly(instance(1), instance(2));
+		assertThat(slowStart.filter("customers", this.three)).isSameAs(warming);
+
+		this.now.addAndGet(10 * SECOND);
+		warmed.tryEmitEmpty();
+
+		assertThat(slowStart.filter("customers", this.three)).isSameAs(this.three);
+		assertThat(slowStart.weight("customers", instance(3))).isEqualTo(0.1);
+	}
+
+	@Test
+	void startsTheWindowEvenIfWarmingUpFails() {
+		var slowStart = new SlowStart(30 * SECOND, 0.1,
+				instance -> Mono.error(new IllegalStateException()), this.now::get);
+		slowStart.filter("customers", this.two);
+
+		assertThat(slowStart.filter("customers", this.three)).isSameAs(this.three);
+		assertThat(slowStart.weight("customers", instance(3))).isEqualTo(0.1);
+	}
+
+	@Test
+	void easesInAnInstanceThatComesBack() {
+		var slowStart = new SlowStart(30 * SECOND, 0.1, null, this.now::get);
+		slowStart.filter("customers", this.three);
+		slowStart.filter("customers", this.two);
+
+		this.now.addAndGet(60 * SECOND);
+		slowStart.filter("customers", this.three);
+
+		assertThat(slowStart.weight("customers", instance(3))).isEqualTo(0.1);
+	}
+
+	private static ServiceInstance instance(int instance) {
+		return new DefaultServiceInstance("customers-" + instance, "customers",
+				"10.0.0." + instance, 8080, false);
+	}
+
+}
@@ -0,0 +1,143 @@
+package rsb.orchestration.loadbalancer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZonePreferenceTests {
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	private final ZonePreference zonePreference = new ZonePreference("a", 2, 0.5,
+			new StaticListableBeanFactory(Map.of("meterRegistry", this.registry))
+					.getBeanProvider(MeterRegistry.class));
+
+	private final List<ServiceInstance> registered = List.of(instance(1, "a"),
+			instance(2, "a"), instance(3, "a"), instance(4, "b"), instance(5, "b"));
+
+	@Test
+	void keepsToItsOwnZone() {
+		var available = List.of(instance(1, "a"), instance(2, "a"), instance(4, "b"));
+
+		assertThat(this.zonePreference.filter("customers", this.registered, available))
+				.containsExactly(instance(1, "a"), instance(2, "a"));
+		assertThat(spilling()).isZero();
+	}
+
+	@Test
+	void handsOnTheSameListUntilEitherListChanges() {
+		var available = List.of(instance(1, "a"), instance(2, "a"), instance(4, "b"));
+		var local = this.zonePreference.filter("customers", this.registered, available);
+
+		assertThat(this.zonePreference.filter("customers", this.registered, available))
+				.isSameAs(local);
+
+		var fewer = List.of(instance(1, "a"), instance(4, "b"));
+		assertThat(this.zonePreference.filter("customers", this.registered, fewer))
+				.isSameAs(fewer);
+	}
+
+	@Test
+	void handsOnTheInstancesAvailableWhenTheyreAllInItsZone() {
+		var available = List.of(instance(1, "a"), instance(2, "a"));
+
+		assertThat(this.zonePreference.filter("customers", this.registered, available))
+				.isSameAs(available);
+	}
+
+	@Test
+	void spillsOverWithFewerThanTheLeastInstancesInItsZone() {
+		var available = List.of(instance(1, "a"), instance(4, "b"), instance(5, "b"));
+
+		assertThat(this.zonePreference.filter("customers", this.registered, available))
+				.isSameAs(available);
+		assertThat(spilling()).isEqualTo(1);
+
+		var recovered = List.of(instance(1, "a"), instance(2, "a"), instance(4, "b"));
+		this.zonePreference.filter("customers", this.registered, recovered);
+
+		assertThat(spilling()).isZero();
+	}
+
+	@Test
+	void spillsOverWithFewerThanTheLeastShareOfItsZoneAvailable() {
+		var registered = List.of(instance(1, "a"), instance(2, "a"), instance(3, "a"),
+				instance(6, "a"), instance(7, "a"), instance(4, "b"));
+		var available = List.of(instance(1, "a"), instance(2, "a"), instance(4, "b"));
+
+		assertThat(this.zonePreference.filter("customers", registered, available))
+				.isSameAs(available);
+		assertThat(spilling()).isEqualTo(1);
+	}
+
+	@Test
+	void countsTheCallsThatCrossZones() {
+		this.zonePreference.filter("customers", this.registered, this.registered);
+
+		call(1);
+		call(2);
+		call(4);
+		call(9);
+
+		assertThat(this.registry.get(ZonePreference.REQUESTS_METRIC)
+				.tag("cross-zone", "false").tag("zone", "a").counter().count())
+						.isEqualTo(2);
+		assertThat(this.registry.get(ZonePreference.REQUESTS_METRIC)
+				.tag("cross-zone", "true").tag("zone", "b").counter().count())
+						.isEqualTo(1);
+	}
+
+	@Test
+	void stopsCountingTheInstancesNoLongerRegistered() {
+		this.zonePreference.filter("customers", this.registered, this.registered);
+		var remaining = List.of(instance(1, "a"), instance(2, "a"), instance(3, "a"));
+
+		this.zonePreference.filter("customers", remaining, remaining);
+		call(1);
+		call(4);
+
+		assertThat(this.registry.find(ZonePreference.REQUESTS_METRIC).counters())
+				.singleElement()
+				.satisfies(counter -> assertThat(counter.getId().getTag("zone"))
+						.isEqualTo("a"))
+				.satisfies(counter -> assertThat(counter.count()).isEqualTo(1));
+	}
+
+	@Test
+	void countsNothingWithoutAMeterRegistry() {
+		var zonePreference = new ZonePreference("a", 2, 0.5,
+				new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+		zonePreference.filter("customers", this.registered, this.registered);
+
+		assertThat(zonePreference.record(URI.create("http://10.0.0.1:8080/customers"),
+				Mono.just("hello"), result -> false).block()).isEqualTo("hello");
+	}
+
+	private void call(int instance) {
+		this.zonePreference.record(
+				URI.create("http://10.0.0." + instance + ":8080/customers"),
+				Mono.just("hello"), result -> false).block();
+	}
+
+	private double spilling() {
+		return this.registry.get(ZonePreference.SPILLING_METRIC)
+				.tag("serviceId", "customers").gauge().value();
+	}
+
+	private static ServiceInstance instance(int instance, String zone) {
+		return new DefaultServiceInstance("customers-" + instance, "customers",
+				"10.0.0." + instance, 8080, false,
+				Map.of(ZonePreference.ZONE_METADATA, zone));
+	}
+
+}